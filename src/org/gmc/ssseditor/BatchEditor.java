@@ -0,0 +1,236 @@
+package org.gmc.ssseditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.gmc.ssseditor.qualities.QualitiesList;
+
+/**
+ * Applies an {@link EditScript} to many save files, without the UI.
+ *
+ * The quality catalog is loaded once and shared, read-only, by all the saves, which are read, edited
+ * and written in parallel on a fork-join pool. Each save is written as the editor writes it: the
+ * previous and new content are kept in the {@link SnapshotStore} history, and a save that fails to load or
+ * write is left as it was.
+ * The report for each save is printed in the order the saves were given.
+ * @author grant
+ *
+ */
+public class BatchEditor
+{
+	/**
+	 * Command line option selecting batch mode; it must be the first argument.
+	 */
+	public static final String batchOption = "--batch";
+
+	private static final String usage =
+			"Usage: " + BatchEditor.batchOption + " [--dry-run] [--threads=<n>] [--entities=<directory>] <script> <save or directory>...\n"
+			+ "  Applies the edit script to each save, and to each .json save in each directory.\n"
+			+ "  --dry-run                Report the changes without writing.\n"
+			+ "  --threads=<n>            Number of saves to process at once; the default is one per processor.\n"
+			+ "  --entities=<directory>   The game's entities directory, containing qualities.json.";
+
+	private final EditScript script;
+	private final QualitiesList catalog;
+	private final boolean dryRun;
+
+	/**
+	 * Run batch mode.
+	 * @param args Arguments following {@link #batchOption}.
+	 * @return Exit status: 0 if every save was processed, 1 if any failed, 2 for a usage error.
+	 */
+	public static int run(String[] args)
+	{
+		boolean dryRun = false;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String entities = GameFiles.getSunlessSeaDirectory("entities");
+		List<String> operands = new ArrayList<String>();
+		for (String arg : args) {
+			if (arg.equals("--dry-run")) {
+				dryRun = true;
+			} else if (arg.startsWith("--threads=")) {
+				try {
+					threads = Integer.parseInt(arg.substring("--threads=".length()));
+				} catch (NumberFormatException e) {
+					threads = 0;
+				}
+				if (threads < 1) {
+					System.err.println("Invalid thread count: " + arg);
+					return 2;
+				}
+			} else if (arg.startsWith("--entities=")) {
+				entities = arg.substring("--entities=".length());
+			} else if (arg.startsWith("--")) {
+				System.err.println(BatchEditor.usage);
+				return 2;
+			} else {
+				operands.add(arg);
+			}
+		}
+		if (operands.size() < 2) {
+			System.err.println(BatchEditor.usage);
+			return 2;
+		}
+
+		EditScript script;
+		try {
+			script = EditScript.load(new File(operands.get(0)));
+		} catch (IOException e) {
+			System.err.println("Cannot read script " + operands.get(0) + ": " + e);
+			return 2;
+		} catch (ParseException e) {
+			System.err.println(operands.get(0) + ": " + e.getMessage());
+			return 2;
+		}
+
+		QualitiesList catalog = null;
+		try {
+			catalog = entities != null ? GameFiles.loadCatalog(entities) : null;
+		} catch (IOException e) {
+			System.err.println("Cannot read the quality catalog: " + e);
+		}
+		if (catalog == null) {
+			System.err.println("Warning: no quality catalog; only qualities already in a save, or the fixed qualities, can be edited.");
+		}
+
+		List<File> saves = BatchEditor.findSaves(operands.subList(1, operands.size()));
+		return new BatchEditor(script, catalog, dryRun).process(saves, threads);
+	}
+
+	/**
+	 * Create a batch editor.
+	 * @param script Script to apply.
+	 * @param catalog Quality catalog; may be null.
+	 * @param dryRun If true, saves are not written.
+	 */
+	public BatchEditor(EditScript script, QualitiesList catalog, boolean dryRun)
+	{
+		this.script = script;
+		this.catalog = catalog;
+		this.dryRun = dryRun;
+	}
+
+	/**
+	 * Process saves in parallel, printing a report for each.
+	 * @param saves Save files.
+	 * @param threads Parallelism.
+	 * @return Exit status: 0 if every save was processed, 1 if any failed.
+	 */
+	public int process(List<File> saves, int threads)
+	{
+		long start = System.nanoTime();
+		List<Callable<String>> tasks = new ArrayList<Callable<String>>(saves.size());
+		final boolean[] failed = new boolean[saves.size()];
+		for (int i = 0; i < saves.size(); ++i) {
+			final File save = saves.get(i);
+			final int index = i;
+			tasks.add(new Callable<String>() {
+				@Override
+				public String call()
+				{
+					try {
+						return BatchEditor.this.processSave(save);
+					} catch (IOException | ParseException | RuntimeException e) {
+						failed[index] = true;
+						return save.getPath() + ": failed: " + e;
+					}
+				}
+			});
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		int failures = 0;
+		int changed = 0;
+		try {
+			List<Future<String>> reports = pool.invokeAll(tasks);
+			for (int i = 0; i < reports.size(); ++i) {
+				String report;
+				try {
+					report = reports.get(i).get();
+				} catch (ExecutionException e) {
+					failed[i] = true;
+					report = saves.get(i).getPath() + ": failed: " + e.getCause();
+				}
+				System.out.print(report.endsWith("\n") ? report : report + "\n");
+				if (failed[i]) {
+					++failures;
+				} else if (!report.endsWith(": no changes\n")) {
+					++changed;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return 1;
+		} finally {
+			pool.shutdown();
+		}
+
+		System.out.println(saves.size() + " saves, " + changed + (this.dryRun ? " would be changed, " : " changed, ")
+				+ failures + " failed, in " + (System.nanoTime() - start) / 1000000 + " ms");
+		return failures == 0 ? 0 : 1;
+	}
+
+	/**
+	 * Apply the script to one save, and write it unless this is a dry run. This runs on a pool thread.
+	 * @param save Save file.
+	 * @return Report.
+	 * @throws IOException On read or write error.
+	 * @throws ParseException If the save is not valid.
+	 */
+	private String processSave(File save) throws IOException, ParseException
+	{
+		SaveFile saveFile = SaveFile.load(save);
+		EditScript.Result result = this.script.apply(saveFile, this.catalog);
+
+		StringBuilder report = new StringBuilder(save.getPath());
+		if (result.getChanges().isEmpty()) {
+			report.append(": no changes\n");
+		} else {
+			report.append(": ").append(result.getChanges().size()).append(" changes\n");
+			for (String change : result.getChanges()) {
+				report.append("  ").append(change).append("\n");
+			}
+		}
+		for (String warning : result.getWarnings()) {
+			report.append("  warning: ").append(warning).append("\n");
+		}
+
+		if (!result.getChanges().isEmpty() && !this.dryRun) {
+			saveFile.snapshot().writeTo(save, SnapshotStore.forSave(save));
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Expand the save arguments: directories are replaced by the .json files they contain, sorted by name.
+	 * @param paths Files and directories.
+	 * @return Save files.
+	 */
+	static List<File> findSaves(List<String> paths)
+	{
+		List<File> result = new ArrayList<File>();
+		for (String path : paths) {
+			File file = new File(path);
+			File[] children = file.isDirectory() ? file.listFiles() : null;
+			if (children == null) {
+				result.add(file);
+				continue;
+			}
+			Arrays.sort(children);
+			for (File child : children) {
+				if (child.isFile() && child.getName().toLowerCase().endsWith(".json")) {
+					result.add(child);
+				}
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,483 @@
+package org.gmc.ssseditor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.gmc.ssseditor.qualities.ItemTags;
+import org.gmc.ssseditor.qualities.QualitiesList;
+import org.gmc.ssseditor.qualities.QualityItem;
+import org.gmc.ssseditor.qualities.Ship;
+
+/**
+ * A list of quality edits to apply to save files, read from a text file with one edit per line:
+ *
+ * <pre>
+ * # Comment
+ * set    &lt;quality&gt; &lt;level&gt;          Set the level, adding the quality if the save lacks it.
+ * add    &lt;quality&gt; &lt;amount&gt;         Add to the level (the amount may be negative), adding the quality if the save lacks it.
+ * remove &lt;quality&gt;                  Remove the quality.
+ * clamp  &lt;quality&gt; &lt;min&gt; &lt;max&gt;      Limit the level, if the save has the quality.
+ * </pre>
+ *
+ * A quality is given by ID, or by the name of one of the fixed qualities: echos, fuel, supplies, terror, hull,
+ * mirrors, iron, pages, hearts, veils or crew. A clamp limit may be a number or a property of the save's current
+ * ship: ship.maxHull, ship.crewCapacity or ship.holdCapacity. The minimum may not be more than the maximum; if
+ * a ship property makes it so for a save, that save is not clamped, with a warning.
+ *
+ * The script does not change once read, and applying it only reads the catalog, so one script may be applied
+ * to several saves at once on different threads.
+ * @author grant
+ *
+ */
+public class EditScript
+{
+	/**
+	 * The result of applying the script to one save.
+	 */
+	public static class Result
+	{
+		private final List<String> changes = new ArrayList<String>();
+		private final List<String> warnings = new ArrayList<String>();
+
+		/**
+		 * Get the changes made.
+		 * @return Descriptions of changes.
+		 */
+		public List<String> getChanges()
+		{
+			return this.changes;
+		}
+
+		/**
+		 * Get the edits that could not be applied.
+		 * @return Warnings.
+		 */
+		public List<String> getWarnings()
+		{
+			return this.warnings;
+		}
+	}
+
+	/**
+	 * One line of the script.
+	 */
+	private static class Edit
+	{
+		final int line;
+		final String operation;
+		final long id;
+		final long value;
+		final String minimum;
+		final String maximum;
+
+		Edit(int line, String operation, long id, long value, String minimum, String maximum)
+		{
+			this.line = line;
+			this.operation = operation;
+			this.id = id;
+			this.value = value;
+			this.minimum = minimum;
+			this.maximum = maximum;
+		}
+	}
+
+	/**
+	 * AssociatedQualityId of the current ship quality.
+	 */
+	private static final long currentShipId = 102889;
+
+	/**
+	 * Fixed qualities, by lower case name.
+	 */
+	private static final Map<String, QualityItem> namedQualities = new HashMap<String, QualityItem>();
+
+	static
+	{
+		EditScript.namedQualities.put("echos", ItemTags.echos);
+		EditScript.namedQualities.put("fuel", ItemTags.fuel);
+		EditScript.namedQualities.put("supplies", ItemTags.supplies);
+		EditScript.namedQualities.put("terror", ItemTags.terror);
+		EditScript.namedQualities.put("hull", ItemTags.hull);
+		EditScript.namedQualities.put("mirrors", ItemTags.mirrors);
+		EditScript.namedQualities.put("iron", ItemTags.iron);
+		EditScript.namedQualities.put("pages", ItemTags.pages);
+		EditScript.namedQualities.put("hearts", ItemTags.hearts);
+		EditScript.namedQualities.put("veils", ItemTags.veils);
+		EditScript.namedQualities.put("crew", ItemTags.crew);
+	}
+
+	private final List<Edit> edits;
+
+	/**
+	 * Read a script.
+	 * @param source Script file.
+	 * @return Script.
+	 * @throws IOException On read error.
+	 * @throws ParseException If a line is not a valid edit; the error offset is the line number.
+	 */
+	public static EditScript load(File source) throws IOException, ParseException
+	{
+		try (BufferedReader reader = Files.newBufferedReader(source.toPath(), StandardCharsets.UTF_8)) {
+			List<Edit> edits = new ArrayList<Edit>();
+			String text;
+			int line = 0;
+			while ((text = reader.readLine()) != null) {
+				++line;
+				int comment = text.indexOf('#');
+				if (comment >= 0) {
+					text = text.substring(0, comment);
+				}
+				text = text.trim();
+				if (!text.isEmpty()) {
+					edits.add(EditScript.parseEdit(text.split("\\s+"), line));
+				}
+			}
+			return new EditScript(edits);
+		}
+	}
+
+	/**
+	 * Create a script.
+	 * @param edits Edits.
+	 */
+	private EditScript(List<Edit> edits)
+	{
+		this.edits = edits;
+	}
+
+	/**
+	 * Get the number of edits.
+	 * @return Edit count.
+	 */
+	public int size()
+	{
+		return this.edits.size();
+	}
+
+	/**
+	 * Apply the script to a save. The save's quality list is changed; it is not written.
+	 * @param save Save file.
+	 * @param catalog Quality catalog, used to find the current ship; may be null.
+	 * @return Changes made, and edits that could not be applied.
+	 */
+	@SuppressWarnings("unchecked")
+	public Result apply(SaveFile save, QualitiesList catalog)
+	{
+		Result result = new Result();
+		ArrayList<Object> qualities = save.getQualities();
+		if (qualities == null) {
+			result.warnings.add("The save has no qualities");
+			return result;
+		}
+
+		// Edits are by AssociatedQualityId; as in the editor, the first quality with an ID is the one edited.
+		LongMap<Map<String, Object>> saveIndex = new LongMap<Map<String, Object>>(qualities.size());
+		for (Object qualityObject : qualities) {
+			if (qualityObject instanceof Map<?, ?>) {
+				Map<String, Object> quality = (Map<String, Object>) qualityObject;
+				Object idObject = quality.get("AssociatedQualityId");
+				if (idObject instanceof Long && !saveIndex.containsKey((Long) idObject)) {
+					saveIndex.put((Long) idObject, quality);
+				}
+			}
+		}
+
+		for (Edit edit : this.edits) {
+			Map<String, Object> quality = saveIndex.get(edit.id);
+			switch (edit.operation) {
+			case "set":
+			case "add":
+			{
+				long level = edit.value;
+				if (quality == null) {
+					quality = this.addQuality(edit, qualities, saveIndex, result);
+					if (quality == null) {
+						break;
+					}
+				} else if (edit.operation.equals("add")) {
+					level += EditScript.getLevel(quality);
+				}
+				this.setLevel(edit, quality, level, result);
+				break;
+			}
+
+			case "remove":
+			{
+				this.removeQuality(edit, qualities, saveIndex, result);
+				break;
+			}
+
+			case "clamp":
+			{
+				if (quality == null) {
+					break;
+				}
+				Long minimum = EditScript.getLimit(edit, edit.minimum, saveIndex, catalog, result);
+				Long maximum = EditScript.getLimit(edit, edit.maximum, saveIndex, catalog, result);
+				if (minimum == null || maximum == null) {
+					break;
+				}
+				if (minimum > maximum) {
+					// Only possible with a ship property; number limits are checked when parsing.
+					result.warnings.add("Line " + edit.line + ": the minimum, " + minimum + ", is more than the maximum, " + maximum + "; not clamped");
+					break;
+				}
+				long level = EditScript.getLevel(quality);
+				this.setLevel(edit, quality, Math.max(minimum, Math.min(maximum, level)), result);
+				break;
+			}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Parse one edit.
+	 * @param words Words of the line.
+	 * @param line Line number.
+	 * @return Edit.
+	 * @throws ParseException If the edit is not valid.
+	 */
+	private static Edit parseEdit(String[] words, int line) throws ParseException
+	{
+		String operation = words[0].toLowerCase(Locale.ROOT);
+		int expected;
+		switch (operation) {
+		case "set":
+		case "add":
+			expected = 3;
+			break;
+		case "remove":
+			expected = 2;
+			break;
+		case "clamp":
+			expected = 4;
+			break;
+		default:
+			throw new ParseException("Line " + line + ": unknown edit '" + words[0] + "'", line);
+		}
+		if (words.length != expected) {
+			throw new ParseException("Line " + line + ": '" + operation + "' takes " + (expected - 1) + " values", line);
+		}
+
+		long id = EditScript.parseQuality(words[1], line);
+		switch (operation) {
+		case "set":
+		case "add":
+			return new Edit(line, operation, id, EditScript.parseNumber(words[2], line), null, null);
+		case "clamp":
+			EditScript.checkLimit(words[2], line);
+			EditScript.checkLimit(words[3], line);
+			if (!words[2].startsWith("ship.") && !words[3].startsWith("ship.") && Long.parseLong(words[2]) > Long.parseLong(words[3])) {
+				throw new ParseException("Line " + line + ": the minimum, " + words[2] + ", is more than the maximum, " + words[3], line);
+			}
+			return new Edit(line, operation, id, 0, words[2], words[3]);
+		}
+		return new Edit(line, operation, id, 0, null, null);
+	}
+
+	/**
+	 * Get one of the fixed qualities by name.
+	 * @param name Name, such as "echos"; in any case.
+	 * @return Quality; null if there is none by that name.
+	 */
+	static QualityItem getNamedQuality(String name)
+	{
+		return EditScript.namedQualities.get(name.toLowerCase(Locale.ROOT));
+	}
+
+	/**
+	 * Parse a quality, by ID or name.
+	 * @param word Quality.
+	 * @param line Line number.
+	 * @return Quality ID.
+	 * @throws ParseException If the quality is not valid.
+	 */
+	private static long parseQuality(String word, int line) throws ParseException
+	{
+		QualityItem named = EditScript.namedQualities.get(word.toLowerCase(Locale.ROOT));
+		if (named != null) {
+			return named.getTag();
+		}
+		try {
+			return Long.parseLong(word);
+		} catch (NumberFormatException e) {
+			throw new ParseException("Line " + line + ": '" + word + "' is not a quality ID or name", line);
+		}
+	}
+
+	/**
+	 * Parse a number.
+	 * @param word Number.
+	 * @param line Line number.
+	 * @return Value.
+	 * @throws ParseException If the number is not valid.
+	 */
+	private static long parseNumber(String word, int line) throws ParseException
+	{
+		try {
+			return Long.parseLong(word);
+		} catch (NumberFormatException e) {
+			throw new ParseException("Line " + line + ": '" + word + "' is not a number", line);
+		}
+	}
+
+	/**
+	 * Check a clamp limit.
+	 * @param word Limit.
+	 * @param line Line number.
+	 * @throws ParseException If the limit is not valid.
+	 */
+	private static void checkLimit(String word, int line) throws ParseException
+	{
+		if (!word.startsWith("ship.")) {
+			EditScript.parseNumber(word, line);
+		} else if (EditScript.getShipProperty(word, null) == null) {
+			throw new ParseException("Line " + line + ": unknown ship property '" + word + "'", line);
+		}
+	}
+
+	/**
+	 * Resolve a clamp limit for a save.
+	 * @param edit Edit.
+	 * @param word Limit.
+	 * @param saveIndex Save qualities by ID.
+	 * @param catalog Catalog; may be null.
+	 * @param result Receives a warning if the limit is not known.
+	 * @return Limit; null if not known.
+	 */
+	private static Long getLimit(Edit edit, String word, LongMap<Map<String, Object>> saveIndex, QualitiesList catalog, Result result)
+	{
+		if (!word.startsWith("ship.")) {
+			return Long.parseLong(word);
+		}
+
+		// The ship's properties come from the catalog entry for the ship equipped in the current ship slot.
+		Long shipId = JSONUtil.getLong(saveIndex.get(EditScript.currentShipId), "EquippedPossession", "AssociatedQualityId");
+		QualityItem ship = shipId != null && catalog != null ? catalog.getItem(shipId) : null;
+		if (!(ship instanceof Ship)) {
+			result.warnings.add("Line " + edit.line + ": the current ship is not known; not clamped");
+			return null;
+		}
+		return EditScript.getShipProperty(word, (Ship) ship);
+	}
+
+	/**
+	 * Get a ship property.
+	 * @param word Property, such as ship.maxHull.
+	 * @param ship Ship; if null, the property is only checked.
+	 * @return Value (0 if the ship is null); null if there is no such property.
+	 */
+	private static Long getShipProperty(String word, Ship ship)
+	{
+		switch (word) {
+		case "ship.maxHull":
+			return ship != null ? ship.getMaxHull() : 0;
+		case "ship.crewCapacity":
+			return ship != null ? ship.getCrewCapacity() : 0;
+		case "ship.holdCapacity":
+			return ship != null ? ship.getHoldCapacity() : 0;
+		}
+		return null;
+	}
+
+	/**
+	 * Get the level of a quality.
+	 * @param quality Save quality.
+	 * @return Level; 0 if it has none.
+	 */
+	private static long getLevel(Map<String, Object> quality)
+	{
+		Object level = quality.get("Level");
+		return level instanceof Number ? ((Number) level).longValue() : 0;
+	}
+
+	/**
+	 * Set the level of a quality, if it has changed.
+	 * @param edit Edit.
+	 * @param quality Save quality.
+	 * @param level New level.
+	 * @param result Receives the change.
+	 */
+	private void setLevel(Edit edit, Map<String, Object> quality, long level, Result result)
+	{
+		Object oldLevel = quality.get("Level");
+		if (oldLevel instanceof Number && ((Number) oldLevel).longValue() == level) {
+			return;
+		}
+		quality.put("Level", Long.valueOf(level));
+		result.changes.add(edit.id + ": level " + (oldLevel != null ? oldLevel : "unset") + " -> " + level);
+	}
+
+	/**
+	 * Add a quality to a save, as the editor does.
+	 * @param edit Edit.
+	 * @param qualities Save qualities.
+	 * @param saveIndex Save qualities by ID.
+	 * @param result Receives the change, or a warning if the quality is not known.
+	 * @return New quality; null if not added.
+	 */
+	private Map<String, Object> addQuality(Edit edit, ArrayList<Object> qualities, LongMap<Map<String, Object>> saveIndex, Result result)
+	{
+		QualityItem item = QualityItem.getKnownItem(edit.id);
+		if (item == null) {
+			result.warnings.add("Line " + edit.line + ": quality " + edit.id + " is not known; not added");
+			return null;
+		}
+
+		Map<String, Object> quality = item.getTemplateObject();
+		qualities.add(quality);
+		saveIndex.put(edit.id, quality);
+		result.changes.add(edit.id + ": added " + item.getName());
+		return quality;
+	}
+
+	/**
+	 * Remove every quality with the edit's ID from a save. Equipped possessions are not removed.
+	 * @param edit Edit.
+	 * @param qualities Save qualities.
+	 * @param saveIndex Save qualities by ID.
+	 * @param result Receives the change, or a warning for equipped possessions.
+	 */
+	@SuppressWarnings("unchecked")
+	private void removeQuality(Edit edit, ArrayList<Object> qualities, LongMap<Map<String, Object>> saveIndex, Result result)
+	{
+		int removed = 0;
+		Map<String, Object> kept = null;
+		Iterator<Object> iterator = qualities.iterator();
+		while (iterator.hasNext()) {
+			Object qualityObject = iterator.next();
+			if (qualityObject instanceof Map<?, ?>) {
+				Map<String, Object> quality = (Map<String, Object>) qualityObject;
+				if (Long.valueOf(edit.id).equals(quality.get("AssociatedQualityId"))) {
+					if (quality.get("EquippedPossession") != null) {
+						result.warnings.add("Line " + edit.line + ": quality " + edit.id + " is equipped; not removed");
+						kept = kept != null ? kept : quality;
+						continue;
+					}
+					iterator.remove();
+					++removed;
+				}
+			}
+		}
+
+		if (removed > 0) {
+			if (kept != null) {
+				saveIndex.put(edit.id, kept);
+			} else {
+				saveIndex.remove(edit.id);
+			}
+			result.changes.add(edit.id + ": removed");
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package org.gmc.ssseditor;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.gmc.ssseditor.qualities.CatalogCache;
+import org.gmc.ssseditor.qualities.Companion;
+import org.gmc.ssseditor.qualities.Good;
+import org.gmc.ssseditor.qualities.QualitiesList;
+import org.gmc.ssseditor.qualities.Ship;
+
+/**
+ * Locations of the game's files and the editor's own files, and loading of the quality catalog.
+ * Nothing here uses the UI, so it serves both the editor and batch mode.
+ * @author grant
+ *
+ */
+public class GameFiles
+{
+	/**
+	 * Get the editor's own directory, used for caches. This may not exist yet.
+	 * @return Directory.
+	 */
+	public static File getEditorDirectory()
+	{
+		return new File(System.getProperty("user.home"), ".ssseditor");
+	}
+
+	/**
+	 * Get a directory in the Sunless Sea tree. The directory may not exist.
+	 * @param subdirectory Subdirectory of interest, such as "saves".
+	 * @return Directory; null if the operating system is not supported.
+	 */
+	public static String getSunlessSeaDirectory(String subdirectory)
+	{
+		String appDataDirectory;
+		String osName = System.getProperty("os.name");
+
+		if (osName.contains("OS X")) {
+			appDataDirectory = (System.getProperty("user.home") + "/Library/Application Support/unity.Failbetter Games.Sunless Sea/");
+		} else if (osName.contains("Windows")) {
+			appDataDirectory = (System.getenv("APPDATA") + "/../LocalLow/Failbetter Games/Sunless Sea/");
+		} else if (osName.contains("Linux")) {
+			appDataDirectory = (System.getProperty("user.home") + "/.config/unity3d/Failbetter Games/Sunless Sea/");
+		} else {
+			return null;
+		}
+
+		return appDataDirectory + subdirectory;
+	}
+
+	/**
+	 * Load the quality catalog from the game's 'qualities.json', through the binary cache in the editor's directory.
+	 * @param entitiesDirectory The game's entities directory.
+	 * @return Catalog; null if there is no readable 'qualities.json', or it is not a JSON array.
+	 * @throws IOException On read error.
+	 */
+	public static QualitiesList loadCatalog(String entitiesDirectory) throws IOException
+	{
+		// Static methods in the various QualityItem class don't run unless the class is created.
+		Good.isQualityAGood(null);
+		Ship.isQualityAShip(null);
+		Companion.isQualityACompanion(null);
+
+		File qualities = new File(entitiesDirectory + "/qualities.json");
+		if (!qualities.exists() || !qualities.isFile() || !qualities.canRead()) {
+			return null;
+		}
+
+		CatalogCache cache = new CatalogCache(qualities, new File(GameFiles.getEditorDirectory(), "qualities.cache"));
+		return cache.load();
+	}
+}
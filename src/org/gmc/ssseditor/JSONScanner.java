@@ -0,0 +1,470 @@
+package org.gmc.ssseditor;
+
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A forward-only JSON token scanner over a UTF-8 byte array.
+ *
+ * Unlike Genson, this does not build a tree unless asked to: values can be skipped, or kept
+ * as a {@link RawJSON} byte range, and the byte position of every token is available.
+ *
+ * Numbers are returned as Long when integral and Double otherwise, objects as LinkedHashMap
+ * (preserving the file order) and arrays as ArrayList, matching what the rest of the editor
+ * expects from Genson.
+ * @author grant
+ *
+ */
+public class JSONScanner
+{
+	private final byte[] data;
+	private final int limit;
+	private int position;
+
+	/**
+	 * Create a scanner over an entire byte array.
+	 * @param data UTF-8 JSON text.
+	 */
+	public JSONScanner(byte[] data)
+	{
+		this(data, 0, data.length);
+	}
+
+	/**
+	 * Create a scanner over part of a byte array. A leading UTF-8 byte order mark is skipped.
+	 * @param data UTF-8 JSON text.
+	 * @param offset First byte to scan.
+	 * @param limit One past the last byte to scan.
+	 */
+	public JSONScanner(byte[] data, int offset, int limit)
+	{
+		this.data = data;
+		this.limit = limit;
+		this.position = offset;
+		if (limit - offset >= 3 && (data[offset] & 0xff) == 0xef && (data[offset + 1] & 0xff) == 0xbb && (data[offset + 2] & 0xff) == 0xbf) {
+			this.position += 3;
+		}
+	}
+
+	/**
+	 * Get the underlying byte array.
+	 * @return Data.
+	 */
+	public byte[] getData()
+	{
+		return this.data;
+	}
+
+	/**
+	 * Get the current byte position.
+	 * @return Position.
+	 */
+	public int getPosition()
+	{
+		return this.position;
+	}
+
+	/**
+	 * Skip whitespace, and return the position of the next token.
+	 * @return Token position.
+	 */
+	public int getTokenPosition()
+	{
+		this.skipWhitespace();
+		return this.position;
+	}
+
+	/**
+	 * Return a value indicating whether only whitespace remains.
+	 * @return true if at the end of the input.
+	 */
+	public boolean atEnd()
+	{
+		this.skipWhitespace();
+		return this.position >= this.limit;
+	}
+
+	/**
+	 * Skip whitespace and return the next byte without consuming it.
+	 * @return Next byte.
+	 * @throws ParseException At end of input.
+	 */
+	public byte peek() throws ParseException
+	{
+		this.skipWhitespace();
+		if (this.position >= this.limit) {
+			throw new ParseException("Unexpected end of JSON", this.position);
+		}
+		return this.data[this.position];
+	}
+
+	/**
+	 * Return a value indicating whether the next value is an object or array.
+	 * @return true for an object or array.
+	 * @throws ParseException At end of input.
+	 */
+	public boolean isContainer() throws ParseException
+	{
+		byte next = this.peek();
+		return next == '{' || next == '[';
+	}
+
+	/**
+	 * Consume the given structural character.
+	 * @param expected Expected character.
+	 * @throws ParseException If the next token is something else.
+	 */
+	public void expect(char expected) throws ParseException
+	{
+		if (this.peek() != expected) {
+			throw new ParseException("Expected '" + expected + "'", this.position);
+		}
+		++this.position;
+	}
+
+	/**
+	 * Consume the given structural character if it is next.
+	 * @param expected Expected character.
+	 * @return true if consumed.
+	 * @throws ParseException At end of input.
+	 */
+	public boolean consume(char expected) throws ParseException
+	{
+		if (this.peek() == expected) {
+			++this.position;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Read an object member name and the following ':'.
+	 * @return Member name.
+	 * @throws ParseException On malformed input.
+	 */
+	public String readKey() throws ParseException
+	{
+		String key = this.readString();
+		this.expect(':');
+		return key;
+	}
+
+	/**
+	 * Consume an object member name and the following ':' if the name is the given one. The name is
+	 * compared byte by byte, without decoding it, so a name written with escapes does not match.
+	 * @param key Member name; ASCII.
+	 * @return true if consumed; false if the next member has another name, and nothing was consumed.
+	 * @throws ParseException On malformed input.
+	 */
+	public boolean consumeKey(String key) throws ParseException
+	{
+		int start = this.getTokenPosition();
+		int end = start + key.length() + 1;
+		if (end >= this.limit || this.data[start] != '"' || this.data[end] != '"') {
+			return false;
+		}
+		for (int i = 0; i < key.length(); ++i) {
+			if (this.data[start + 1 + i] != key.charAt(i)) {
+				return false;
+			}
+		}
+		this.position = end + 1;
+		this.expect(':');
+		return true;
+	}
+
+	/**
+	 * Skip an object member name and the following ':'.
+	 * @throws ParseException On malformed input.
+	 */
+	public void skipKey() throws ParseException
+	{
+		if (this.peek() != '"') {
+			throw new ParseException("Expected a string", this.position);
+		}
+		this.skipString();
+		this.expect(':');
+	}
+
+	/**
+	 * Read a string value.
+	 * @return String.
+	 * @throws ParseException On malformed input.
+	 */
+	public String readString() throws ParseException
+	{
+		this.expect('"');
+		int start = this.position;
+		StringBuilder escaped = null;
+		int segment = start;
+		while (this.position < this.limit) {
+			byte b = this.data[this.position];
+			if (b == '"') {
+				String result;
+				if (escaped == null) {
+					result = new String(this.data, start, this.position - start, StandardCharsets.UTF_8);
+				} else {
+					escaped.append(new String(this.data, segment, this.position - segment, StandardCharsets.UTF_8));
+					result = escaped.toString();
+				}
+				++this.position;
+				return result;
+			} else if (b == '\\') {
+				if (escaped == null) {
+					escaped = new StringBuilder();
+				}
+				escaped.append(new String(this.data, segment, this.position - segment, StandardCharsets.UTF_8));
+				escaped.append(this.readEscape());
+				segment = this.position;
+			} else {
+				++this.position;
+			}
+		}
+
+		throw new ParseException("Unterminated string", start);
+	}
+
+	/**
+	 * Read a number.
+	 * @return Long if the number is integral and in range; otherwise Double.
+	 * @throws ParseException On malformed input.
+	 */
+	public Number readNumber() throws ParseException
+	{
+		int start = this.getTokenPosition();
+		boolean integral = true;
+		while (this.position < this.limit) {
+			byte b = this.data[this.position];
+			if (b == '.' || b == 'e' || b == 'E') {
+				integral = false;
+			} else if (!(b == '-' || b == '+' || (b >= '0' && b <= '9'))) {
+				break;
+			}
+			++this.position;
+		}
+
+		if (this.position == start) {
+			throw new ParseException("Expected a value", start);
+		}
+
+		String text = new String(this.data, start, this.position - start, StandardCharsets.US_ASCII);
+		try {
+			if (integral) {
+				try {
+					return Long.valueOf(text);
+				} catch (NumberFormatException e) {
+					// Out of range for a long; fall through to Double.
+				}
+			}
+			return Double.valueOf(text);
+		} catch (NumberFormatException e) {
+			throw new ParseException("Malformed number '" + text + "'", start);
+		}
+	}
+
+	/**
+	 * Read any value, building a tree for objects and arrays.
+	 * @return Value.
+	 * @throws ParseException On malformed input.
+	 */
+	public Object readValue() throws ParseException
+	{
+		switch (this.peek()) {
+			case '{':
+			{
+				Map<String, Object> result = new LinkedHashMap<String, Object>();
+				this.expect('{');
+				if (!this.consume('}')) {
+					do {
+						String key = this.readKey();
+						result.put(key, this.readValue());
+					} while (this.consume(','));
+					this.expect('}');
+				}
+				return result;
+			}
+
+			case '[':
+			{
+				ArrayList<Object> result = new ArrayList<Object>();
+				this.expect('[');
+				if (!this.consume(']')) {
+					do {
+						result.add(this.readValue());
+					} while (this.consume(','));
+					this.expect(']');
+				}
+				return result;
+			}
+
+			case '"':
+				return this.readString();
+
+			case 't':
+				this.readLiteral("true");
+				return Boolean.TRUE;
+
+			case 'f':
+				this.readLiteral("false");
+				return Boolean.FALSE;
+
+			case 'n':
+				this.readLiteral("null");
+				return null;
+
+			default:
+				return this.readNumber();
+		}
+	}
+
+	/**
+	 * Skip a value without building anything.
+	 * @throws ParseException On malformed input.
+	 */
+	public void skipValue() throws ParseException
+	{
+		byte first = this.peek();
+		if (first == '"') {
+			this.skipString();
+			return;
+		}
+		if (first != '{' && first != '[') {
+			// Scalar: runs to the next delimiter.
+			int start = this.position;
+			while (this.position < this.limit) {
+				byte b = this.data[this.position];
+				if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+					break;
+				}
+				++this.position;
+			}
+			if (this.position == start) {
+				throw new ParseException("Expected a value", start);
+			}
+			return;
+		}
+
+		int start = this.position;
+		int depth = 0;
+		while (this.position < this.limit) {
+			byte b = this.data[this.position];
+			if (b == '"') {
+				this.skipString();
+				continue;
+			}
+			++this.position;
+			if (b == '{' || b == '[') {
+				++depth;
+			} else if (b == '}' || b == ']') {
+				if (--depth == 0) {
+					return;
+				}
+			}
+		}
+
+		throw new ParseException("Unterminated object or array", start);
+	}
+
+	/**
+	 * Skip a value, returning its byte range.
+	 * @return Raw value.
+	 * @throws ParseException On malformed input.
+	 */
+	public RawJSON readRaw() throws ParseException
+	{
+		int start = this.getTokenPosition();
+		this.skipValue();
+		return new RawJSON(this.data, start, this.position - start);
+	}
+
+	/**
+	 * Skip whitespace.
+	 */
+	private void skipWhitespace()
+	{
+		while (this.position < this.limit) {
+			byte b = this.data[this.position];
+			if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+				break;
+			}
+			++this.position;
+		}
+	}
+
+	/**
+	 * Skip a string, including the quotes, without decoding it.
+	 * @throws ParseException On an unterminated string.
+	 */
+	private void skipString() throws ParseException
+	{
+		int start = this.position;
+		++this.position;
+		while (this.position < this.limit) {
+			byte b = this.data[this.position++];
+			if (b == '\\') {
+				++this.position;
+			} else if (b == '"') {
+				return;
+			}
+		}
+
+		throw new ParseException("Unterminated string", start);
+	}
+
+	/**
+	 * Read a literal such as 'true'.
+	 * @param literal Literal text.
+	 * @throws ParseException If the input does not match.
+	 */
+	private void readLiteral(String literal) throws ParseException
+	{
+		int start = this.position;
+		for (int i = 0; i < literal.length(); ++i) {
+			if (this.position >= this.limit || this.data[this.position] != literal.charAt(i)) {
+				throw new ParseException("Expected '" + literal + "'", start);
+			}
+			++this.position;
+		}
+	}
+
+	/**
+	 * Read an escape sequence; the position is at the backslash.
+	 * @return Decoded character.
+	 * @throws ParseException On a malformed escape.
+	 */
+	private char readEscape() throws ParseException
+	{
+		int start = this.position;
+		if (this.position + 1 >= this.limit) {
+			throw new ParseException("Unterminated escape", start);
+		}
+		byte b = this.data[this.position + 1];
+		this.position += 2;
+		switch (b) {
+			case '"': return '"';
+			case '\\': return '\\';
+			case '/': return '/';
+			case 'b': return '\b';
+			case 'f': return '\f';
+			case 'n': return '\n';
+			case 'r': return '\r';
+			case 't': return '\t';
+			case 'u':
+				if (this.position + 4 <= this.limit) {
+					try {
+						char result = (char) Integer.parseInt(new String(this.data, this.position, 4, StandardCharsets.US_ASCII), 16);
+						this.position += 4;
+						return result;
+					} catch (NumberFormatException e) {
+						// Reported below.
+					}
+				}
+				break;
+		}
+
+		throw new ParseException("Malformed escape", start);
+	}
+}
@@ -0,0 +1,112 @@
+package org.gmc.ssseditor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Compact JSON serialization of the trees produced by {@link JSONScanner}. {@link RawJSON}
+ * values are copied through unchanged.
+ * @author grant
+ *
+ */
+public class JSONWriter
+{
+	private static final byte[] hexDigits = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * Write a value.
+	 * @param value Map, List, String, Number, Boolean, RawJSON or null.
+	 * @param output Output stream; this should be buffered.
+	 * @throws IOException On write error.
+	 */
+	@SuppressWarnings("unchecked")
+	public static void write(Object value, OutputStream output) throws IOException
+	{
+		if (value == null) {
+			JSONWriter.writeASCII("null", output);
+		} else if (value instanceof RawJSON) {
+			((RawJSON) value).writeTo(output);
+		} else if (value instanceof String) {
+			JSONWriter.writeString((String) value, output);
+		} else if (value instanceof Map<?, ?>) {
+			output.write('{');
+			boolean first = true;
+			for (Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+				if (!first) {
+					output.write(',');
+				}
+				first = false;
+				JSONWriter.writeString(entry.getKey(), output);
+				output.write(':');
+				JSONWriter.write(entry.getValue(), output);
+			}
+			output.write('}');
+		} else if (value instanceof List<?>) {
+			output.write('[');
+			boolean first = true;
+			for (Object item : (List<Object>) value) {
+				if (!first) {
+					output.write(',');
+				}
+				first = false;
+				JSONWriter.write(item, output);
+			}
+			output.write(']');
+		} else if (value instanceof Number || value instanceof Boolean) {
+			JSONWriter.writeASCII(value.toString(), output);
+		} else {
+			JSONWriter.writeString(value.toString(), output);
+		}
+	}
+
+	/**
+	 * Write a quoted, escaped string.
+	 * @param value String.
+	 * @param output Output stream.
+	 * @throws IOException On write error.
+	 */
+	public static void writeString(String value, OutputStream output) throws IOException
+	{
+		output.write('"');
+		int segment = 0;
+		for (int i = 0; i < value.length(); ++i) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\' || c < 0x20) {
+				output.write(value.substring(segment, i).getBytes(StandardCharsets.UTF_8));
+				output.write('\\');
+				switch (c) {
+					case '"': output.write('"'); break;
+					case '\\': output.write('\\'); break;
+					case '\n': output.write('n'); break;
+					case '\r': output.write('r'); break;
+					case '\t': output.write('t'); break;
+					default:
+						output.write('u');
+						output.write('0');
+						output.write('0');
+						output.write(JSONWriter.hexDigits[c >> 4]);
+						output.write(JSONWriter.hexDigits[c & 0xf]);
+						break;
+				}
+				segment = i + 1;
+			}
+		}
+		output.write(value.substring(segment).getBytes(StandardCharsets.UTF_8));
+		output.write('"');
+	}
+
+	/**
+	 * Write ASCII text.
+	 * @param text Text.
+	 * @param output Output stream.
+	 * @throws IOException On write error.
+	 */
+	private static void writeASCII(String text, OutputStream output) throws IOException
+	{
+		output.write(text.getBytes(StandardCharsets.US_ASCII));
+	}
+}
@@ -0,0 +1,224 @@
+package org.gmc.ssseditor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A map from primitive long keys to values, using open addressing with linear probing.
+ *
+ * Keys are not boxed, and there are no per-entry objects; lookups touch two arrays. Null values
+ * are not allowed, since a null value marks an empty slot.
+ * @author grant
+ *
+ * @param <V> Value type.
+ */
+public class LongMap<V>
+{
+	private long[] keys;
+	private Object[] values;
+	private int size = 0;
+	private int mask;
+	private int resizeAt;
+
+	/**
+	 * Create an empty map.
+	 */
+	public LongMap()
+	{
+		this(16);
+	}
+
+	/**
+	 * Create an empty map sized for the expected number of entries.
+	 * @param expectedSize Expected number of entries.
+	 */
+	public LongMap(int expectedSize)
+	{
+		int capacity = 16;
+		while (capacity * 3 / 4 < expectedSize) {
+			capacity <<= 1;
+		}
+		this.allocate(capacity);
+	}
+
+	/**
+	 * Get the number of entries.
+	 * @return Size.
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Get a value.
+	 * @param key Key.
+	 * @return Value; null if not present.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key)
+	{
+		int slot = LongMap.hash(key) & this.mask;
+		while (this.values[slot] != null) {
+			if (this.keys[slot] == key) {
+				return (V) this.values[slot];
+			}
+			slot = (slot + 1) & this.mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Determine if a key is present.
+	 * @param key Key.
+	 * @return true if present.
+	 */
+	public boolean containsKey(long key)
+	{
+		return this.get(key) != null;
+	}
+
+	/**
+	 * Add or replace a value.
+	 * @param key Key.
+	 * @param value Value; must not be null.
+	 * @return Previous value; null if none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value)
+	{
+		if (value == null) {
+			throw new NullPointerException("LongMap values may not be null");
+		}
+
+		int slot = LongMap.hash(key) & this.mask;
+		while (this.values[slot] != null) {
+			if (this.keys[slot] == key) {
+				V previous = (V) this.values[slot];
+				this.values[slot] = value;
+				return previous;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+
+		this.keys[slot] = key;
+		this.values[slot] = value;
+		if (++this.size > this.resizeAt) {
+			this.rehash(this.keys.length << 1);
+		}
+		return null;
+	}
+
+	/**
+	 * Remove a value.
+	 * @param key Key.
+	 * @return Removed value; null if none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key)
+	{
+		int slot = LongMap.hash(key) & this.mask;
+		while (this.values[slot] != null) {
+			if (this.keys[slot] == key) {
+				V previous = (V) this.values[slot];
+				this.values[slot] = null;
+				--this.size;
+
+				// Move back any following entries that can no longer be reached past the gap.
+				int gap = slot;
+				int next = (slot + 1) & this.mask;
+				while (this.values[next] != null) {
+					int home = LongMap.hash(this.keys[next]) & this.mask;
+					if (((next - home) & this.mask) >= ((next - gap) & this.mask)) {
+						this.keys[gap] = this.keys[next];
+						this.values[gap] = this.values[next];
+						this.values[next] = null;
+						gap = next;
+					}
+					next = (next + 1) & this.mask;
+				}
+				return previous;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Get all keys, in no particular order.
+	 * @return Keys.
+	 */
+	public long[] keys()
+	{
+		long[] result = new long[this.size];
+		int count = 0;
+		for (int i = 0; i < this.values.length; ++i) {
+			if (this.values[i] != null) {
+				result[count++] = this.keys[i];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get all values, in no particular order.
+	 * @return Values.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<V> values()
+	{
+		List<V> result = new ArrayList<V>(this.size);
+		for (Object value : this.values) {
+			if (value != null) {
+				result.add((V) value);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Allocate empty tables.
+	 * @param capacity Capacity; a power of two.
+	 */
+	private void allocate(int capacity)
+	{
+		this.keys = new long[capacity];
+		this.values = new Object[capacity];
+		this.mask = capacity - 1;
+		this.resizeAt = capacity * 3 / 4;
+	}
+
+	/**
+	 * Move all entries to new tables.
+	 * @param capacity New capacity; a power of two.
+	 */
+	private void rehash(int capacity)
+	{
+		long[] oldKeys = this.keys;
+		Object[] oldValues = this.values;
+		this.allocate(capacity);
+		for (int i = 0; i < oldValues.length; ++i) {
+			if (oldValues[i] != null) {
+				int slot = LongMap.hash(oldKeys[i]) & this.mask;
+				while (this.values[slot] != null) {
+					slot = (slot + 1) & this.mask;
+				}
+				this.keys[slot] = oldKeys[i];
+				this.values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * Spread a key's bits; quality IDs are mostly sequential.
+	 * @param key Key.
+	 * @return Hash.
+	 */
+	private static int hash(long key)
+	{
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+}
@@ -0,0 +1,877 @@
+package org.gmc.ssseditor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.gmc.ssseditor.qualities.QualityItem;
+
+/**
+ * Exports the qualities of saves as a table, without the UI: one row per quality, with the save, the
+ * AssociatedQualityId, the name and category from the catalog, the Level, XP, and the equipped possession
+ * and its slot. Many saves may be exported into one table.
+ *
+ * Each save is scanned with {@link JSONScanner}, decoding only the members needed; no tree is built.
+ * Saves are read in parallel, a few at a time, and written in the order given, so memory use does not
+ * grow with the number of saves.
+ *
+ * The table is written as CSV, or in a compact columnar format. The columnar format is big-endian, as
+ * written by DataOutputStream:
+ * <pre>
+ * int magic ("SSQX"), int version (1), int column count, then for each column its name (UTF) and type
+ * (byte: 'L' for integers, 'S' for strings);
+ * then row groups, each of at most 65536 rows: int row count, then each column in turn;
+ * then an int 0.
+ * </pre>
+ * An integer column is a presence bitmap (one bit per row, low bit first, padded to a byte) followed by
+ * the present values, each as a zigzag variable-length (7 bits per byte, low first) difference from the
+ * previous present value in the group, starting from 0. A string column is a count of new dictionary
+ * strings (int) and the strings (UTF), appended to the column's dictionary, which carries over from group
+ * to group; then, for each row, the variable-length dictionary index plus one, or 0 for no value.
+ *
+ * A columnar table can be turned back into the CSV that the same export would have written, with
+ * --decode; see {@link ColumnarReader}.
+ * @author grant
+ *
+ */
+public class QualityExporter
+{
+	/**
+	 * Command line option selecting export mode; it must be the first argument.
+	 */
+	public static final String exportOption = "--export";
+
+	private static final String usage =
+			"Usage: " + QualityExporter.exportOption + " [--format=csv|columnar] [--output=<file>] [--threads=<n>] [--entities=<directory>] <save or directory>...\n"
+			+ "       " + QualityExporter.exportOption + " --decode=<file> [--output=<file>]\n"
+			+ "  Writes the qualities of each save, and of each .json save in each directory, as one table.\n"
+			+ "  --decode=<file>          Convert a columnar table back to CSV, instead of exporting saves.\n"
+			+ "  --format=csv|columnar    Table format; the default is csv.\n"
+			+ "  --output=<file>          Output file; the default is standard output.\n"
+			+ "  --threads=<n>            Number of saves to read at once; the default is one per processor.\n"
+			+ "  --entities=<directory>   The game's entities directory, containing qualities.json, for quality names.";
+
+	private static final int magic = 0x53535158; // "SSQX"
+	private static final int version = 1;
+	private static final int groupSize = 65536;
+
+	/**
+	 * Value of an integer column with no value.
+	 */
+	private static final long missing = Long.MIN_VALUE;
+
+	private static final String[] columnNames = { "save", "id", "name", "category", "level", "xp", "equipped", "slot" };
+	private static final char[] columnTypes = { 'S', 'L', 'S', 'S', 'L', 'L', 'L', 'S' };
+
+	/**
+	 * The qualities of one save, as columns. Names and categories are looked up when writing.
+	 */
+	private static class SaveRows
+	{
+		final String save;
+		String error = null;
+		int count = 0;
+		long[] ids = new long[256];
+		long[] levels = new long[256];
+		long[] xp = new long[256];
+		long[] equipped = new long[256];
+		String[] slots = new String[256];
+
+		SaveRows(String save)
+		{
+			this.save = save;
+		}
+
+		void add(long id, long level, long xp, long equipped, String slot)
+		{
+			if (this.count == this.ids.length) {
+				int capacity = this.count * 2;
+				this.ids = Arrays.copyOf(this.ids, capacity);
+				this.levels = Arrays.copyOf(this.levels, capacity);
+				this.xp = Arrays.copyOf(this.xp, capacity);
+				this.equipped = Arrays.copyOf(this.equipped, capacity);
+				this.slots = Arrays.copyOf(this.slots, capacity);
+			}
+			this.ids[this.count] = id;
+			this.levels[this.count] = level;
+			this.xp[this.count] = xp;
+			this.equipped[this.count] = equipped;
+			this.slots[this.count] = slot;
+			++this.count;
+		}
+	}
+
+	/**
+	 * Receives rows, and writes them in a table format.
+	 */
+	private interface TableWriter
+	{
+		public void write(SaveRows rows) throws IOException;
+		public void finish() throws IOException;
+	}
+
+	/**
+	 * Run export mode.
+	 * @param args Arguments following {@link #exportOption}.
+	 * @return Exit status: 0 if every save was exported, 1 if any could not be read, 2 for a usage or output error.
+	 */
+	public static int run(String[] args)
+	{
+		boolean columnar = false;
+		String output = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String entities = GameFiles.getSunlessSeaDirectory("entities");
+		String decode = null;
+		List<String> operands = new ArrayList<String>();
+		for (String arg : args) {
+			if (arg.startsWith("--decode=")) {
+				decode = arg.substring("--decode=".length());
+			} else if (arg.equals("--format=csv")) {
+				columnar = false;
+			} else if (arg.equals("--format=columnar")) {
+				columnar = true;
+			} else if (arg.startsWith("--output=")) {
+				output = arg.substring("--output=".length());
+			} else if (arg.startsWith("--threads=")) {
+				try {
+					threads = Integer.parseInt(arg.substring("--threads=".length()));
+				} catch (NumberFormatException e) {
+					threads = 0;
+				}
+				if (threads < 1) {
+					System.err.println("Invalid thread count: " + arg);
+					return 2;
+				}
+			} else if (arg.startsWith("--entities=")) {
+				entities = arg.substring("--entities=".length());
+			} else if (arg.startsWith("--")) {
+				System.err.println(QualityExporter.usage);
+				return 2;
+			} else {
+				operands.add(arg);
+			}
+		}
+		if (decode != null) {
+			if (!operands.isEmpty()) {
+				System.err.println(QualityExporter.usage);
+				return 2;
+			}
+			return QualityExporter.decode(new File(decode), output);
+		}
+		if (operands.isEmpty()) {
+			System.err.println(QualityExporter.usage);
+			return 2;
+		}
+
+		try {
+			if (entities != null) {
+				// Only for names and categories; without the catalog, those columns are empty.
+				GameFiles.loadCatalog(entities);
+			}
+		} catch (IOException e) {
+			System.err.println("Cannot read the quality catalog: " + e);
+		}
+
+		List<File> saves = BatchEditor.findSaves(operands);
+		try (OutputStream stream = output != null ? new FileOutputStream(output) : System.out) {
+			OutputStream buffered = new BufferedOutputStream(stream, 65536);
+			TableWriter writer = columnar ? new ColumnarWriter(buffered) : new CsvWriter(buffered);
+			int status = QualityExporter.export(saves, threads, writer);
+			buffered.flush();
+			return status;
+		} catch (IOException e) {
+			System.err.println("Cannot write " + (output != null ? output : "the output") + ": " + e);
+			return 2;
+		}
+	}
+
+	/**
+	 * Convert a columnar table to CSV.
+	 * @param table Columnar table.
+	 * @param output Output file; null for standard output.
+	 * @return Exit status: 0 on success, 1 if the table cannot be read, 2 for an output error.
+	 */
+	private static int decode(File table, String output)
+	{
+		try (ColumnarReader reader = new ColumnarReader(new FileInputStream(table))) {
+			try (OutputStream stream = output != null ? new FileOutputStream(output) : System.out) {
+				OutputStream buffered = new BufferedOutputStream(stream, 65536);
+				CsvWriter writer = new CsvWriter(buffered);
+				Object[] row;
+				while ((row = reader.readRow()) != null) {
+					writer.writeRow(row);
+				}
+				writer.finish();
+				buffered.flush();
+				return 0;
+			} catch (IOException e) {
+				System.err.println("Cannot write " + (output != null ? output : "the output") + ": " + e);
+				return 2;
+			}
+		} catch (IOException e) {
+			System.err.println("Cannot read " + table + ": " + e);
+			return 1;
+		}
+	}
+
+	/**
+	 * Export saves. Saves are read in parallel, a window at a time, and written in order.
+	 * @param saves Save files.
+	 * @param threads Parallelism.
+	 * @param writer Table writer.
+	 * @return Exit status: 0 if every save was exported, 1 if any could not be read.
+	 * @throws IOException On write error.
+	 */
+	private static int export(List<File> saves, int threads, TableWriter writer) throws IOException
+	{
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		int failures = 0;
+		try {
+			for (int start = 0; start < saves.size(); start += threads * 2) {
+				List<Callable<SaveRows>> tasks = new ArrayList<Callable<SaveRows>>();
+				for (final File save : saves.subList(start, Math.min(saves.size(), start + threads * 2))) {
+					tasks.add(new Callable<SaveRows>() {
+						@Override
+						public SaveRows call()
+						{
+							try {
+								return QualityExporter.read(save);
+							} catch (IOException | ParseException | RuntimeException e) {
+								SaveRows failed = new SaveRows(save.getName());
+								failed.error = e.toString();
+								return failed;
+							}
+						}
+					});
+				}
+
+				List<Future<SaveRows>> results = pool.invokeAll(tasks);
+				for (int i = 0; i < results.size(); ++i) {
+					SaveRows rows;
+					try {
+						rows = results.get(i).get();
+					} catch (ExecutionException e) {
+						rows = new SaveRows(saves.get(start + i).getName());
+						rows.error = e.getCause().toString();
+					}
+					if (rows.error != null) {
+						System.err.println(saves.get(start + i).getPath() + ": skipped: " + rows.error);
+						++failures;
+					} else {
+						writer.write(rows);
+					}
+				}
+			}
+			writer.finish();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return 1;
+		} finally {
+			pool.shutdown();
+		}
+		return failures == 0 ? 0 : 1;
+	}
+
+	/**
+	 * Read the qualities of a save. This runs on a pool thread.
+	 * @param save Save file.
+	 * @return Rows.
+	 * @throws IOException On read error.
+	 * @throws ParseException If the save is not valid JSON.
+	 */
+	private static SaveRows read(File save) throws IOException, ParseException
+	{
+		final SaveRows rows = new SaveRows(save.getName());
+		SaveScanner.scanQualities(Files.readAllBytes(save.toPath()), new SaveScanner.IQualityEvents() {
+			@Override
+			public void onQuality(JSONScanner scanner) throws ParseException
+			{
+				QualityExporter.readQuality(scanner, rows);
+			}
+		});
+		return rows;
+	}
+
+	/**
+	 * Read one quality. A quality without an AssociatedQualityId is left out.
+	 * @param scanner Scanner positioned at the '{'.
+	 * @param rows Receives the quality.
+	 * @throws ParseException On malformed input.
+	 */
+	private static void readQuality(JSONScanner scanner, SaveRows rows) throws ParseException
+	{
+		long id = QualityExporter.missing;
+		long level = QualityExporter.missing;
+		long xp = QualityExporter.missing;
+		long equipped = QualityExporter.missing;
+		String slot = null;
+		scanner.expect('{');
+		if (!scanner.consume('}')) {
+			do {
+				if (scanner.consumeKey("AssociatedQualityId")) {
+					id = QualityExporter.readLong(scanner);
+				} else if (scanner.consumeKey("Level")) {
+					level = QualityExporter.readLong(scanner);
+				} else if (scanner.consumeKey("XP")) {
+					xp = QualityExporter.readLong(scanner);
+				} else if (scanner.consumeKey("EquippedPossession")) {
+					if (scanner.peek() != '{') {
+						scanner.skipValue();
+						continue;
+					}
+					// Only the possession's ID, and the slot of its quality, are read.
+					Map<String, Object> possession = QualityExporter.readEquipped(scanner);
+					Long possessionId = JSONUtil.getLong(possession, "AssociatedQualityId");
+					equipped = possessionId != null ? possessionId : QualityExporter.missing;
+					slot = JSONUtil.getString(possession, "AssociatedQuality", "AssignToSlot", "Name");
+				} else {
+					scanner.skipKey();
+					scanner.skipValue();
+				}
+			} while (scanner.consume(','));
+			scanner.expect('}');
+		}
+		if (id != QualityExporter.missing) {
+			rows.add(id, level, xp, equipped, slot);
+		}
+	}
+
+	/**
+	 * Read EquippedPossession: its scalar members, and AssociatedQuality/AssignToSlot/Name.
+	 * @param scanner Scanner positioned at the '{'.
+	 * @return Members read.
+	 * @throws ParseException On malformed input.
+	 */
+	private static Map<String, Object> readEquipped(JSONScanner scanner) throws ParseException
+	{
+		Map<String, Object> result = new HashMap<String, Object>();
+		scanner.expect('{');
+		if (!scanner.consume('}')) {
+			do {
+				if (scanner.consumeKey("AssociatedQuality")) {
+					if (scanner.peek() != '{') {
+						scanner.skipValue();
+						continue;
+					}
+					Map<String, Object> quality = new HashMap<String, Object>();
+					scanner.expect('{');
+					if (!scanner.consume('}')) {
+						do {
+							if (scanner.consumeKey("AssignToSlot")) {
+								quality.put("AssignToSlot", scanner.readValue());
+							} else {
+								scanner.skipKey();
+								scanner.skipValue();
+							}
+						} while (scanner.consume(','));
+						scanner.expect('}');
+					}
+					result.put("AssociatedQuality", quality);
+				} else {
+					String key = scanner.readKey();
+					if (scanner.isContainer()) {
+						scanner.skipValue();
+					} else {
+						result.put(key, scanner.readValue());
+					}
+				}
+			} while (scanner.consume(','));
+			scanner.expect('}');
+		}
+		return result;
+	}
+
+	/**
+	 * Read an integer value.
+	 * @param scanner Scanner positioned at the value.
+	 * @return Value; {@link #missing} if it is not an integer.
+	 * @throws ParseException On malformed input.
+	 */
+	private static long readLong(JSONScanner scanner) throws ParseException
+	{
+		if (scanner.isContainer()) {
+			scanner.skipValue();
+			return QualityExporter.missing;
+		}
+		Object value = scanner.readValue();
+		return value instanceof Long ? (Long) value : QualityExporter.missing;
+	}
+
+	/**
+	 * Get a quality's name from the catalog.
+	 * @param id AssociatedQualityId.
+	 * @return Name; null if not known.
+	 */
+	private static String getName(long id)
+	{
+		QualityItem item = QualityItem.getKnownItem(id);
+		return item != null ? item.getName() : null;
+	}
+
+	/**
+	 * Get a quality's category from the catalog.
+	 * @param id AssociatedQualityId.
+	 * @return Category; null if not known.
+	 */
+	private static String getCategory(long id)
+	{
+		QualityItem item = QualityItem.getKnownItem(id);
+		return item != null ? item.getCategory() : null;
+	}
+
+	/**
+	 * Get the slot of an equipped possession: as given in the save, or else from the catalog.
+	 * @param rows Rows.
+	 * @param row Row.
+	 * @return Slot name; null if nothing is equipped, or the slot is not known.
+	 */
+	private static String getSlot(SaveRows rows, int row)
+	{
+		if (rows.slots[row] != null || rows.equipped[row] == QualityExporter.missing) {
+			return rows.slots[row];
+		}
+		QualityItem item = QualityItem.getKnownItem(rows.equipped[row]);
+		return item != null ? item.getSlot() : null;
+	}
+
+	/**
+	 * Writes the table as CSV (RFC 4180), with a header row. Missing values are empty.
+	 */
+	private static class CsvWriter implements TableWriter
+	{
+		private final Writer output;
+
+		CsvWriter(OutputStream output) throws IOException
+		{
+			this.output = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+			for (int i = 0; i < QualityExporter.columnNames.length; ++i) {
+				this.output.write(i == 0 ? "" : ",");
+				this.output.write(QualityExporter.columnNames[i]);
+			}
+			this.output.write("\r\n");
+		}
+
+		@Override
+		public void write(SaveRows rows) throws IOException
+		{
+			String save = CsvWriter.quote(rows.save);
+			for (int i = 0; i < rows.count; ++i) {
+				this.output.write(save);
+				this.output.write(',');
+				this.output.write(Long.toString(rows.ids[i]));
+				this.output.write(',');
+				this.output.write(CsvWriter.quote(QualityExporter.getName(rows.ids[i])));
+				this.output.write(',');
+				this.output.write(CsvWriter.quote(QualityExporter.getCategory(rows.ids[i])));
+				this.output.write(',');
+				this.writeLong(rows.levels[i]);
+				this.output.write(',');
+				this.writeLong(rows.xp[i]);
+				this.output.write(',');
+				this.writeLong(rows.equipped[i]);
+				this.output.write(',');
+				this.output.write(CsvWriter.quote(QualityExporter.getSlot(rows, i)));
+				this.output.write("\r\n");
+			}
+		}
+
+		/**
+		 * Write a decoded row.
+		 * @param row Values, in column order: String for string columns, Long for integer columns, null if missing.
+		 * @throws IOException On write error.
+		 */
+		void writeRow(Object[] row) throws IOException
+		{
+			for (int i = 0; i < row.length; ++i) {
+				if (i > 0) {
+					this.output.write(',');
+				}
+				if (row[i] instanceof String) {
+					this.output.write(CsvWriter.quote((String) row[i]));
+				} else if (row[i] != null) {
+					this.output.write(row[i].toString());
+				}
+			}
+			this.output.write("\r\n");
+		}
+
+		@Override
+		public void finish() throws IOException
+		{
+			this.output.flush();
+		}
+
+		private void writeLong(long value) throws IOException
+		{
+			if (value != QualityExporter.missing) {
+				this.output.write(Long.toString(value));
+			}
+		}
+
+		/**
+		 * Quote a field if it needs it.
+		 * @param value Field; may be null.
+		 * @return CSV field.
+		 */
+		private static String quote(String value)
+		{
+			if (value == null) {
+				return "";
+			}
+			for (int i = 0; i < value.length(); ++i) {
+				char c = value.charAt(i);
+				if (c == ',' || c == '"' || c == '\r' || c == '\n') {
+					return "\"" + value.replace("\"", "\"\"") + "\"";
+				}
+			}
+			return value;
+		}
+	}
+
+	/**
+	 * Writes the table in the columnar format described above. Rows are buffered until a group is full.
+	 */
+	private static class ColumnarWriter implements TableWriter
+	{
+		private final DataOutputStream output;
+		private final List<SaveRows> pending = new ArrayList<SaveRows>();
+		private int pendingRows = 0;
+
+		/**
+		 * Dictionaries of the string columns, by column; null for integer columns.
+		 */
+		private final List<Map<String, Integer>> dictionaries = new ArrayList<Map<String, Integer>>();
+
+		ColumnarWriter(OutputStream output) throws IOException
+		{
+			this.output = new DataOutputStream(output);
+			this.output.writeInt(QualityExporter.magic);
+			this.output.writeInt(QualityExporter.version);
+			this.output.writeInt(QualityExporter.columnNames.length);
+			for (int i = 0; i < QualityExporter.columnNames.length; ++i) {
+				this.output.writeUTF(QualityExporter.columnNames[i]);
+				this.output.writeByte(QualityExporter.columnTypes[i]);
+				this.dictionaries.add(QualityExporter.columnTypes[i] == 'S' ? new HashMap<String, Integer>() : null);
+			}
+		}
+
+		@Override
+		public void write(SaveRows rows) throws IOException
+		{
+			this.pending.add(rows);
+			this.pendingRows += rows.count;
+			if (this.pendingRows >= QualityExporter.groupSize) {
+				this.writeGroups();
+			}
+		}
+
+		@Override
+		public void finish() throws IOException
+		{
+			this.writeGroups();
+			this.output.writeInt(0);
+			this.output.flush();
+		}
+
+		/**
+		 * Write the pending rows, in groups of at most the group size.
+		 * @throws IOException On write error.
+		 */
+		private void writeGroups() throws IOException
+		{
+			// Gather the pending rows into columns.
+			int count = this.pendingRows;
+			String[] saves = new String[count];
+			long[][] longs = new long[QualityExporter.columnNames.length][];
+			String[] slots = new String[count];
+			longs[1] = new long[count];
+			longs[4] = new long[count];
+			longs[5] = new long[count];
+			longs[6] = new long[count];
+			int row = 0;
+			for (SaveRows rows : this.pending) {
+				Arrays.fill(saves, row, row + rows.count, rows.save);
+				System.arraycopy(rows.ids, 0, longs[1], row, rows.count);
+				System.arraycopy(rows.levels, 0, longs[4], row, rows.count);
+				System.arraycopy(rows.xp, 0, longs[5], row, rows.count);
+				System.arraycopy(rows.equipped, 0, longs[6], row, rows.count);
+				for (int i = 0; i < rows.count; ++i) {
+					slots[row + i] = QualityExporter.getSlot(rows, i);
+				}
+				row += rows.count;
+			}
+			this.pending.clear();
+			this.pendingRows = 0;
+
+			String[] names = new String[count];
+			String[] categories = new String[count];
+			for (int i = 0; i < count; ++i) {
+				names[i] = QualityExporter.getName(longs[1][i]);
+				categories[i] = QualityExporter.getCategory(longs[1][i]);
+			}
+			String[][] strings = { saves, null, names, categories, null, null, null, slots };
+
+			for (int start = 0; start < count; start += QualityExporter.groupSize) {
+				int end = Math.min(count, start + QualityExporter.groupSize);
+				this.output.writeInt(end - start);
+				for (int column = 0; column < QualityExporter.columnNames.length; ++column) {
+					if (strings[column] != null) {
+						this.writeStrings(this.dictionaries.get(column), strings[column], start, end);
+					} else {
+						this.writeLongs(longs[column], start, end);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Write an integer column of a group.
+		 * @param values Values.
+		 * @param start First row of the group.
+		 * @param end End of the group.
+		 * @throws IOException On write error.
+		 */
+		private void writeLongs(long[] values, int start, int end) throws IOException
+		{
+			byte[] present = new byte[(end - start + 7) / 8];
+			for (int i = start; i < end; ++i) {
+				if (values[i] != QualityExporter.missing) {
+					present[(i - start) / 8] |= 1 << ((i - start) % 8);
+				}
+			}
+			this.output.write(present);
+
+			long previous = 0;
+			for (int i = start; i < end; ++i) {
+				if (values[i] != QualityExporter.missing) {
+					VarInts.writeSigned(this.output, values[i] - previous);
+					previous = values[i];
+				}
+			}
+		}
+
+		/**
+		 * Write a string column of a group: the new dictionary strings, then the index of each row's string.
+		 * @param dictionary Column dictionary; updated.
+		 * @param values Values.
+		 * @param start First row of the group.
+		 * @param end End of the group.
+		 * @throws IOException On write error.
+		 */
+		private void writeStrings(Map<String, Integer> dictionary, String[] values, int start, int end) throws IOException
+		{
+			List<String> added = new ArrayList<String>();
+			int[] indexes = new int[end - start];
+			for (int i = start; i < end; ++i) {
+				if (values[i] == null) {
+					continue;
+				}
+				Integer index = dictionary.get(values[i]);
+				if (index == null) {
+					index = dictionary.size();
+					dictionary.put(values[i], index);
+					added.add(values[i]);
+				}
+				indexes[i - start] = index + 1;
+			}
+
+			this.output.writeInt(added.size());
+			for (String value : added) {
+				this.output.writeUTF(value);
+			}
+			for (int index : indexes) {
+				VarInts.write(this.output, index);
+			}
+		}
+	}
+
+	/**
+	 * Reads a table in the columnar format described above, a row at a time. A group is decoded when its
+	 * first row is read.
+	 */
+	static class ColumnarReader implements AutoCloseable
+	{
+		private final DataInputStream input;
+		private final char[] types;
+
+		/**
+		 * Dictionaries of the string columns, by column; null for integer columns.
+		 */
+		private final List<List<String>> dictionaries = new ArrayList<List<String>>();
+
+		/**
+		 * The current group, by column: long[] for integer columns, String[] for string columns.
+		 */
+		private final Object[] columns;
+		private boolean[][] present;
+		private int groupRows = 0;
+		private int row = 0;
+		private boolean ended = false;
+
+		/**
+		 * Open a table, and read its header.
+		 * @param input Table; closed by {@link #close()}.
+		 * @throws IOException On read error, or if this is not a columnar table of a version that can be read.
+		 */
+		ColumnarReader(InputStream input) throws IOException
+		{
+			this.input = new DataInputStream(new BufferedInputStream(input, 65536));
+			if (this.input.readInt() != QualityExporter.magic) {
+				throw new IOException("Not a columnar table");
+			}
+			int version = this.input.readInt();
+			if (version != QualityExporter.version) {
+				throw new IOException("Unsupported table version " + version);
+			}
+			int count = this.input.readInt();
+			if (count < 0) {
+				throw new IOException("Bad column count " + count);
+			}
+			this.types = new char[count];
+			this.columns = new Object[count];
+			this.present = new boolean[count][];
+			for (int i = 0; i < count; ++i) {
+				this.input.readUTF();
+				this.types[i] = (char) this.input.readUnsignedByte();
+				if (this.types[i] != 'L' && this.types[i] != 'S') {
+					throw new IOException("Bad column type " + this.types[i]);
+				}
+				this.dictionaries.add(this.types[i] == 'S' ? new ArrayList<String>() : null);
+			}
+		}
+
+		/**
+		 * Read the next row.
+		 * @return Values, in column order: String for string columns, Long for integer columns, null if missing;
+		 * null at the end of the table.
+		 * @throws IOException On read error, or if the table is malformed.
+		 */
+		Object[] readRow() throws IOException
+		{
+			while (this.row == this.groupRows) {
+				if (this.ended || !this.readGroup()) {
+					this.ended = true;
+					return null;
+				}
+			}
+
+			Object[] values = new Object[this.columns.length];
+			for (int column = 0; column < this.columns.length; ++column) {
+				if (this.types[column] == 'S') {
+					values[column] = ((String[]) this.columns[column])[this.row];
+				} else if (this.present[column][this.row]) {
+					values[column] = ((long[]) this.columns[column])[this.row];
+				}
+			}
+			++this.row;
+			return values;
+		}
+
+		/**
+		 * Read a group.
+		 * @return False at the end of the table.
+		 * @throws IOException On read error, or if the group is malformed.
+		 */
+		private boolean readGroup() throws IOException
+		{
+			int count = this.input.readInt();
+			if (count == 0) {
+				return false;
+			}
+			if (count < 0 || count > QualityExporter.groupSize) {
+				throw new IOException("Bad group size " + count);
+			}
+
+			for (int column = 0; column < this.columns.length; ++column) {
+				if (this.types[column] == 'S') {
+					this.columns[column] = this.readStrings(this.dictionaries.get(column), count);
+				} else {
+					this.readLongs(column, count);
+				}
+			}
+			this.groupRows = count;
+			this.row = 0;
+			return true;
+		}
+
+		/**
+		 * Read an integer column of a group.
+		 * @param column Column.
+		 * @param count Rows in the group.
+		 * @throws IOException On read error.
+		 */
+		private void readLongs(int column, int count) throws IOException
+		{
+			byte[] bitmap = new byte[(count + 7) / 8];
+			this.input.readFully(bitmap);
+			boolean[] present = new boolean[count];
+			long[] values = new long[count];
+			long previous = 0;
+			for (int i = 0; i < count; ++i) {
+				present[i] = (bitmap[i / 8] & (1 << (i % 8))) != 0;
+				if (present[i]) {
+					previous += VarInts.readSigned(this.input);
+					values[i] = previous;
+				}
+			}
+			this.present[column] = present;
+			this.columns[column] = values;
+		}
+
+		/**
+		 * Read a string column of a group.
+		 * @param dictionary Column dictionary; updated.
+		 * @param count Rows in the group.
+		 * @return Values; null where missing.
+		 * @throws IOException On read error, or if an index is outside the dictionary.
+		 */
+		private String[] readStrings(List<String> dictionary, int count) throws IOException
+		{
+			int added = this.input.readInt();
+			if (added < 0) {
+				throw new IOException("Bad dictionary size " + added);
+			}
+			for (int i = 0; i < added; ++i) {
+				dictionary.add(this.input.readUTF());
+			}
+
+			String[] values = new String[count];
+			for (int i = 0; i < count; ++i) {
+				long index = VarInts.read(this.input);
+				if (index < 0 || index > dictionary.size()) {
+					throw new IOException("Bad dictionary index " + index);
+				}
+				values[i] = index == 0 ? null : dictionary.get((int) index - 1);
+			}
+			return values;
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			this.input.close();
+		}
+	}
+}
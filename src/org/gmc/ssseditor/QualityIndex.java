@@ -0,0 +1,432 @@
+package org.gmc.ssseditor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * The quality Levels of every save in a directory, for answering a {@link QualityQuery} such as "saves where
+ * echos &gt;= 5000" without reading the saves.
+ *
+ * The Levels are kept in a binary index file between runs, and refreshed as the {@link SaveIndex} is: only new
+ * and changed saves are read, in parallel, each with the same scan as a save diff. In memory they are inverted:
+ * for each quality, the saves that have it and their Levels. A query evaluates each condition from one quality's
+ * list to a set of saves, and intersects the sets.
+ * @author grant
+ *
+ */
+public class QualityIndex
+{
+	private static final int magic = 0x53535149; // "SSQI"
+	private static final int version = 1;
+
+	/**
+	 * The Levels of one save.
+	 */
+	private static class Entry
+	{
+		final File file;
+		final long size;
+		final long lastModified;
+		final SaveDiff.Levels levels;
+		final String error;
+
+		Entry(File file, long size, long lastModified, SaveDiff.Levels levels, String error)
+		{
+			this.file = file;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.levels = levels;
+			this.error = error;
+		}
+	}
+
+	/**
+	 * The saves that have one quality, in save order, with their Levels.
+	 */
+	private static class Postings
+	{
+		int[] saves = new int[4];
+		long[] levels = new long[4];
+		int count = 0;
+
+		void add(int save, long level)
+		{
+			if (this.count == this.saves.length) {
+				this.saves = Arrays.copyOf(this.saves, this.count * 2);
+				this.levels = Arrays.copyOf(this.levels, this.count * 2);
+			}
+			this.saves[this.count] = save;
+			this.levels[this.count] = level;
+			++this.count;
+		}
+	}
+
+	/**
+	 * A save that matches a query.
+	 */
+	public static class Match
+	{
+		private final File file;
+		private final Long[] levels;
+
+		Match(File file, Long[] levels)
+		{
+			this.file = file;
+			this.levels = levels;
+		}
+
+		/**
+		 * Get the save file.
+		 * @return File.
+		 */
+		public File getFile()
+		{
+			return this.file;
+		}
+
+		/**
+		 * Get the Level the save has of the quality in a condition.
+		 * @param condition Condition index, in the query's order.
+		 * @return Level; {@link SaveDiff#noLevel} if the quality has none; null if the save does not have it.
+		 */
+		public Long getLevel(int condition)
+		{
+			return this.levels[condition];
+		}
+	}
+
+	private final File directory;
+	private final File indexFile;
+
+	/**
+	 * Levels by file name; null until the index file has been read.
+	 */
+	private Map<String, Entry> entries = null;
+
+	/**
+	 * The saves that were read, sorted by name; a save's position here is its number in the postings.
+	 */
+	private Entry[] saves = new Entry[0];
+	private LongMap<Postings> postings = new LongMap<Postings>();
+
+	/**
+	 * Create an index.
+	 * @param directory Saves directory.
+	 * @param indexFile Index file. It need not exist.
+	 */
+	public QualityIndex(File directory, File indexFile)
+	{
+		this.directory = directory;
+		this.indexFile = indexFile;
+	}
+
+	/**
+	 * Bring the index up to date with the directory. This may take some time, and should not be run on the event thread.
+	 * @return Number of saves indexed, including any that could not be read.
+	 * @throws InterruptedException If interrupted while reading saves.
+	 */
+	public synchronized int refresh() throws InterruptedException
+	{
+		boolean first = this.entries == null;
+		if (first) {
+			this.entries = this.readIndex();
+		}
+
+		File[] files = this.directory.listFiles();
+		if (files == null) {
+			files = new File[0];
+		}
+
+		Map<String, Entry> current = new HashMap<String, Entry>();
+		List<Callable<Entry>> reads = new ArrayList<Callable<Entry>>();
+		for (final File file : files) {
+			if (!file.isFile() || !file.getName().toLowerCase().endsWith(".json")) {
+				continue;
+			}
+			Entry entry = this.entries.get(file.getName());
+			if (entry != null && entry.size == file.length() && entry.lastModified == file.lastModified()) {
+				current.put(file.getName(), entry);
+			} else {
+				reads.add(new Callable<Entry>() {
+					@Override
+					public Entry call()
+					{
+						return QualityIndex.read(file);
+					}
+				});
+			}
+		}
+
+		boolean changed = !reads.isEmpty() || current.size() != this.entries.size();
+		for (Future<Entry> read : ForkJoinPool.commonPool().invokeAll(reads)) {
+			try {
+				Entry entry = read.get();
+				current.put(entry.file.getName(), entry);
+			} catch (ExecutionException e) {
+				// QualityIndex.read reports errors in the entry; anything else is a bug.
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+
+		this.entries = current;
+		if (changed) {
+			this.writeIndex();
+		}
+		if (changed || first) {
+			this.invert();
+		}
+		return current.size();
+	}
+
+	/**
+	 * Find the saves that match a query. The index is as of the last {@link #refresh()}.
+	 * @param query Query.
+	 * @return Matching saves, sorted by name. Saves that could not be read never match.
+	 */
+	public synchronized List<Match> query(QualityQuery query)
+	{
+		List<QualityQuery.Condition> conditions = query.getConditions();
+		BitSet result = new BitSet(this.saves.length);
+		result.set(0, this.saves.length);
+		for (QualityQuery.Condition condition : conditions) {
+			result.and(this.evaluate(condition));
+		}
+
+		List<Match> matches = new ArrayList<Match>();
+		for (int save = result.nextSetBit(0); save >= 0; save = result.nextSetBit(save + 1)) {
+			Long[] levels = new Long[conditions.size()];
+			for (int i = 0; i < levels.length; ++i) {
+				levels[i] = this.saves[save].levels.getLevel(conditions.get(i).getId());
+			}
+			matches.add(new Match(this.saves[save].file, levels));
+		}
+		return matches;
+	}
+
+	/**
+	 * Get the number of saves a query was run over.
+	 * @return Number of saves read, as of the last {@link #refresh()}.
+	 */
+	public synchronized int getSaveCount()
+	{
+		return this.saves.length;
+	}
+
+	/**
+	 * Get the saves that could not be read.
+	 * @return File name and error of each, as of the last {@link #refresh()}.
+	 */
+	public synchronized Map<String, String> getErrors()
+	{
+		Map<String, String> result = new HashMap<String, String>();
+		for (Entry entry : this.entries.values()) {
+			if (entry.error != null) {
+				result.put(entry.file.getName(), entry.error);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Find the saves that meet one condition.
+	 * @param condition Condition.
+	 * @return Save numbers.
+	 */
+	private BitSet evaluate(QualityQuery.Condition condition)
+	{
+		BitSet result = new BitSet(this.saves.length);
+		Postings list = this.postings.get(condition.getId());
+		if (list != null) {
+			for (int i = 0; i < list.count; ++i) {
+				if (condition.matches(list.levels[i])) {
+					result.set(list.saves[i]);
+				}
+			}
+		}
+
+		if (condition.isAbsence()) {
+			result.flip(0, this.saves.length);
+			if (list != null) {
+				for (int i = 0; i < list.count; ++i) {
+					result.clear(list.saves[i]);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Rebuild the per-quality lists from the Levels of each save.
+	 */
+	private void invert()
+	{
+		List<Entry> readable = new ArrayList<Entry>();
+		for (Entry entry : this.entries.values()) {
+			if (entry.levels != null) {
+				readable.add(entry);
+			}
+		}
+		Entry[] saves = readable.toArray(new Entry[readable.size()]);
+		Arrays.sort(saves, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry o1, Entry o2)
+			{
+				return o1.file.getName().compareTo(o2.file.getName());
+			}
+		});
+
+		LongMap<Postings> postings = new LongMap<Postings>(8192);
+		for (int save = 0; save < saves.length; ++save) {
+			long[] ids = saves[save].levels.getIds();
+			long[] levels = saves[save].levels.getLevels();
+			for (int i = 0; i < ids.length; ++i) {
+				Postings list = postings.get(ids[i]);
+				if (list == null) {
+					list = new Postings();
+					postings.put(ids[i], list);
+				}
+				list.add(save, levels[i]);
+			}
+		}
+
+		this.saves = saves;
+		this.postings = postings;
+	}
+
+	/**
+	 * Read the Levels of a save.
+	 * @param file Save file.
+	 * @return Entry; with the error if the save could not be read.
+	 */
+	private static Entry read(File file)
+	{
+		long size = file.length();
+		long lastModified = file.lastModified();
+		try {
+			return new Entry(file, size, lastModified, SaveDiff.Levels.read(file), null);
+		} catch (IOException | ParseException e) {
+			return new Entry(file, size, lastModified, null, e.toString());
+		}
+	}
+
+	/**
+	 * Read the index file.
+	 * @return Entries by file name; empty if the index is missing, for another directory, or unreadable.
+	 */
+	private Map<String, Entry> readIndex()
+	{
+		Map<String, Entry> result = new HashMap<String, Entry>();
+		if (!this.indexFile.isFile()) {
+			return result;
+		}
+
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(this.indexFile)))) {
+			if (input.readInt() != QualityIndex.magic || input.readInt() != QualityIndex.version
+					|| !input.readUTF().equals(this.directory.getAbsolutePath())) {
+				return result;
+			}
+
+			int count = input.readInt();
+			for (int i = 0; i < count; ++i) {
+				File file = new File(this.directory, input.readUTF());
+				long size = input.readLong();
+				long lastModified = input.readLong();
+				SaveDiff.Levels levels = null;
+				String error = null;
+				if (input.readBoolean()) {
+					error = input.readUTF();
+				} else {
+					int qualities = input.readInt();
+					long[] ids = new long[qualities];
+					long[] values = new long[qualities];
+					long id = 0;
+					for (int j = 0; j < qualities; ++j) {
+						id += VarInts.read(input);
+						ids[j] = id;
+					}
+					for (int j = 0; j < qualities; ++j) {
+						values[j] = VarInts.readSigned(input);
+					}
+					levels = new SaveDiff.Levels(ids, values);
+				}
+				result.put(file.getName(), new Entry(file, size, lastModified, levels, error));
+			}
+			return result;
+		} catch (IOException e) {
+			// Treat as empty; the index will be rebuilt.
+			return new HashMap<String, Entry>();
+		}
+	}
+
+	/**
+	 * Write the index file. IDs are written as differences from the one before, and Levels as signed, both
+	 * as {@link VarInts}, as most are small. Failure to write is not an error; the saves will be read
+	 * again next time.
+	 */
+	private void writeIndex()
+	{
+		File temporary = new File(this.indexFile.getPath() + ".tmp");
+		File parent = this.indexFile.getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+			output.writeInt(QualityIndex.magic);
+			output.writeInt(QualityIndex.version);
+			output.writeUTF(this.directory.getAbsolutePath());
+			output.writeInt(this.entries.size());
+			for (Entry entry : this.entries.values()) {
+				output.writeUTF(entry.file.getName());
+				output.writeLong(entry.size);
+				output.writeLong(entry.lastModified);
+				output.writeBoolean(entry.error != null);
+				if (entry.error != null) {
+					output.writeUTF(entry.error);
+					continue;
+				}
+
+				long[] ids = entry.levels.getIds();
+				long[] levels = entry.levels.getLevels();
+				output.writeInt(ids.length);
+				long previous = 0;
+				for (long id : ids) {
+					VarInts.write(output, id - previous);
+					previous = id;
+				}
+				for (long level : levels) {
+					VarInts.writeSigned(output, level);
+				}
+			}
+		} catch (IOException e) {
+			temporary.delete();
+			return;
+		}
+
+		try {
+			Files.move(temporary.toPath(), this.indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			temporary.delete();
+		}
+	}
+}
@@ -0,0 +1,345 @@
+package org.gmc.ssseditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.gmc.ssseditor.qualities.NameIndex;
+import org.gmc.ssseditor.qualities.QualityItem;
+
+/**
+ * A query over the qualities of saves: one or more conditions, all of which a save must meet. Typed as one line,
+ * as in the save browser, the conditions are joined by "and"; on the command line, each argument is one condition.
+ *
+ * <pre>
+ * &lt;quality&gt;                  The save has the quality.
+ * !&lt;quality&gt;                 The save does not have the quality.
+ * &lt;quality&gt; &lt;op&gt; &lt;number&gt;    The save has the quality, with a Level compared as given: &gt;=, &gt;, &lt;=, &lt;, = or !=.
+ * </pre>
+ *
+ * A quality is given by ID, by the name of a known quality (in any case), or by the name of one of the fixed
+ * qualities of {@link EditScript}, such as echos. For example: "Cladery Heart and echos &gt;= 5000".
+ * @author grant
+ *
+ */
+public class QualityQuery
+{
+	/**
+	 * Command line option selecting query mode; it must be the first argument.
+	 */
+	public static final String queryOption = "--query";
+
+	private static final String usage =
+			"Usage: " + QualityQuery.queryOption + " [--saves=<directory>] [--entities=<directory>] <condition>...\n"
+			+ "  Lists the saves whose qualities meet all the conditions, such as: \"Cladery Heart\" \"echos >= 5000\"\n"
+			+ "  Each argument is one condition; quote a condition that contains spaces.\n"
+			+ "  A condition is <quality>, !<quality>, or <quality> <op> <number>, where <op> is one of >= > <= < = !=.\n"
+			+ "  A quality is an ID, the name of a known quality, or one of the names used in edit scripts.\n"
+			+ "  --saves=<directory>      The saves directory; by default, the game's.\n"
+			+ "  --entities=<directory>   The game's entities directory, containing qualities.json, for quality names.\n"
+			+ "  The exit status is 0 if any save matches, 1 if none does, 2 on error.";
+
+	/**
+	 * A condition on one quality.
+	 */
+	public static class Condition
+	{
+		private final long id;
+		private final String operator;
+		private final long value;
+
+		Condition(long id, String operator, long value)
+		{
+			this.id = id;
+			this.operator = operator;
+			this.value = value;
+		}
+
+		/**
+		 * Get the quality.
+		 * @return AssociatedQualityId.
+		 */
+		public long getId()
+		{
+			return this.id;
+		}
+
+		/**
+		 * Check whether the condition requires the quality to be absent.
+		 * @return true for "!quality".
+		 */
+		boolean isAbsence()
+		{
+			return this.operator.equals("!");
+		}
+
+		/**
+		 * Check a Level against the condition. The save is known to have the quality.
+		 * @param level Level; {@link SaveDiff#noLevel} if it has none.
+		 * @return true if the condition is met.
+		 */
+		boolean matches(long level)
+		{
+			switch (this.operator) {
+			case "":
+				return true;
+			case "!":
+				return false;
+			}
+			if (level == SaveDiff.noLevel) {
+				return false;
+			}
+			switch (this.operator) {
+			case ">=":
+				return level >= this.value;
+			case ">":
+				return level > this.value;
+			case "<=":
+				return level <= this.value;
+			case "<":
+				return level < this.value;
+			case "=":
+				return level == this.value;
+			default:
+				return level != this.value;
+			}
+		}
+
+		@Override
+		public String toString()
+		{
+			String name = QualityQuery.getName(this.id);
+			if (this.operator.isEmpty() || this.operator.equals("!")) {
+				return this.operator + name;
+			}
+			return name + " " + this.operator + " " + this.value;
+		}
+	}
+
+	private static final Pattern comparison = Pattern.compile("(.*?)\\s*(>=|<=|!=|=|>|<)\\s*(-?\\d+)");
+	private static final Pattern separator = Pattern.compile("\\s+and\\s+", Pattern.CASE_INSENSITIVE);
+
+	private final List<Condition> conditions;
+
+	/**
+	 * Parse a query typed as one line, with its conditions joined by "and".
+	 * @param text Query.
+	 * @param names Index of quality names; null to allow only IDs and the fixed names.
+	 * @return Query.
+	 * @throws ParseException If a condition is not valid, or a quality not known; the error offset is the condition's number, from 1.
+	 */
+	public static QualityQuery parse(String text, NameIndex names) throws ParseException
+	{
+		return QualityQuery.parse(Arrays.asList(QualityQuery.separator.split(text.trim())), names);
+	}
+
+	/**
+	 * Parse a query given as separate conditions, such as command-line arguments. A condition is not split
+	 * further, so a quality name may contain "and".
+	 * @param parts Conditions.
+	 * @param names Index of quality names; null to allow only IDs and the fixed names.
+	 * @return Query.
+	 * @throws ParseException If a condition is not valid, or a quality not known; the error offset is the condition's number, from 1.
+	 */
+	public static QualityQuery parse(List<String> parts, NameIndex names) throws ParseException
+	{
+		List<Condition> conditions = new ArrayList<Condition>();
+		for (int i = 0; i < parts.size(); ++i) {
+			conditions.add(QualityQuery.parseCondition(parts.get(i).trim(), i + 1, names));
+		}
+		return new QualityQuery(conditions);
+	}
+
+	/**
+	 * Parse one condition.
+	 * @param part Condition, trimmed.
+	 * @param position Condition number.
+	 * @param names Index of quality names; may be null.
+	 * @return Condition.
+	 * @throws ParseException If the condition is not valid.
+	 */
+	private static Condition parseCondition(String part, int position, NameIndex names) throws ParseException
+	{
+		if (part.isEmpty()) {
+			throw new ParseException("Empty condition", position);
+		}
+
+		if (part.startsWith("!") && !part.startsWith("!=")) {
+			return new Condition(QualityQuery.parseQuality(part.substring(1).trim(), position, names), "!", 0);
+		}
+		Matcher matcher = QualityQuery.comparison.matcher(part);
+		if (!matcher.matches()) {
+			return new Condition(QualityQuery.parseQuality(part, position, names), "", 0);
+		}
+		long value;
+		try {
+			value = Long.parseLong(matcher.group(3));
+		} catch (NumberFormatException e) {
+			throw new ParseException("'" + matcher.group(3) + "' is out of range", position);
+		}
+		return new Condition(QualityQuery.parseQuality(matcher.group(1), position, names), matcher.group(2), value);
+	}
+
+	/**
+	 * Create a query.
+	 * @param conditions Conditions.
+	 */
+	private QualityQuery(List<Condition> conditions)
+	{
+		this.conditions = Collections.unmodifiableList(conditions);
+	}
+
+	/**
+	 * Get the conditions.
+	 * @return Conditions, in the order given.
+	 */
+	public List<Condition> getConditions()
+	{
+		return this.conditions;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder result = new StringBuilder();
+		for (Condition condition : this.conditions) {
+			result.append(result.length() > 0 ? " and " : "").append(condition);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Parse a quality, by ID or name.
+	 * @param text Quality.
+	 * @param position Condition number.
+	 * @param names Index of quality names; may be null.
+	 * @return AssociatedQualityId.
+	 * @throws ParseException If the quality is not known, or the name is ambiguous.
+	 */
+	private static long parseQuality(String text, int position, NameIndex names) throws ParseException
+	{
+		if (text.isEmpty()) {
+			throw new ParseException("Missing quality", position);
+		}
+		try {
+			return Long.parseLong(text);
+		} catch (NumberFormatException e) {
+			// A name.
+		}
+
+		QualityItem named = EditScript.getNamedQuality(text);
+		if (named != null) {
+			return named.getTag();
+		}
+
+		// The index finds names containing the text; only those equal to it are wanted.
+		List<QualityItem> found = new ArrayList<QualityItem>();
+		if (names != null) {
+			for (QualityItem item : names.find(text)) {
+				if (item.getName().equalsIgnoreCase(text)) {
+					found.add(item);
+				}
+			}
+		}
+		if (found.isEmpty()) {
+			throw new ParseException("'" + text + "' is not a quality ID or known name", position);
+		} else if (found.size() > 1) {
+			StringBuilder ids = new StringBuilder();
+			for (QualityItem item : found) {
+				ids.append(ids.length() > 0 ? ", " : "").append(item.getTag());
+			}
+			throw new ParseException("'" + text + "' is the name of several qualities; give one of the IDs: " + ids, position);
+		}
+		return found.get(0).getTag();
+	}
+
+	/**
+	 * Get a quality's name for display.
+	 * @param id AssociatedQualityId.
+	 * @return Name of the known quality; the ID if it is not known.
+	 */
+	static String getName(long id)
+	{
+		QualityItem item = QualityItem.getKnownItem(id);
+		return item != null && item.getName() != null ? item.getName() : Long.toString(id);
+	}
+
+	/**
+	 * Run query mode.
+	 * @param args Arguments following {@link #queryOption}.
+	 * @return Exit status: 0 if any save matches, 1 if none does, 2 on error.
+	 */
+	public static int run(String[] args)
+	{
+		String saves = GameFiles.getSunlessSeaDirectory("saves");
+		String entities = GameFiles.getSunlessSeaDirectory("entities");
+		List<String> parts = new ArrayList<String>();
+		for (String arg : args) {
+			if (arg.startsWith("--saves=")) {
+				saves = arg.substring("--saves=".length());
+			} else if (arg.startsWith("--entities=")) {
+				entities = arg.substring("--entities=".length());
+			} else if (arg.startsWith("--")) {
+				System.err.println(QualityQuery.usage);
+				return 2;
+			} else {
+				parts.add(arg);
+			}
+		}
+		if (parts.isEmpty() || saves == null) {
+			System.err.println(QualityQuery.usage);
+			return 2;
+		}
+
+		try {
+			if (entities != null) {
+				// Names are needed to parse conditions that use them; IDs work without the catalog.
+				GameFiles.loadCatalog(entities);
+			}
+		} catch (IOException e) {
+			System.err.println("Cannot read the quality catalog: " + e);
+		}
+
+		QualityQuery query;
+		try {
+			query = QualityQuery.parse(parts, new NameIndex(QualityItem.getKnownItems()));
+		} catch (ParseException e) {
+			System.err.println("Condition " + e.getErrorOffset() + ": " + e.getMessage());
+			return 2;
+		}
+
+		QualityIndex index = new QualityIndex(new File(saves), new File(GameFiles.getEditorDirectory(), "qualities.index"));
+		try {
+			index.refresh();
+		} catch (InterruptedException e) {
+			return 2;
+		}
+		for (Map.Entry<String, String> error : index.getErrors().entrySet()) {
+			System.err.println(error.getKey() + ": " + error.getValue());
+		}
+
+		List<QualityIndex.Match> matches = index.query(query);
+		List<Condition> conditions = query.getConditions();
+		for (QualityIndex.Match match : matches) {
+			StringBuilder line = new StringBuilder(match.getFile().getName());
+			String separator = ": ";
+			for (int i = 0; i < conditions.size(); ++i) {
+				Long level = match.getLevel(i);
+				if (level != null) {
+					line.append(separator).append(QualityQuery.getName(conditions.get(i).getId())).append(" = ").append(SaveDiff.formatLevel(level));
+					separator = ", ";
+				}
+			}
+			System.out.println(line);
+		}
+		System.out.println(matches.size() + " of " + index.getSaveCount() + " saves match " + query);
+		return matches.isEmpty() ? 1 : 0;
+	}
+}
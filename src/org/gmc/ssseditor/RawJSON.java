@@ -0,0 +1,65 @@
+package org.gmc.ssseditor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A JSON value that was not parsed; it is held as a byte range in the source file and
+ * written back out unchanged.
+ * @author grant
+ *
+ */
+public class RawJSON
+{
+	private final byte[] source;
+	private final int offset;
+	private final int length;
+
+	/**
+	 * Create a raw value.
+	 * @param source Source bytes; not copied.
+	 * @param offset Offset of the value.
+	 * @param length Length of the value.
+	 */
+	public RawJSON(byte[] source, int offset, int length)
+	{
+		this.source = source;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * Get the offset of the value in the source.
+	 * @return Offset.
+	 */
+	public int getOffset()
+	{
+		return this.offset;
+	}
+
+	/**
+	 * Get the length of the value in the source.
+	 * @return Length.
+	 */
+	public int getLength()
+	{
+		return this.length;
+	}
+
+	/**
+	 * Write the value unchanged.
+	 * @param output Output stream.
+	 * @throws IOException On write error.
+	 */
+	public void writeTo(OutputStream output) throws IOException
+	{
+		output.write(this.source, this.offset, this.length);
+	}
+
+	@Override
+	public String toString()
+	{
+		return new String(this.source, this.offset, this.length, StandardCharsets.UTF_8);
+	}
+}
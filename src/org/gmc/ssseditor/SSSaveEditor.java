@@ -1,47 +1,438 @@
 package org.gmc.ssseditor;
 
 import java.awt.EventQueue;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.JFileChooser;
 import javax.swing.JLabel;
+import javax.swing.SwingWorker;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import org.gmc.ssseditor.qualities.Companion;
 import org.gmc.ssseditor.qualities.Good;
 import org.gmc.ssseditor.qualities.ItemTags;
+import org.gmc.ssseditor.qualities.NameIndex;
 import org.gmc.ssseditor.qualities.QualitiesList;
 import org.gmc.ssseditor.qualities.QualityItem;
 import org.gmc.ssseditor.qualities.Ship;
+import org.gmc.ssseditor.ui.DispatchMonitor;
+import org.gmc.ssseditor.ui.IQualityView;
 import org.gmc.ssseditor.ui.QualityItemUI;
 import org.gmc.ssseditor.ui.QualityItemUI.IQualityItemUIEvents;
 import org.gmc.ssseditor.ui.SSSaveEditorUI;
 
-import com.owlike.genson.Genson;
+public class SSSaveEditor implements SSSaveEditorUI.ISaveEditorEvents, IQualityItemUIEvents, SaveWatcher.ISaveWatcherEvents {
 
-public class SSSaveEditor implements SSSaveEditorUI.ISaveEditorEvents, IQualityItemUIEvents {
+	/**
+	 * Command line option to monitor event dispatch: --diagnostics, or --diagnostics=<stall threshold in ms>.
+	 */
+	private static final String diagnosticsOption = "--diagnostics";
+	private static final long defaultStallThreshold = 200;
+
+	/**
+	 * The result of the background part of loading a save file.
+	 */
+	private static class LoadedSave
+	{
+		File source;
+		SaveFile saveFile;
+		/**
+		 * The qualities to show and edit: those of the save, or, when reloading, those merged with the edits made here.
+		 */
+		ArrayList<Object> qualities;
+		Date inGameDate;
+		/**
+		 * The save quality for the current ship (AssociatedQualityId 102889), and its configuration Ship.
+		 */
+		Map<String, Object> shipQuality;
+		Ship shipBase;
+		/**
+		 * All save-file qualities, by AssociatedQualityId. If an ID occurs more than once, the first is indexed.
+		 */
+		LongMap<Map<String, Object>> saveIndex;
+		/**
+		 * IDs of qualities shown on the fixed panels rather than the category tabs.
+		 */
+		long[] displayedQualities;
+	}
+
+	/**
+	 * Builds the quality name index on a worker thread, and gives it to the UI when done.
+	 */
+	private class NameIndexBuilder extends SwingWorker<NameIndex, Void>
+	{
+		private final List<QualityItem> items;
+
+		NameIndexBuilder(List<QualityItem> items)
+		{
+			this.items = items;
+		}
+
+		@Override
+		protected NameIndex doInBackground() throws Exception
+		{
+			return new NameIndex(this.items);
+		}
+
+		@Override
+		protected void done()
+		{
+			try {
+				SSSaveEditor.this.nameIndex = this.get();
+				SSSaveEditor.this.ui.setNameIndex(SSSaveEditor.this.nameIndex);
+			} catch (InterruptedException | ExecutionException e) {
+				// Searching is not available.
+			}
+		}
+	}
+
+	/**
+	 * Brings the save index up to date on a worker thread, then shows the save browser.
+	 */
+	private class SaveIndexer extends SwingWorker<List<SaveSummary>, Void>
+	{
+		@Override
+		protected List<SaveSummary> doInBackground() throws Exception
+		{
+			List<SaveSummary> summaries = SSSaveEditor.this.saveIndex.refresh();
+			SSSaveEditor.this.qualityIndex.refresh();
+			return summaries;
+		}
+
+		@Override
+		protected void done()
+		{
+			SSSaveEditor.this.indexer = null;
+			if (SSSaveEditor.this.loader == null) {
+				SSSaveEditor.this.ui.hideProgress();
+			}
+
+			List<SaveSummary> summaries;
+			try {
+				summaries = this.get();
+			} catch (InterruptedException | ExecutionException e) {
+				SSSaveEditor.this.ui.displayErrorDialog("Error reading the saves directory", "Error");
+				return;
+			}
+
+			File chosen = SSSaveEditor.this.ui.chooseSave(summaries, new SSSaveEditorUI.ISaveQuery() {
+				@Override
+				public Set<File> findSaves(String query) throws ParseException
+				{
+					Set<File> result = new HashSet<File>();
+					for (QualityIndex.Match match : SSSaveEditor.this.qualityIndex.query(QualityQuery.parse(query, SSSaveEditor.this.nameIndex))) {
+						result.add(match.getFile());
+					}
+					return result;
+				}
+			});
+			if (chosen != null) {
+				SSSaveEditor.this.loadFile(chosen);
+			}
+		}
+	}
+
+	/**
+	 * Reads a save on a worker thread, and compares it with the qualities of the save being edited.
+	 */
+	private class SaveComparer extends SwingWorker<List<SaveDiff.Change>, Void>
+	{
+		private final String beforeName;
+		private final Callable<SaveDiff.Levels> before;
+		private final SaveDiff.Levels after;
+
+		/**
+		 * Create a comparer.
+		 * @param beforeName Name of the save to compare with, for messages.
+		 * @param before Reads the save to compare with.
+		 * @param after Qualities of the save being edited.
+		 */
+		SaveComparer(String beforeName, Callable<SaveDiff.Levels> before, SaveDiff.Levels after)
+		{
+			this.beforeName = beforeName;
+			this.before = before;
+			this.after = after;
+		}
+
+		@Override
+		protected List<SaveDiff.Change> doInBackground() throws Exception
+		{
+			return SaveDiff.compare(this.before.call(), this.after);
+		}
+
+		@Override
+		protected void done()
+		{
+			SSSaveEditor.this.comparer = null;
+			if (SSSaveEditor.this.loader == null) {
+				SSSaveEditor.this.ui.hideProgress();
+			}
+
+			List<SaveDiff.Change> changes;
+			try {
+				changes = this.get();
+			} catch (InterruptedException | ExecutionException e) {
+				Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+				SSSaveEditor.this.ui.displayErrorDialog("Error reading " + this.beforeName + ": " + cause, "Error");
+				return;
+			}
+			SSSaveEditor.this.ui.showDiff(this.beforeName + " \u2192 " + SSSaveEditor.this.openFile.getName(), changes);
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the save file on a worker thread. The event thread is only
+	 * involved when the write completes.
+	 */
+	private class SaveWriter extends SwingWorker<Void, Void>
+	{
+		private final SaveFile.Snapshot snapshot;
+		private final LongMap<Object> states;
+		private final File target;
+
+		/**
+		 * Create a writer.
+		 * @param snapshot Snapshot to write.
+		 * @param states State of each quality in the snapshot, by ID; see {@link SSSaveEditor#getLevelStates(List, SaveFile)}.
+		 * @param target Target file.
+		 */
+		SaveWriter(SaveFile.Snapshot snapshot, LongMap<Object> states, File target)
+		{
+			this.snapshot = snapshot;
+			this.states = states;
+			this.target = target;
+		}
+
+		@Override
+		protected Void doInBackground() throws Exception
+		{
+			this.snapshot.writeTo(this.target, SnapshotStore.forSave(this.target));
+			// This change is our own.
+			SSSaveEditor.this.saveWatcher.setKnownState(this.target);
+			return null;
+		}
+
+		@Override
+		protected void done()
+		{
+			SSSaveEditor.this.writer = null;
+			SSSaveEditor.this.ui.hideProgress();
+			SSSaveEditor.this.ui.saveMenuItem.setEnabled(true);
+			SSSaveEditor.this.ui.saveAsMenuItem.setEnabled(true);
+
+			try {
+				this.get();
+				SSSaveEditor.this.ui.displayMessageDialog("Saved to " + this.target.getName(), "Saved");
+				// Update current file and title text.
+				if (!this.target.equals(SSSaveEditor.this.openFile)) {
+					SSSaveEditor.this.saveWatcher.watch(this.target);
+				}
+				SSSaveEditor.this.diskChanged = false;
+				// The game's later changes are merged with what was written, not with the save as loaded.
+				SSSaveEditor.this.writtenStates = this.states;
+				SSSaveEditor.this.openFile = this.target;
+				SSSaveEditor.this.ui.setTitle(this.target.getName());
+			} catch (InterruptedException e) {
+				SSSaveEditor.this.ui.displayErrorDialog("Interrupted writing file", "Error");
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof NoSuchFileException) {
+					SSSaveEditor.this.ui.displayErrorDialog("When writing, file not found (possibly missing directory)", "Error");
+				} else {
+					SSSaveEditor.this.ui.displayErrorDialog("Error writing file", "Error");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Restores a saved version over the open save on a worker thread, then loads it.
+	 */
+	private class SaveRestorer extends SwingWorker<Void, Void>
+	{
+		private final SnapshotStore.Version version;
+		private final File target;
+
+		SaveRestorer(SnapshotStore.Version version, File target)
+		{
+			this.version = version;
+			this.target = target;
+		}
+
+		@Override
+		protected Void doInBackground() throws Exception
+		{
+			SnapshotStore.forSave(this.target).restore(this.version, this.target);
+			// This change is our own; the save is loaded again when done.
+			SSSaveEditor.this.saveWatcher.setKnownState(this.target);
+			return null;
+		}
+
+		@Override
+		protected void done()
+		{
+			SSSaveEditor.this.writer = null;
+			SSSaveEditor.this.ui.hideProgress();
+			try {
+				this.get();
+				SSSaveEditor.this.loadFile(this.target);
+			} catch (InterruptedException | ExecutionException e) {
+				Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+				SSSaveEditor.this.ui.displayErrorDialog("Error restoring " + this.target.getName() + ": " + cause, "Error");
+			}
+		}
+	}
+
+	/**
+	 * Loads a save file. Reading, parsing and indexing are done on a worker thread; the results are
+	 * applied to the UI on the event thread when done. When reloading a save that has changed on disk,
+	 * the results are merged with the edits made here, and errors are ignored, as the next change will
+	 * cause another reload.
+	 */
+	private class SaveLoader extends SwingWorker<LoadedSave, Void>
+	{
+		private final File source;
+		private final boolean reload;
+
+		SaveLoader(File source, boolean reload)
+		{
+			this.source = source;
+			this.reload = reload;
+		}
+
+		@Override
+		protected LoadedSave doInBackground() throws Exception
+		{
+			LoadedSave result = new LoadedSave();
+			result.source = this.source;
+
+			byte[] content = Files.readAllBytes(this.source.toPath());
+			this.setProgress(30);
+			if (this.isCancelled()) {
+				return null;
+			}
+
+			result.saveFile = new SaveFile(content);
+			Object inGameDate = result.saveFile.getHeader().get("InGameDate");
+			DateFormat isoDateParser = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
+			result.inGameDate = isoDateParser.parse(inGameDate != null ? inGameDate.toString() : "");
+			this.setProgress(70);
+			if (this.isCancelled()) {
+				return null;
+			}
+
+			result.qualities = result.saveFile.getQualities();
+			if (result.qualities != null) {
+				SSSaveEditor.this.indexQualities(result.qualities, result);
+			}
+			this.setProgress(90);
+
+			return result;
+		}
+
+		@Override
+		protected void done()
+		{
+			if (SSSaveEditor.this.loader == this) {
+				SSSaveEditor.this.loader = null;
+				SSSaveEditor.this.ui.hideProgress();
+			}
+			if (this.isCancelled()) {
+				return;
+			}
+
+			if (this.reload) {
+				SSSaveEditor.this.reloader = null;
+				try {
+					SSSaveEditor.this.mergeReloadedSave(this.get());
+				} catch (InterruptedException | CancellationException | ExecutionException e) {
+					// Perhaps caught mid-write; the next change reloads again.
+				}
+				return;
+			}
+
+			try {
+				SSSaveEditor.this.applyLoadedSave(this.get());
+			} catch (InterruptedException | CancellationException e) {
+				// Superseded by another load.
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof NoSuchFileException) {
+					SSSaveEditor.this.ui.displayErrorDialog("File not found", "Error");
+				} else if (cause instanceof IOException) {
+					SSSaveEditor.this.ui.displayErrorDialog("Error reading file", "Error");
+				} else if (cause instanceof ParseException) {
+					SSSaveEditor.this.ui.displayErrorDialog("Error parsing file", "Error");
+				} else {
+					SSSaveEditor.this.ui.displayErrorDialog("Error loading file: " + cause, "Error");
+				}
+			}
+		}
+	}
 
 	private SSSaveEditorUI ui;
 	private File openFile = null;
-	private HashMap<String, Object> data;
-	private Genson jsonLib = new Genson();
+	private SaveFile saveFile;
+
+	/**
+	 * The load in progress, if any.
+	 */
+	private SaveLoader loader = null;
+
+	/**
+	 * Reloads the open save when it is changed by something else, such as the game; and the reload, and
+	 * the write or restore, in progress, if any.
+	 */
+	private final SaveWatcher saveWatcher = new SaveWatcher(this);
+	private SaveLoader reloader = null;
+	private SwingWorker<Void, Void> writer = null;
+
+	/**
+	 * Set when the open save has been changed on disk in a way that conflicts with the edits made here.
+	 */
+	private boolean diskChanged = false;
+
+	/**
+	 * The state of each quality, by ID, as last written to the open save; null if it has not been written since it
+	 * was loaded. This is the base for merging the game's changes: see {@link #mergeReloadedSave(LoadedSave)}.
+	 */
+	private LongMap<Object> writtenStates = null;
+
+	/**
+	 * Summaries and qualities of the saves in the saves directory, and the refresh in progress, if any.
+	 */
+	private SaveIndex saveIndex = null;
+	private QualityIndex qualityIndex = null;
+
+	/**
+	 * Index of the catalog's quality names, for searching and queries; null until built.
+	 */
+	private NameIndex nameIndex = null;
+	private SaveIndexer indexer = null;
+
+	/**
+	 * The comparison in progress, if any.
+	 */
+	private SaveComparer comparer = null;
 	
 	private boolean showUnknown = false;
 
@@ -65,28 +456,56 @@ public class SSSaveEditor implements SSSaveEditorUI.ISaveEditorEvents, IQualityI
 	private QualitiesList saveFileQualities;
 	private QualitiesList configurationQualities;
 
-	/**
-	 * This links save file Qualities in the tabs to the associated input field; it's used
-	 * to update the Qualities when the save file is written out.
-	 */
-	private Map<Map<String, Object>, QualityItemUI> qualitiesFieldsMap = new HashMap<Map<String, Object>, QualityItemUI>();
-
 	/**
 	 * Total quantity of cargo.
 	 */
 	private long cargoQuantity;
 
 	/**
-	 * Launch the application.
+	 * Launch the application; or, if the first argument is {@link BatchEditor#batchOption}, run batch mode without the UI.
 	 */
 	public static void main(String[] args)
 	{
+		if (args.length > 0 && args[0].equals(BatchEditor.batchOption)) {
+			System.exit(BatchEditor.run(Arrays.copyOfRange(args, 1, args.length)));
+		}
+		if (args.length > 0 && args[0].equals(SaveDiff.diffOption)) {
+			System.exit(SaveDiff.run(Arrays.copyOfRange(args, 1, args.length)));
+		}
+		if (args.length > 0 && args[0].equals(QualityExporter.exportOption)) {
+			System.exit(QualityExporter.run(Arrays.copyOfRange(args, 1, args.length)));
+		}
+		if (args.length > 0 && args[0].equals(QualityQuery.queryOption)) {
+			System.exit(QualityQuery.run(Arrays.copyOfRange(args, 1, args.length)));
+		}
+
+		long stallThreshold = 0;
+		for (String arg : args) {
+			if (arg.equals(SSSaveEditor.diagnosticsOption)) {
+				stallThreshold = SSSaveEditor.defaultStallThreshold;
+			} else if (arg.startsWith(SSSaveEditor.diagnosticsOption + "=")) {
+				try {
+					stallThreshold = Long.parseLong(arg.substring(SSSaveEditor.diagnosticsOption.length() + 1));
+				} catch (NumberFormatException e) {
+					stallThreshold = 0;
+				}
+				if (stallThreshold < 1) {
+					System.err.println("Invalid stall threshold: " + arg);
+					System.err.println("Usage: " + SSSaveEditor.diagnosticsOption + "[=<stall threshold in ms>]");
+					System.exit(2);
+				}
+			}
+		}
+		DispatchMonitor monitor = stallThreshold > 0 ? DispatchMonitor.install(stallThreshold) : null;
+
+		final DispatchMonitor dispatchMonitor = monitor;
 		EventQueue.invokeLater(new Runnable()
 		{
 			public void run()
 			{
 				try {
 					SSSaveEditor window = new SSSaveEditor();
+					window.ui.setDispatchMonitor(dispatchMonitor);
 					window.ui.setVisible();
 				} catch (Exception e) {
 					e.printStackTrace();
@@ -103,6 +522,7 @@ public class SSSaveEditor implements SSSaveEditorUI.ISaveEditorEvents, IQualityI
 		ui = new SSSaveEditorUI();
 		ui.initialize();
 		ui.addEventHandler(this);
+		ui.addQualityEventHandler(this);
 		loadConfiguration();
 	}
 
@@ -138,6 +558,8 @@ public class SSSaveEditor implements SSSaveEditorUI.ISaveEditorEvents, IQualityI
 	 */
 	private void saveTo(File saveFile, boolean confirm)
 	{
+		// A value still being typed is part of the save.
+		this.ui.commitEdits();
 		try {
 			// If the file doesn't have an extension, add ".json".
 			String name = saveFile.getName();
@@ -145,7 +567,7 @@ public class SSSaveEditor implements SSSaveEditorUI.ISaveEditorEvents, IQualityI
 				saveFile = new File(saveFile.getPath() + ".json");
 			}
 	
-			if (this.ship != null && Integer.parseInt(this.ui.hullField.getValue()) > this.ship.getMaxHull()) {
+			if (this.ship != null && Long.parseLong(this.ui.hullField.getValue()) > this.ship.getMaxHull()) {
 				if (!this.ui.displayWarningDialog("Hull value " + this.ui.hullField.getValue() + "is above maximum, continue?", "Check Hull")) {
 					return;
 				}
@@ -165,33 +587,32 @@ public class SSSaveEditor implements SSSaveEditorUI.ISaveEditorEvents, IQualityI
 			this.setQualityFromUI(this.crewQuality, this.ui.crewField);
 	
 			// Set items from generic list.
-			for (Entry<Map<String, Object>, QualityItemUI> entry : this.qualitiesFieldsMap.entrySet()) {
-				this.setQualityFromUI(entry.getKey(), entry.getValue());
+			for (IQualityView view : this.ui.getAddedQualityViews()) {
+				this.setQualityFromUI(view.getSaveItem(), view);
 			}
 	
-			if (saveFile.exists())
-			{
-				if (confirm) {
-					if (!this.ui.displayWarningDialog("Overwrite " + saveFile.getName() + "?", "Overwrite")) {
-						return;
-					}
+			if (this.diskChanged && saveFile.equals(this.openFile)) {
+				if (!this.ui.displayWarningDialog(saveFile.getName() + " has been changed by the game since it was opened, including qualities edited here.\n"
+						+ "Saving will overwrite the game's changes. Continue?", "Save Changed on Disk")) {
+					return;
 				}
-				File backup = new File(saveFile.getPath() + ".bak");
-				backup.delete();
-				saveFile.renameTo(backup);
 			}
-	
-			try (OutputStream output = new FileOutputStream(saveFile)) {
-				this.jsonLib.serialize(this.data, output);
-				this.ui.displayMessageDialog("Saved to " + saveFile.getName(), "Saved");
-				// Update current file and title text.
-				this.openFile = saveFile;
-				this.ui.setTitle(saveFile.getName());
-			} catch (FileNotFoundException e) {
-				this.ui.displayErrorDialog("When writing, file not found (possibly missing directory)", "Error");
-			} catch (IOException e) {
-				this.ui.displayErrorDialog("Error writing file", "Error");
+
+			if (saveFile.exists() && confirm)
+			{
+				if (!this.ui.displayWarningDialog("Overwrite " + saveFile.getName() + "?", "Overwrite")) {
+					return;
+				}
 			}
+
+			// Writing, and replacing the old file, is done in the background.
+			this.ui.saveMenuItem.setEnabled(false);
+			this.ui.saveAsMenuItem.setEnabled(false);
+			this.ui.showProgress("Saving " + saveFile.getName());
+			List<Object> entries = this.saveFileQualities != null ? this.saveFileQualities.getEntries() : this.saveFile.getQualities();
+			SaveFile.Snapshot snapshot = this.saveFileQualities != null ? this.saveFile.snapshot(entries) : this.saveFile.snapshot();
+			this.writer = new SaveWriter(snapshot, SSSaveEditor.getLevelStates(entries, null), saveFile);
+			this.writer.execute();
 		} catch (NumberFormatException e) {
 			this.ui.displayErrorDialog("There was some input field with a non-numeric string in it; can't save.", "Error");
 		}
@@ -210,43 +631,392 @@ public class SSSaveEditor implements SSSaveEditorUI.ISaveEditorEvents, IQualityI
 				return;
 			}
 
-			this.openFile = open.getSelectedFile();
-			loadFile(this.openFile);
+			loadFile(open.getSelectedFile());
 		}
 	}
 
-	@SuppressWarnings("unchecked")
+	/**
+	 * Browse the saves in the saves directory. Invoked from the File menu, Browse Saves item.
+	 */
+	public void onFileBrowse()
+	{
+		if (this.indexer != null) {
+			return;
+		}
+		if (this.saveIndex == null) {
+			String saveDirectory = this.getSunlessSeaDirectory("saves");
+			if (saveDirectory == null) {
+				return;
+			}
+			this.saveIndex = new SaveIndex(new File(saveDirectory), new File(GameFiles.getEditorDirectory(), "saves.index"));
+			this.qualityIndex = new QualityIndex(new File(saveDirectory), new File(GameFiles.getEditorDirectory(), "qualities.index"));
+		}
+
+		this.ui.showProgress("Reading saves");
+		this.indexer = new SaveIndexer();
+		this.indexer.execute();
+	}
+
+	/**
+	 * Compare the save being edited, including edits not yet saved, with another save.
+	 * Invoked from the File menu, Compare With item.
+	 */
+	public void onFileCompare()
+	{
+		if (this.saveFile == null || this.comparer != null) {
+			return;
+		}
+
+		JFileChooser open = createFileChooser();
+		open.setDialogTitle("Compare " + this.openFile.getName() + " With");
+		if (open.showOpenDialog(this.ui.frame) != JFileChooser.APPROVE_OPTION) {
+			return;
+		}
+
+		final File before = open.getSelectedFile();
+		this.compareWith(before.getName(), new Callable<SaveDiff.Levels>() {
+			@Override
+			public SaveDiff.Levels call() throws Exception
+			{
+				return SaveDiff.Levels.read(before);
+			}
+		});
+	}
+
+	/**
+	 * Show the saved versions of the open save. Invoked from the File menu, History item.
+	 */
+	public void onFileHistory()
+	{
+		if (this.saveFile == null) {
+			return;
+		}
+
+		List<SnapshotStore.Version> versions = SnapshotStore.forSave(this.openFile).getVersions(this.openFile.getName());
+		if (versions.isEmpty()) {
+			this.ui.displayMessageDialog("There are no saved versions of " + this.openFile.getName() + " yet.\n"
+					+ "A version is kept each time the save is written.", "History");
+			return;
+		}
+		this.ui.showHistory(this.openFile.getName(), versions);
+	}
+
+	/**
+	 * Compare the save being edited with a saved version. Invoked from the History dialog.
+	 * @param version Version.
+	 */
+	public void onVersionCompare(final SnapshotStore.Version version)
+	{
+		if (this.saveFile == null || this.comparer != null) {
+			return;
+		}
+
+		final SnapshotStore store = SnapshotStore.forSave(this.openFile);
+		this.compareWith(version.getName() + " (" + SSSaveEditor.formatTime(version.getTime()) + ")", new Callable<SaveDiff.Levels>() {
+			@Override
+			public SaveDiff.Levels call() throws Exception
+			{
+				ByteArrayOutputStream content = new ByteArrayOutputStream((int) version.getSize());
+				store.restore(version, content);
+				return SaveDiff.Levels.parse(content.toByteArray());
+			}
+		});
+	}
+
+	/**
+	 * Restore a saved version over the open save, and load it. Invoked from the History dialog.
+	 * @param version Version.
+	 */
+	public void onVersionRestore(SnapshotStore.Version version)
+	{
+		if (this.saveFile == null || this.loader != null || this.writer != null) {
+			return;
+		}
+		if (!this.ui.displayWarningDialog("Restore " + this.openFile.getName() + " as saved at " + SSSaveEditor.formatTime(version.getTime())
+				+ "?\nEdits not saved will be lost. The current save is kept in the history.", "Restore")) {
+			return;
+		}
+
+		this.ui.showProgress("Restoring " + this.openFile.getName());
+		this.writer = new SaveRestorer(version, this.openFile);
+		this.writer.execute();
+	}
+
+	/**
+	 * Start comparing the save being edited with another.
+	 * @param beforeName Name of the other save, for messages.
+	 * @param before Reads the other save.
+	 */
+	private void compareWith(String beforeName, Callable<SaveDiff.Levels> before)
+	{
+		// The edited qualities are read here, on the event thread; the other save, in the background.
+		this.ui.commitEdits();
+		List<Object> current = this.saveFileQualities != null ? this.saveFileQualities.getEntries() : this.saveFile.getQualities();
+		this.ui.showProgress("Comparing");
+		this.comparer = new SaveComparer(beforeName, before, SaveDiff.Levels.fromQualities(current));
+		this.comparer.execute();
+	}
+
+	/**
+	 * Format a time for messages.
+	 * @param time Time, in milliseconds since the epoch.
+	 * @return Date and time.
+	 */
+	private static String formatTime(long time)
+	{
+		return DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.MEDIUM).format(new Date(time));
+	}
+
+	/**
+	 * Start loading a save file in the background. Any load already in progress is cancelled.
+	 * @param source Save file.
+	 */
 	private void loadFile(File source)
 	{
-		try (InputStream input = new FileInputStream(source)) {
-			this.data = jsonLib.deserialize(input, HashMap.class);
-			// Find significant data in the save.
-			this.setUIFromKey(this.ui.playerLabel, this.data, "Name");
-			this.setUIFromKey(this.ui.currentPortLabel, this.data, "CurrentPort", "Name");
-			String inGameDate = this.data.get("InGameDate").toString();
-			DateFormat isoDateParser = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
-			Date when = isoDateParser.parse(inGameDate);
-			this.ui.inGameDateLabel.setText(DateFormat.getDateTimeInstance(DateFormat.DEFAULT, DateFormat.DEFAULT).format(when));
-			
-			// QualitiesPossesedList.
-			Object qualities = this.data.get("QualitiesPossessedList");
-			if (qualities instanceof ArrayList<?>) {
-				this.importQualities((ArrayList<Object>) qualities);
+		if (this.loader != null) {
+			this.loader.cancel(true);
+		}
+
+		this.loader = new SaveLoader(source, false);
+		this.loader.addPropertyChangeListener(new PropertyChangeListener() {
+			@Override
+			public void propertyChange(PropertyChangeEvent event)
+			{
+				if ("progress".equals(event.getPropertyName())) {
+					SSSaveEditor.this.ui.setProgress((Integer) event.getNewValue());
+				}
 			}
-			
-			this.ui.setTitle(source.getName());
-			this.ui.setWindowTitleSuffix(source.getName());
+		});
+		this.ui.showProgress("Loading " + source.getName());
+		this.loader.execute();
+	}
 
-			this.ui.saveMenuItem.setEnabled(true);
-			this.ui.saveAsMenuItem.setEnabled(true);
-			
-		} catch (FileNotFoundException e) {
-			this.ui.displayErrorDialog("File not found", "Error");
-		} catch (IOException e) {
-			this.ui.displayErrorDialog("Error reading file", "Error");
-		} catch (ParseException e) {
-			this.ui.displayErrorDialog("Error parsing file", "Error");
+	/**
+	 * Apply a loaded save file to the UI. This is the event-thread part of loading.
+	 * @param loaded Loaded save.
+	 */
+	private void applyLoadedSave(LoadedSave loaded)
+	{
+		this.openFile = loaded.source;
+		this.saveFile = loaded.saveFile;
+		Map<String, Object> header = this.saveFile.getHeader();
+		// Find significant data in the save.
+		this.setUIFromKey(this.ui.playerLabel, header, "Name");
+		this.setUIFromKey(this.ui.currentPortLabel, header, "CurrentPort", "Name");
+		this.ui.inGameDateLabel.setText(DateFormat.getDateTimeInstance(DateFormat.DEFAULT, DateFormat.DEFAULT).format(loaded.inGameDate));
+
+		// QualitiesPossesedList.
+		ArrayList<Object> qualities = loaded.qualities;
+		this.saveFileQualities = null;
+		if (qualities != null) {
+			this.importQualities(qualities, loaded);
+		}
+
+		this.diskChanged = false;
+		this.writtenStates = null;
+		if (this.reloader != null) {
+			this.reloader.cancel(true);
+			this.reloader = null;
+		}
+		this.saveWatcher.watch(loaded.source);
+
+		this.ui.setTitle(loaded.source.getName());
+		this.ui.setWindowTitleSuffix(loaded.source.getName());
+
+		this.ui.saveMenuItem.setEnabled(true);
+		this.ui.saveAsMenuItem.setEnabled(true);
+		this.ui.compareMenuItem.setEnabled(true);
+		this.ui.historyMenuItem.setEnabled(true);
+	}
+
+	@Override
+	public void onSaveChanged(final File file)
+	{
+		EventQueue.invokeLater(new Runnable() {
+			@Override
+			public void run()
+			{
+				SSSaveEditor.this.reloadFile(file);
+			}
+		});
+	}
+
+	/**
+	 * Start reloading the open save in the background, after it has been changed on disk.
+	 * @param source Save file.
+	 */
+	private void reloadFile(File source)
+	{
+		if (!source.equals(this.openFile) || this.loader != null || this.writer != null) {
+			// Another save is being opened, or this one written (which records its own state).
+			return;
+		}
+		if (this.reloader != null) {
+			this.reloader.cancel(true);
+		}
+		this.reloader = new SaveLoader(source, true);
+		this.reloader.execute();
+	}
+
+	/**
+	 * Merge a reloaded save with the edits made here, and apply it. For each quality, by ID, the Level
+	 * as loaded, or as last written if the save has been written since, is compared with the Level here and on disk. A quality edited here but unchanged on disk
+	 * keeps the edit, which is copied to the reloaded save; one changed on disk but not here takes the
+	 * new value; one changed in both, differently, is a conflict. Qualities added or removed here are
+	 * treated the same way. If there are conflicts, nothing is reloaded: the edits here are kept, and the
+	 * user is warned before saving over the game's changes. Otherwise the merged save is applied; rows are
+	 * rebound in place, and only those whose values have changed are repainted.
+	 * @param loaded Reloaded save.
+	 */
+	@SuppressWarnings("unchecked")
+	private void mergeReloadedSave(LoadedSave loaded)
+	{
+		if (this.saveFile == null || !loaded.source.equals(this.openFile) || this.loader != null) {
+			return;
+		}
+		this.ui.commitEdits();
+
+		List<Object> current = this.saveFileQualities != null ? this.saveFileQualities.getEntries() : new ArrayList<Object>();
+		LongMap<Object> base = this.writtenStates != null ? this.writtenStates : SSSaveEditor.getLevelStates(this.saveFile.getQualities(), this.saveFile);
+		ArrayList<Object> merged = loaded.qualities != null ? new ArrayList<Object>(loaded.qualities) : new ArrayList<Object>();
+		List<Long> conflicts = SSSaveEditor.mergeQualities(base, current, merged);
+
+		if (!conflicts.isEmpty()) {
+			if (!this.diskChanged) {
+				this.diskChanged = true;
+				StringBuilder names = new StringBuilder();
+				for (int i = 0; i < conflicts.size() && i < 10; ++i) {
+					QualityItem item = QualityItem.getKnownItem(conflicts.get(i));
+					names.append("\n  ").append(item != null ? item.getName() : conflicts.get(i).toString());
+				}
+				if (conflicts.size() > 10) {
+					names.append("\n  and ").append(conflicts.size() - 10).append(" more");
+				}
+				this.ui.displayWarningDialog(this.openFile.getName() + " has been changed by the game, including qualities edited here:" + names
+						+ "\n\nYour edits have been kept, and the game's changes not loaded.", "Save Changed on Disk");
+			}
+			return;
+		}
+
+		loaded.qualities = merged;
+		this.indexQualities(merged, loaded);
+		this.applyLoadedSave(loaded);
+	}
+
+	/**
+	 * Merge the edits made here into the qualities of a reloaded save; see {@link #mergeReloadedSave(LoadedSave)}.
+	 * @param base State of each quality, by ID, before either change; see {@link #getLevelStates(List, SaveFile)}.
+	 * @param mine Qualities here.
+	 * @param merged Qualities on disk; this is changed to the merged qualities. If there are conflicts it is only
+	 * partly merged, and the qualities in it may have been changed; they are to be discarded.
+	 * @return IDs of the qualities changed differently here and on disk; empty if the merge succeeded.
+	 */
+	static List<Long> mergeQualities(LongMap<Object> base, List<Object> mine, ArrayList<Object> merged)
+	{
+		LongMap<Map<String, Object>> myQualities = SSSaveEditor.indexById(mine);
+		LongMap<Map<String, Object>> disk = SSSaveEditor.indexById(merged);
+
+		LongMap<Boolean> ids = new LongMap<Boolean>();
+		for (long id : base.keys()) {
+			ids.put(id, Boolean.TRUE);
+		}
+		for (long id : myQualities.keys()) {
+			ids.put(id, Boolean.TRUE);
+		}
+
+		List<Long> conflicts = new ArrayList<Long>();
+		for (long id : ids.keys()) {
+			Map<String, Object> myQuality = myQualities.get(id);
+			Map<String, Object> diskQuality = disk.get(id);
+			Object baseState = base.containsKey(id) ? base.get(id) : SSSaveEditor.getLevelState(null, null);
+			Object myState = SSSaveEditor.getLevelState(myQuality, myQuality != null ? myQuality.get("Level") : null);
+			Object diskState = SSSaveEditor.getLevelState(diskQuality, diskQuality != null ? diskQuality.get("Level") : null);
+			if (myState.equals(baseState) || myState.equals(diskState)) {
+				// Not edited here, or changed to the same on disk.
+				continue;
+			}
+			if (!diskState.equals(baseState)) {
+				conflicts.add(id);
+				continue;
+			}
+
+			// Edited here only: carry the edit over.
+			if (myQuality == null) {
+				for (int i = 0; i < merged.size(); ++i) {
+					if (merged.get(i) == diskQuality) {
+						merged.remove(i);
+						break;
+					}
+				}
+			} else {
+				// The editor keeps Levels as Long; one set from the UI may not be.
+				Object level = myQuality.get("Level");
+				if (level instanceof Number) {
+					level = ((Number) level).longValue();
+				}
+				if (diskQuality == null) {
+					myQuality.put("Level", level);
+					merged.add(myQuality);
+				} else {
+					diskQuality.put("Level", level);
+				}
+			}
+		}
+		return conflicts;
+	}
+
+	/**
+	 * Get the state of each quality, by ID; see {@link #getLevelState(Map, Object)}. If an ID occurs more than once, the first is used, as in the editor.
+	 * @param qualities Qualities; may be null.
+	 * @param loadedFrom The save the qualities were loaded from, for their Levels as loaded; null for their current Levels.
+	 * @return States.
+	 */
+	private static LongMap<Object> getLevelStates(List<Object> qualities, SaveFile loadedFrom)
+	{
+		LongMap<Map<String, Object>> byId = SSSaveEditor.indexById(qualities);
+		LongMap<Object> result = new LongMap<Object>(byId.size());
+		for (long id : byId.keys()) {
+			Map<String, Object> quality = byId.get(id);
+			result.put(id, SSSaveEditor.getLevelState(quality, loadedFrom != null ? loadedFrom.getLoadedLevel(quality) : quality.get("Level")));
+		}
+		return result;
+	}
+
+	/**
+	 * Index qualities by AssociatedQualityId. If an ID occurs more than once, the first is indexed, as in the editor.
+	 * @param qualities Qualities; may be null.
+	 * @return Index.
+	 */
+	@SuppressWarnings("unchecked")
+	private static LongMap<Map<String, Object>> indexById(List<Object> qualities)
+	{
+		LongMap<Map<String, Object>> result = new LongMap<Map<String, Object>>();
+		if (qualities != null) {
+			for (Object qualityObject : qualities) {
+				if (qualityObject instanceof Map<?, ?>) {
+					Map<String, Object> quality = (Map<String, Object>) qualityObject;
+					Object idObject = quality.get("AssociatedQualityId");
+					if (idObject instanceof Long && !result.containsKey((Long) idObject)) {
+						result.put((Long) idObject, quality);
+					}
+				}
+			}
 		}
+		return result;
+	}
+
+	/**
+	 * Get a comparable state for a quality: absent, present without a Level, or its Level.
+	 * @param quality Quality; null if absent.
+	 * @param level Level.
+	 * @return State.
+	 */
+	private static Object getLevelState(Map<String, Object> quality, Object level)
+	{
+		if (quality == null) {
+			return "absent";
+		}
+		return level instanceof Number ? (Object) ((Number) level).longValue() : "no level";
 	}
 
 	/**
@@ -267,37 +1037,76 @@ public class SSSaveEditor implements SSSaveEditorUI.ISaveEditorEvents, IQualityI
 	}
 
 	/**
-	 * Import qualities from the list. This imports known qualities and saves them in the class.
+	 * Index qualities from the list: find the ship, and the qualities to show in the category tabs.
+	 * This does not touch the UI, and is run on the loader thread.
 	 * @param qualities The qualities list.
+	 * @param loaded Receives the results.
 	 */
 	@SuppressWarnings("unchecked")
-	private void importQualities(ArrayList<Object> qualities)
+	private void indexQualities(ArrayList<Object> qualities, LoadedSave loaded)
+	{
+		// One pass over the save builds the index used for all further lookups.
+		loaded.saveIndex = new LongMap<Map<String, Object>>(qualities.size());
+		for (Object qualityObject : qualities) {
+			if (qualityObject instanceof Map<?, ?>) {
+				Map<String, Object> quality = (Map<String, Object>) qualityObject;
+				Object idObject = quality.get("AssociatedQualityId");
+				if (idObject instanceof Long && !loaded.saveIndex.containsKey((Long) idObject)) {
+					loaded.saveIndex.put((Long) idObject, quality);
+				}
+			}
+		}
+
+		long[] displayedQualities = {
+			ItemTags.echos.getTag(),
+			ItemTags.fuel.getTag(),
+			ItemTags.supplies.getTag(),
+			ItemTags.terror.getTag(),
+			ItemTags.hull.getTag(),
+			ItemTags.mirrors.getTag(),
+			ItemTags.iron.getTag(),
+			ItemTags.pages.getTag(),
+			ItemTags.hearts.getTag(),
+			ItemTags.veils.getTag(),
+			ItemTags.crew.getTag(),
+			-1 // Ship, if found.
+		};
+		loaded.displayedQualities = displayedQualities;
+
+		// Find the Ship. This will be an entry in the Qualities with an AssociatedQualityId=102889 {Curiosity,CurrentShip}.
+		Map<String, Object> shipQuality = loaded.saveIndex.get(102889);
+		if (shipQuality != null && this.configurationQualities != null) {
+			// Need to find the EquippedPossession/AssociatedQualityId to find the Ship definition.
+			Long shipId = JSONUtil.getLong(shipQuality, "EquippedPossession", "AssociatedQualityId");
+			QualityItem shipCandidate = shipId != null ? this.configurationQualities.getItem(shipId) : null;
+			if (shipCandidate instanceof Ship) {
+				loaded.shipBase = (Ship) shipCandidate;
+				loaded.shipQuality = shipQuality;
+				displayedQualities[displayedQualities.length - 1] = shipCandidate.getTag();
+			}
+		}
+	}
+
+	/**
+	 * Import qualities from the list. This imports known qualities and saves them in the class.
+	 * @param qualities The qualities list.
+	 * @param loaded Results of {@link #indexQualities(ArrayList, LoadedSave)}.
+	 */
+	private void importQualities(ArrayList<Object> qualities, LoadedSave loaded)
 	{
 		// Pre-defined qualities.
-		this.echosQuality = this.setUIFromQuality(this.ui.echosField, qualities, ItemTags.echos);
-		this.fuelQuality = this.setUIFromQuality(this.ui.fuelField, qualities, ItemTags.fuel);
-		this.suppliesQuality = this.setUIFromQuality(this.ui.suppliesField, qualities, ItemTags.supplies);
-		this.terrorQuality = this.setUIFromQuality(this.ui.terrorField, qualities, ItemTags.terror);
-		this.hullQuality = this.setUIFromQuality(this.ui.hullField, qualities, ItemTags.hull);
-		this.mirrorsQuality = this.setUIFromQuality(this.ui.mirrorsField, qualities, ItemTags.mirrors);
-		this.ironQuality = this.setUIFromQuality(this.ui.ironField, qualities, ItemTags.iron);
-		this.pagesQuality = this.setUIFromQuality(this.ui.pagesField, qualities, ItemTags.pages);
-		this.heartsQuality = this.setUIFromQuality(this.ui.heartsField, qualities, ItemTags.hearts);
-		this.veilsQuality = this.setUIFromQuality(this.ui.veilsField, qualities, ItemTags.veils);
-		this.crewQuality = this.setUIFromQuality(this.ui.crewField, qualities, ItemTags.crew);
-		
-		Set<Long> displayedQualities = new HashSet<Long>();
-		displayedQualities.add(ItemTags.echos.getTag());
-		displayedQualities.add(ItemTags.fuel.getTag());
-		displayedQualities.add(ItemTags.supplies.getTag());
-		displayedQualities.add(ItemTags.terror.getTag());
-		displayedQualities.add(ItemTags.hull.getTag());
-		displayedQualities.add(ItemTags.mirrors.getTag());
-		displayedQualities.add(ItemTags.iron.getTag());
-		displayedQualities.add(ItemTags.pages.getTag());
-		displayedQualities.add(ItemTags.hearts.getTag());
-		displayedQualities.add(ItemTags.veils.getTag());
-		displayedQualities.add(ItemTags.crew.getTag());
+		LongMap<Map<String, Object>> saveIndex = loaded.saveIndex;
+		this.echosQuality = this.setUIFromQuality(this.ui.echosField, saveIndex, ItemTags.echos);
+		this.fuelQuality = this.setUIFromQuality(this.ui.fuelField, saveIndex, ItemTags.fuel);
+		this.suppliesQuality = this.setUIFromQuality(this.ui.suppliesField, saveIndex, ItemTags.supplies);
+		this.terrorQuality = this.setUIFromQuality(this.ui.terrorField, saveIndex, ItemTags.terror);
+		this.hullQuality = this.setUIFromQuality(this.ui.hullField, saveIndex, ItemTags.hull);
+		this.mirrorsQuality = this.setUIFromQuality(this.ui.mirrorsField, saveIndex, ItemTags.mirrors);
+		this.ironQuality = this.setUIFromQuality(this.ui.ironField, saveIndex, ItemTags.iron);
+		this.pagesQuality = this.setUIFromQuality(this.ui.pagesField, saveIndex, ItemTags.pages);
+		this.heartsQuality = this.setUIFromQuality(this.ui.heartsField, saveIndex, ItemTags.hearts);
+		this.veilsQuality = this.setUIFromQuality(this.ui.veilsField, saveIndex, ItemTags.veils);
+		this.crewQuality = this.setUIFromQuality(this.ui.crewField, saveIndex, ItemTags.crew);
 
 		this.ui.setShipName("No ship?");
 		this.ui.setShipCrewCapacity(0);
@@ -313,31 +1122,10 @@ public class SSSaveEditor implements SSSaveEditorUI.ISaveEditorEvents, IQualityI
 		this.ui.surgeonLabel.setText("");
 
 		// Dump other qualities.
-		this.ui.clearPanels();
-		this.qualitiesFieldsMap.clear();
 		this.saveFileQualities = new QualitiesList(qualities, false);
 		
-		// Find the Ship. This will be an entry in the Qualities with an AssociatedQualityId=102889 {Curiosity,CurrentShip}.
-		for (Object item : qualities) {
-			if (item instanceof Map<?,?>) {
-				Map<String, Object> quality = (Map<String, Object>) item;
-				if (JSONUtil.getLong(quality, "AssociatedQualityId") == 102889) {
-					// Need to find the EquippedPossession/AssociatedQualityId to find the Ship definition.
-					long shipId = JSONUtil.getLong(quality,  "EquippedPossession", "AssociatedQualityId");
-					Ship shipBase = null; 
-					List<QualityItem> ships = this.configurationQualities.GetQualities(Ship.categoryName);
-					for (QualityItem shipCandidate : ships) {
-						if (shipCandidate.getTag() == shipId) {
-							shipBase = (Ship) shipCandidate;
-							break;
-						}
-					}
-					if (shipBase != null) {
-						this.ship = new Ship(shipBase, quality);
-					}
-					break;
-				}
-			}
+		if (loaded.shipBase != null) {
+			this.ship = new Ship(loaded.shipBase, loaded.shipQuality);
 		}
 
 		if (this.ship != null) {
@@ -346,7 +1134,6 @@ public class SSSaveEditor implements SSSaveEditorUI.ISaveEditorEvents, IQualityI
 			this.ui.setShipCargoCapacity(this.ship.getHoldCapacity());
 			this.ui.setShipMaxHull(this.ship.getMaxHull());
 			this.ui.setShipWeight(this.ship.getWeight());
-			displayedQualities.add(this.ship.getTag());
 		}
 		
 		// Process Companions to display assignments.
@@ -366,40 +1153,23 @@ public class SSSaveEditor implements SSSaveEditorUI.ISaveEditorEvents, IQualityI
 			}
 		}
 
-		// Handle other objects in the save list.
-		Map<Long, Map<String, Object>> saveQualityList = new HashMap<Long, Map<String, Object>>();
-
-		// Construct a map of save-file qualities.
-		for (Object qualityObject : qualities) {
-			if (qualityObject instanceof Map<?, ?>) {
-				Map<String, Object> quality = (Map<String, Object>) qualityObject;
-				Object idObject = quality.get("AssociatedQualityId");
-				if (idObject != null && idObject instanceof Long) {
-					Long id = (Long) idObject;
-					
-					Object equippedPossesionObject = quality.get("EquippedPossession");
-					if (equippedPossesionObject == null && !displayedQualities.contains(id)) {
-						this.addOtherQualityToMap(id, quality, saveQualityList);
-					}
-				}
-			}
-		}
-
 		// Now, process all categories and the known items in said categories.
 		
+		// The panels create their rows when first shown; here, only the save qualities are found.
 		for (String category : QualityItem.getKnownCategories()) {
 			// Need the items in this category sorted by Name.
-			for (QualityItem item : QualityItem.getItemsInCategory(category)) {
-				Map<String, Object> saveQuality = saveQualityList.get(item.getTag());
-				if (saveQuality != null) {
-					this.addQualityToUI(item, saveQuality);
+			List<QualityItem> items = QualityItem.getItemsInCategory(category);
+			Map<QualityItem, Map<String, Object>> saveItems = new IdentityHashMap<QualityItem, Map<String, Object>>();
+			for (QualityItem item : items) {
+				Map<String, Object> saveQuality = this.getOtherQuality(loaded, item.getTag());
+				if (saveQuality != null && JSONUtil.getKeyValue(saveQuality, "Level") instanceof Long) {
+					saveItems.put(item, saveQuality);
 					if (item.isCargo() && item.getSlot() == null) {
 						this.cargoQuantity += JSONUtil.getLong(saveQuality, "Level");
 					}
-				} else {
-					this.addQualityToUI(item);
 				}
 			}
+			this.ui.setPanelContent(category, items, saveItems);
 		}
 
 		this.cargoQuantity += JSONUtil.getLong(this.fuelQuality, "Level") + JSONUtil.getLong(this.suppliesQuality, "Level");
@@ -459,31 +1229,19 @@ public class SSSaveEditor implements SSSaveEditorUI.ISaveEditorEvents, IQualityI
 	}
 
 	/**
-	 * Load the configuration; this read the Quality definitions.
+	 * Load the configuration; this read the Quality definitions. They are read through a
+	 * binary cache in the editor's directory, which is rebuilt when the game's file changes.
 	 */
-	@SuppressWarnings("unchecked")
 	private void loadConfiguration()
 	{
-		// Static methods in the various QualityItem class don't run unless the class is created.
-		Good.isQualityAGood(null);
-		Ship.isQualityAShip(null);
-		Companion.isQualityACompanion(null);
-		
 		String directory = this.getSunlessSeaDirectory("entities");
 		if (directory != null) {
-			File qualities = new File(directory + "/qualities.json");
-			if (qualities.exists() && qualities.isFile() && qualities.canRead()) {
-				try (InputStream input = new FileInputStream(qualities)) {
-					Object list = jsonLib.deserialize(input, Object.class);
-					if (list instanceof ArrayList<?>)
-					{
-						this.configurationQualities = new QualitiesList((ArrayList<Object>) list, true);
-					}
-				} catch (FileNotFoundException e) {
-					this.ui.displayErrorDialog("A problem was encountered loading 'qualities.json': not found", "Error");
-				} catch (IOException e) {
-					this.ui.displayErrorDialog("A problem was encountered loading 'qualities.json': I/O error", "Error");
-				}
+			try {
+				this.configurationQualities = GameFiles.loadCatalog(directory);
+			} catch (NoSuchFileException e) {
+				this.ui.displayErrorDialog("A problem was encountered loading 'qualities.json': not found", "Error");
+			} catch (IOException e) {
+				this.ui.displayErrorDialog("A problem was encountered loading 'qualities.json': I/O error", "Error");
 			}
 		}
 		
@@ -493,110 +1251,53 @@ public class SSSaveEditor implements SSSaveEditorUI.ISaveEditorEvents, IQualityI
 		}
 		
 		this.ui.addOtherPanel();
+
+		// The catalog does not change from here on; index its names for searching.
+		new NameIndexBuilder(QualityItem.getKnownItems()).execute();
 	}
 
 
 	/**
-	 * Add an other quality to the list. Added if known, or if showUnknown is true.
+	 * Get an other quality: one shown in the category tabs rather than on the fixed panels.
+	 * It is returned if it is in the save, not equipped, has a Level, and is known or showUnknown is true.
+	 * @param loaded Loaded save.
 	 * @param id Quality ID.
-	 * @param quality Quality definition.
-	 * @param list Output list. Key is name or id.
-	 */
-	private void addOtherQualityToMap(long id, Map<String, Object> quality, Map<Long, Map<String, Object>> list)
-	{
-		Object value = JSONUtil.getKeyValue(quality, "Level");
-		if (value != null) {
-			QualityItem knownItem = QualityItem.getKnownItem((int) id);
-			if (knownItem != null || this.showUnknown) {
-				list.put(new Long(id), quality);
-			}
-		}
-	}
-
-	/**
-	 * Add a Quality to the UI with a save-file value.
-	 * @param item QualityItem; the AssociatedQualityId.
-	 * @param saveQuality The Quality from the save file. This should contain a Level value.
+	 * @return Save-file quality; null if there is none to show.
 	 */
-	private void addQualityToUI(QualityItem item, Map<String, Object> saveQuality)
+	private Map<String, Object> getOtherQuality(LoadedSave loaded, long id)
 	{
-		// Verify saveQuality. We already know that the saveQuality has an appropriate AssociatedQualityId.
-		Object valueObject = JSONUtil.getKeyValue(saveQuality, "Level");
-		if (valueObject != null && valueObject instanceof Long) {
-			QualityItemUI field;
-			field = this.ui.addToQualityPanel(item, saveQuality);
-			this.qualitiesFieldsMap.put(saveQuality, field);
-			field.addEventHandler(this);
+		Map<String, Object> quality = loaded.saveIndex.get(id);
+		if (quality == null || quality.get("EquippedPossession") != null || JSONUtil.getKeyValue(quality, "Level") == null) {
+			return null;
 		}
-	}
-
-	/**
-	 * Add a Quality to the UI which has no associated save-file quality.
-	 * @param item QualityItem; the AssociatedQualityId.
-	 */
-	private void addQualityToUI(QualityItem item)
-	{
-		// Verify saveQuality. We already know that the saveQuality has an appropriate AssociatedQualityId.
-		QualityItemUI itemUI = this.ui.addToQualityPanel(item);
-		itemUI.addEventHandler(this);
-	}
-
-	/**
-	 * Get a specific quality object from the list.
-	 * @param qualities Qualities list.
-	 * @param itemKey Key of the quality.
-	 * @return THe quality; or null if not found.
-	 */
-	private Map<String, Object> getQuality(ArrayList<Object> qualities, int itemKey)
-	{
-		Map<String, Object> result = null;
-		for (Object qualityObject : qualities) {
-			if (qualityObject instanceof Map<?, ?>) {
-				@SuppressWarnings("unchecked")
-				Map<String, Object> quality = (Map<String, Object>) qualityObject;
-				Object id = quality.get("AssociatedQualityId");
-				if (id != null && id instanceof Long && itemKey == (Long) id) {
-					result = quality;
-					break;
-				}
+		for (long displayed : loaded.displayedQualities) {
+			if (displayed == id) {
+				return null;
 			}
 		}
-
-		return result;
+		return QualityItem.getKnownItem(id) != null || this.showUnknown ? quality : null;
 	}
 
 	/**
-	 * Set a UI field from a quality value, and return the associated Quality item.
+	 * Set a UI field from a quality value, and return the associated Quality item. The field is unset if the save
+	 * does not have the quality.
 	 * @param field UI field.
-	 * @param qualities Qualities list.
+	 * @param saveIndex Save-file qualities by ID.
 	 * @param item Inventory item description.
 	 * @return Quality item; null if not found.
 	 */
-	private Map<String, Object> setUIFromQuality(QualityItemUI field, ArrayList<Object> qualities, QualityItem item)
+	private Map<String, Object> setUIFromQuality(QualityItemUI field, LongMap<Map<String, Object>> saveIndex, QualityItem item)
 	{
-		Map<String, Object> qualityItem = this.getQuality(qualities, (int) item.getTag());
-		if (qualityItem != null) {
-			this.setUIFromKey(field, qualityItem, "Level");
-			field.addEventHandler(this);
+		Map<String, Object> qualityItem = saveIndex.get(item.getTag());
+		if (JSONUtil.getKeyValue(qualityItem, "Level") != null) {
+			field.setSaveItem(qualityItem);
+		} else {
+			field.setSaveItem(null);
 		}
 
 		return qualityItem;
 	}
 
-	/**
-	 * Set a UI label from a key path in the JSON save.
-	 * @param label Label to set.
-	 * @param json JSON save.
-	 * @param keys List of keys.
-	 */
-	private void setUIFromKey(QualityItemUI label, Map<String, Object> json, String...keys)
-	{
-		Object value = JSONUtil.getKeyValue(json, keys);
-		if (value != null) {
-			label.setSaveItem(json);
-		}
-	}
-
 	/**
 	 * Set a UI label from a key path in the JSON save.
 	 * @param label Label to set.
@@ -616,11 +1317,12 @@ public class SSSaveEditor implements SSSaveEditorUI.ISaveEditorEvents, IQualityI
 	 * @param quality Quality field.
 	 * @param field UI field.
 	 */
-	private void setQualityFromUI(Map<String, Object> quality, QualityItemUI field)
+	private void setQualityFromUI(Map<String, Object> quality, IQualityView field)
 	{
 		if (quality != null) {
 			try {
-				Integer value = Integer.parseInt(field.getValue());
+				// As in onValueChanged: Levels are kept as Long, and any long is accepted.
+				Long value = Long.parseLong(field.getValue());
 				quality.put("Level", value);
 			} catch (NumberFormatException e) {
 				// Not correct integer value input.
@@ -629,63 +1331,54 @@ public class SSSaveEditor implements SSSaveEditorUI.ISaveEditorEvents, IQualityI
 	}
 	
 	/**
-	 * Get a directory in the Sunless Sea tree.
+	 * Get a directory in the Sunless Sea tree, reporting any problem to the user.
 	 * @param subdirectory Subdirectory of interest 
 	 * @return Directory; null if not known.
 	 */
 	private String getSunlessSeaDirectory(String subdirectory)
 	{
-		String appDataDirectory;
-		String osName = System.getProperty("os.name");
-
-		if (osName.contains("OS X")) {
-			appDataDirectory = (System.getProperty("user.home") + "/Library/Application Support/unity.Failbetter Games.Sunless Sea/");
-		} else if (osName.contains("Windows")) {
-			appDataDirectory = (System.getenv("APPDATA") + "/../LocalLow/Failbetter Games/Sunless Sea/");
-		} else if (osName.contains("Linux")) {
-			appDataDirectory = (System.getProperty("user.home") + "/.config/unity3d/Failbetter Games/Sunless Sea/");
-		} else {
+		String directory = GameFiles.getSunlessSeaDirectory(subdirectory);
+		if (directory == null) {
 			this.ui.displayErrorDialog("Not Supported", "Not running on a supported operating system, things will misbehave.");
 			return null;
 		}
 
-		File location = new File(appDataDirectory + subdirectory);
+		File location = new File(directory);
 		if (!location.exists() || !location.isDirectory()) {
 			this.ui.displayErrorDialog("Missing Game Directory", "Cannot find Sunless Sea user save directory, things will misbehave");
 		}
 
-		return appDataDirectory + subdirectory;
+		return directory;
 	}
 
 	@Override
-	public void onValueChanged(QualityItemUI ui, QualityItem item, Map<String, Object> saveItem)
+	public void onValueChanged(IQualityView ui, QualityItem item, Map<String, Object> saveItem, long value)
 	{
-		if (item.isCargo()) {
-			long oldValue = JSONUtil.getLong(saveItem, "Level");
-			long newValue = Long.parseLong(ui.getValue());
-			SSSaveEditor.this.cargoQuantity += newValue - oldValue;
-			// Save item may be null for pre-defined Quality input fields (on the display panels).
-			if (saveItem != null) {
-				saveItem.put("Level",  new Long(newValue));
-			}
+		// Save item may be null for pre-defined Quality input fields (on the display panels).
+		if (saveItem == null) {
+			return;
+		}
+
+		if (item != null && item.isCargo()) {
+			Object oldValue = JSONUtil.getKeyValue(saveItem, "Level");
+			SSSaveEditor.this.cargoQuantity += value - (oldValue instanceof Number ? ((Number) oldValue).longValue() : 0);
 			SSSaveEditor.this.ui.usedCapacity.setText(Long.toString(SSSaveEditor.this.cargoQuantity));
-		}		
+		}
+		saveItem.put("Level", Long.valueOf(value));
 	}
 
 	@Override
-	public void onRequestAdd(QualityItemUI ui, QualityItem item)
+	public void onRequestAdd(IQualityView ui, QualityItem item)
 	{
 		Map<String, Object> newQuality = item.getTemplateObject();
 		this.saveFileQualities.addQuality(newQuality);
-		this.qualitiesFieldsMap.put(newQuality, ui);
 		ui.mutate(newQuality);
 	}
 
 	@Override
-	public void onRequestDelete(QualityItemUI ui, QualityItem item, Map<String, Object> saveItem)
+	public void onRequestDelete(IQualityView ui, QualityItem item, Map<String, Object> saveItem)
 	{
 		this.saveFileQualities.removeQuality(saveItem);
-		this.qualitiesFieldsMap.remove(saveItem);
 		ui.mutate();
 	}
 }
@@ -0,0 +1,493 @@
+package org.gmc.ssseditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.gmc.ssseditor.qualities.QualityItem;
+
+/**
+ * Compares the qualities of two saves, by AssociatedQualityId.
+ *
+ * Each save is reduced to {@link Levels}: parallel arrays of IDs and Levels, sorted by ID. The two are then
+ * merge-joined in a single pass, giving the qualities added, removed, and changed. As in the editor, only the
+ * first quality with each ID counts. Reading a save file for comparison uses {@link JSONScanner} directly,
+ * decoding only the ID and Level of each quality.
+ * @author grant
+ *
+ */
+public class SaveDiff
+{
+	/**
+	 * Command line option selecting diff mode; it must be the first argument.
+	 */
+	public static final String diffOption = "--diff";
+
+	private static final String usage =
+			"Usage: " + SaveDiff.diffOption + " [--entities=<directory>] <before> <after>\n"
+			+ "  Lists the qualities added, removed, and changed between two saves.\n"
+			+ "  --entities=<directory>   The game's entities directory, containing qualities.json, for quality names.\n"
+			+ "  The exit status is 0 if the saves' qualities are the same, 1 if they differ, 2 on error.";
+
+	/**
+	 * Level of a quality that has none.
+	 */
+	public static final long noLevel = Long.MIN_VALUE;
+
+	/**
+	 * The kind of a change.
+	 */
+	public enum Kind
+	{
+		ADDED, REMOVED, CHANGED
+	}
+
+	/**
+	 * The qualities of a save, as sorted arrays of ID and Level.
+	 */
+	public static class Levels
+	{
+		private final long[] ids;
+		private final long[] levels;
+
+		/**
+		 * Create from qualities in save order, keeping the first of each ID.
+		 * @param ids IDs in save order; the array is reused.
+		 * @param levels Levels in save order; the array is reused.
+		 * @param count Number of qualities.
+		 */
+		private Levels(long[] ids, long[] levels, int count)
+		{
+			// Sort positions by ID, then by position, so the first of each ID comes first. If the IDs fit, each
+			// is packed with its position into one long, and a primitive sort is enough.
+			boolean packable = true;
+			for (int i = 0; i < count && packable; ++i) {
+				packable = ids[i] >= Integer.MIN_VALUE && ids[i] <= Integer.MAX_VALUE;
+			}
+
+			int[] order = new int[count];
+			if (packable) {
+				long[] packed = new long[count];
+				for (int i = 0; i < count; ++i) {
+					packed[i] = (ids[i] << 32) | i;
+				}
+				Arrays.sort(packed);
+				for (int i = 0; i < count; ++i) {
+					order[i] = (int) packed[i];
+				}
+			} else {
+				Integer[] boxed = new Integer[count];
+				for (int i = 0; i < count; ++i) {
+					boxed[i] = i;
+				}
+				final long[] keys = ids;
+				Arrays.sort(boxed, new Comparator<Integer>() {
+					@Override
+					public int compare(Integer o1, Integer o2)
+					{
+						int result = Long.compare(keys[o1], keys[o2]);
+						return result != 0 ? result : Integer.compare(o1, o2);
+					}
+				});
+				for (int i = 0; i < count; ++i) {
+					order[i] = boxed[i];
+				}
+			}
+
+			long[] sortedIds = new long[count];
+			long[] sortedLevels = new long[count];
+			int unique = 0;
+			for (int i = 0; i < count; ++i) {
+				long id = ids[order[i]];
+				if (unique > 0 && sortedIds[unique - 1] == id) {
+					continue;
+				}
+				sortedIds[unique] = id;
+				sortedLevels[unique] = levels[order[i]];
+				++unique;
+			}
+			this.ids = Arrays.copyOf(sortedIds, unique);
+			this.levels = Arrays.copyOf(sortedLevels, unique);
+		}
+
+		/**
+		 * Read the qualities of a save file.
+		 * @param source Save file.
+		 * @return Levels.
+		 * @throws IOException On read error.
+		 * @throws ParseException If the save is not valid JSON.
+		 */
+		public static Levels read(File source) throws IOException, ParseException
+		{
+			return Levels.parse(Files.readAllBytes(source.toPath()));
+		}
+
+		/**
+		 * Read the qualities of a save.
+		 * @param content Save content.
+		 * @return Levels.
+		 * @throws ParseException If the save is not valid JSON.
+		 */
+		public static Levels parse(byte[] content) throws ParseException
+		{
+			final Builder builder = new Builder();
+			SaveScanner.scanQualities(content, new SaveScanner.IQualityEvents() {
+				@Override
+				public void onQuality(JSONScanner scanner) throws ParseException
+				{
+					Levels.readQuality(scanner, builder);
+				}
+			});
+			return builder.build();
+		}
+
+		/**
+		 * Get the qualities of a save that has been loaded, such as the one being edited.
+		 * @param qualities Qualities list; may be null.
+		 * @return Levels.
+		 */
+		public static Levels fromQualities(List<Object> qualities)
+		{
+			Builder builder = new Builder();
+			if (qualities != null) {
+				for (Object qualityObject : qualities) {
+					if (qualityObject instanceof Map<?, ?>) {
+						Map<?, ?> quality = (Map<?, ?>) qualityObject;
+						Object id = quality.get("AssociatedQualityId");
+						if (id instanceof Long) {
+							builder.add((Long) id, quality.get("Level"));
+						}
+					}
+				}
+			}
+			return builder.build();
+		}
+
+		/**
+		 * Create from arrays already sorted by ID, with no ID repeated, such as those read from an index.
+		 * @param ids IDs; the array is kept.
+		 * @param levels Levels; the array is kept.
+		 */
+		Levels(long[] ids, long[] levels)
+		{
+			this.ids = ids;
+			this.levels = levels;
+		}
+
+		/**
+		 * Get the number of qualities.
+		 * @return Number of distinct IDs.
+		 */
+		public int size()
+		{
+			return this.ids.length;
+		}
+
+		/**
+		 * Get the IDs. The array is not copied, and must not be changed.
+		 * @return IDs, in increasing order.
+		 */
+		long[] getIds()
+		{
+			return this.ids;
+		}
+
+		/**
+		 * Get the Levels. The array is not copied, and must not be changed.
+		 * @return The Level of each ID; {@link SaveDiff#noLevel} for none.
+		 */
+		long[] getLevels()
+		{
+			return this.levels;
+		}
+
+		/**
+		 * Get the Level of a quality.
+		 * @param id AssociatedQualityId.
+		 * @return Level; {@link SaveDiff#noLevel} if the quality has none; null if the save does not have it.
+		 */
+		public Long getLevel(long id)
+		{
+			int index = Arrays.binarySearch(this.ids, id);
+			return index >= 0 ? (Long) this.levels[index] : null;
+		}
+
+		/**
+		 * Read one quality, decoding only AssociatedQualityId and Level.
+		 * @param scanner Scanner positioned at the '{'.
+		 * @param builder Receives the quality, if it has an ID.
+		 * @throws ParseException On malformed input.
+		 */
+		private static void readQuality(JSONScanner scanner, Builder builder) throws ParseException
+		{
+			Object id = null;
+			Object level = null;
+			scanner.expect('{');
+			if (!scanner.consume('}')) {
+				do {
+					if (scanner.consumeKey("AssociatedQualityId")) {
+						id = scanner.isContainer() ? Levels.skip(scanner) : scanner.readValue();
+					} else if (scanner.consumeKey("Level")) {
+						level = scanner.isContainer() ? Levels.skip(scanner) : scanner.readValue();
+					} else {
+						scanner.skipKey();
+						scanner.skipValue();
+					}
+				} while (scanner.consume(','));
+				scanner.expect('}');
+			}
+			if (id instanceof Long) {
+				builder.add((Long) id, level);
+			}
+		}
+
+		/**
+		 * Skip a container value.
+		 * @param scanner Scanner positioned at the value.
+		 * @return null.
+		 * @throws ParseException On malformed input.
+		 */
+		private static Object skip(JSONScanner scanner) throws ParseException
+		{
+			scanner.skipValue();
+			return null;
+		}
+	}
+
+	/**
+	 * Collects qualities in save order into growing primitive arrays.
+	 */
+	private static class Builder
+	{
+		private long[] ids = new long[1024];
+		private long[] levels = new long[1024];
+		private int count = 0;
+
+		void add(long id, Object level)
+		{
+			if (this.count == this.ids.length) {
+				this.ids = Arrays.copyOf(this.ids, this.count * 2);
+				this.levels = Arrays.copyOf(this.levels, this.count * 2);
+			}
+			this.ids[this.count] = id;
+			this.levels[this.count] = level instanceof Number ? ((Number) level).longValue() : SaveDiff.noLevel;
+			++this.count;
+		}
+
+		Levels build()
+		{
+			return new Levels(this.ids, this.levels, this.count);
+		}
+	}
+
+	/**
+	 * A quality added, removed, or changed.
+	 */
+	public static class Change
+	{
+		private final Kind kind;
+		private final long id;
+		private final long before;
+		private final long after;
+
+		Change(Kind kind, long id, long before, long after)
+		{
+			this.kind = kind;
+			this.id = id;
+			this.before = before;
+			this.after = after;
+		}
+
+		/**
+		 * Get the kind of change.
+		 * @return Kind.
+		 */
+		public Kind getKind()
+		{
+			return this.kind;
+		}
+
+		/**
+		 * Get the quality's ID.
+		 * @return AssociatedQualityId.
+		 */
+		public long getId()
+		{
+			return this.id;
+		}
+
+		/**
+		 * Get the Level before.
+		 * @return Level; {@link SaveDiff#noLevel} if the quality had none, or was added.
+		 */
+		public long getBefore()
+		{
+			return this.before;
+		}
+
+		/**
+		 * Get the Level after.
+		 * @return Level; {@link SaveDiff#noLevel} if the quality has none, or was removed.
+		 */
+		public long getAfter()
+		{
+			return this.after;
+		}
+
+		/**
+		 * Get the quality's name.
+		 * @return Name of the known quality; the ID if it is not known.
+		 */
+		public String getName()
+		{
+			QualityItem item = QualityItem.getKnownItem(this.id);
+			return item != null ? item.getName() : Long.toString(this.id);
+		}
+
+		/**
+		 * Get the quality's category.
+		 * @return Category; null if the quality is not known.
+		 */
+		public String getCategory()
+		{
+			QualityItem item = QualityItem.getKnownItem(this.id);
+			return item != null ? item.getCategory() : null;
+		}
+
+		@Override
+		public String toString()
+		{
+			String category = this.getCategory();
+			String quality = this.getName() + (category != null ? " [" + category + "]" : "") + " (" + this.id + ")";
+			switch (this.kind) {
+			case ADDED:
+				return "+ " + quality + ": " + SaveDiff.formatLevel(this.after);
+			case REMOVED:
+				return "- " + quality + ": " + SaveDiff.formatLevel(this.before);
+			default:
+				return "~ " + quality + ": " + SaveDiff.formatLevel(this.before) + " -> " + SaveDiff.formatLevel(this.after);
+			}
+		}
+	}
+
+	/**
+	 * Compare two saves' qualities.
+	 * @param before Qualities before.
+	 * @param after Qualities after.
+	 * @return Changes, in order of ID.
+	 */
+	public static List<Change> compare(Levels before, Levels after)
+	{
+		List<Change> result = new ArrayList<Change>();
+		int i = 0;
+		int j = 0;
+		while (i < before.ids.length || j < after.ids.length) {
+			if (j == after.ids.length || (i < before.ids.length && before.ids[i] < after.ids[j])) {
+				result.add(new Change(Kind.REMOVED, before.ids[i], before.levels[i], SaveDiff.noLevel));
+				++i;
+			} else if (i == before.ids.length || after.ids[j] < before.ids[i]) {
+				result.add(new Change(Kind.ADDED, after.ids[j], SaveDiff.noLevel, after.levels[j]));
+				++j;
+			} else {
+				if (before.levels[i] != after.levels[j]) {
+					result.add(new Change(Kind.CHANGED, before.ids[i], before.levels[i], after.levels[j]));
+				}
+				++i;
+				++j;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Count changes of each kind.
+	 * @param changes Changes.
+	 * @return Summary, such as "2 added, 0 removed, 5 changed".
+	 */
+	public static String summarize(List<Change> changes)
+	{
+		int[] counts = new int[Kind.values().length];
+		for (Change change : changes) {
+			++counts[change.getKind().ordinal()];
+		}
+		return counts[Kind.ADDED.ordinal()] + " added, " + counts[Kind.REMOVED.ordinal()] + " removed, " + counts[Kind.CHANGED.ordinal()] + " changed";
+	}
+
+	/**
+	 * Describe changes: the summary, then one line per change.
+	 * @param changes Changes.
+	 * @return Report.
+	 */
+	public static String format(List<Change> changes)
+	{
+		StringBuilder report = new StringBuilder(SaveDiff.summarize(changes)).append("\n");
+		for (Change change : changes) {
+			report.append("  ").append(change).append("\n");
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Format a Level.
+	 * @param level Level.
+	 * @return Text.
+	 */
+	public static String formatLevel(long level)
+	{
+		return level == SaveDiff.noLevel ? "(no level)" : Long.toString(level);
+	}
+
+	/**
+	 * Run diff mode.
+	 * @param args Arguments following {@link #diffOption}.
+	 * @return Exit status: 0 if the qualities are the same, 1 if they differ, 2 on error.
+	 */
+	public static int run(String[] args)
+	{
+		String entities = GameFiles.getSunlessSeaDirectory("entities");
+		List<String> operands = new ArrayList<String>();
+		for (String arg : args) {
+			if (arg.startsWith("--entities=")) {
+				entities = arg.substring("--entities=".length());
+			} else if (arg.startsWith("--")) {
+				System.err.println(SaveDiff.usage);
+				return 2;
+			} else {
+				operands.add(arg);
+			}
+		}
+		if (operands.size() != 2) {
+			System.err.println(SaveDiff.usage);
+			return 2;
+		}
+
+		try {
+			if (entities != null) {
+				// Only for names; without the catalog, qualities are listed by ID.
+				GameFiles.loadCatalog(entities);
+			}
+		} catch (IOException e) {
+			System.err.println("Cannot read the quality catalog: " + e);
+		}
+
+		Levels[] levels = new Levels[2];
+		for (int i = 0; i < 2; ++i) {
+			try {
+				levels[i] = Levels.read(new File(operands.get(i)));
+			} catch (IOException | ParseException e) {
+				System.err.println(operands.get(i) + ": " + e);
+				return 2;
+			}
+		}
+
+		List<Change> changes = SaveDiff.compare(levels[0], levels[1]);
+		System.out.print(operands.get(0) + " -> " + operands.get(1) + ": " + SaveDiff.format(changes));
+		return changes.isEmpty() ? 0 : 1;
+	}
+}
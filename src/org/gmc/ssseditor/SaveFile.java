@@ -0,0 +1,519 @@
+package org.gmc.ssseditor;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.DosFileAttributeView;
+import java.nio.file.attribute.DosFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A Sunless Sea save file, read with {@link JSONScanner} rather than deserialized in full.
+ *
+ * Only the parts of the save the editor uses are turned into objects: the top-level scalars
+ * (such as Name and InGameDate), CurrentPort, and the QualitiesPossessedList entries. Within
+ * a quality, only the scalars and the EquippedPossession/AssociatedQuality/AssignToSlot chain
+ * are parsed. Everything else is kept as a {@link RawJSON} byte range into the file content,
+ * and is written back unchanged.
+ *
+ * The byte range of each quality, and of its Level value, is also recorded. Writing copies the
+ * original bytes of every quality still in the list, splicing in only Level values that have
+ * changed; qualities added since loading are serialized and appended.
+ *
+ * Writing is done in two steps: {@link #snapshot()} captures the edits, and must be called on
+ * the thread that owns the quality objects; the {@link Snapshot} can then be written on any thread.
+ * @author grant
+ *
+ */
+public class SaveFile
+{
+	/**
+	 * Location of a loaded quality in the file content.
+	 */
+	private static class QualitySpan
+	{
+		/**
+		 * Position in the loaded list.
+		 */
+		final int index;
+		final int start;
+		int end;
+		int levelStart = -1;
+		int levelEnd = -1;
+		Object level;
+
+		QualitySpan(int index, int start)
+		{
+			this.index = index;
+			this.start = start;
+		}
+	}
+
+	/**
+	 * The content of a save at one point in time, as a list of ranges of the original content
+	 * and serialized replacement bytes.
+	 */
+	public class Snapshot
+	{
+		/**
+		 * Each piece is either an int[] {start, end} range of the original content, or a byte[].
+		 */
+		private final List<Object> pieces = new ArrayList<Object>();
+
+		/**
+		 * Add a range of the original content, merging it with the previous range if adjacent.
+		 * @param start Start position.
+		 * @param end End position (exclusive).
+		 */
+		void copy(int start, int end)
+		{
+			if (start == end) {
+				return;
+			}
+			if (!this.pieces.isEmpty()) {
+				Object last = this.pieces.get(this.pieces.size() - 1);
+				if (last instanceof int[] && ((int[]) last)[1] == start) {
+					((int[]) last)[1] = end;
+					return;
+				}
+			}
+			this.pieces.add(new int[] { start, end });
+		}
+
+		/**
+		 * Add replacement bytes.
+		 * @param bytes Bytes.
+		 */
+		void add(byte[] bytes)
+		{
+			this.pieces.add(bytes);
+		}
+
+		/**
+		 * Write the snapshot.
+		 * @param output Output stream; this should be buffered.
+		 * @throws IOException On write error.
+		 */
+		public void write(OutputStream output) throws IOException
+		{
+			for (Object piece : this.pieces) {
+				if (piece instanceof int[]) {
+					int[] range = (int[]) piece;
+					output.write(SaveFile.this.content, range[0], range[1] - range[0]);
+				} else {
+					output.write((byte[]) piece);
+				}
+			}
+		}
+
+		/**
+		 * Write the snapshot to a file, safely. The content is written to a temporary file in the
+		 * same directory and forced to disk; the existing file, if any, and the new content are then
+		 * stored in the history, and finally the temporary file is given the target's permissions and
+		 * atomically moved over it. If this fails the target is left as it was.
+		 * @param target Target file.
+		 * @param history Snapshot history; null for none.
+		 * @throws IOException On error.
+		 */
+		public void writeTo(File target, SnapshotStore history) throws IOException
+		{
+			Path targetPath = target.getAbsoluteFile().toPath();
+			Path temporary = SaveFile.createTemporary(targetPath);
+			try {
+				try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+					OutputStream output = new BufferedOutputStream(Channels.newOutputStream(channel));
+					this.write(output);
+					output.flush();
+					channel.force(true);
+				}
+
+				if (history != null) {
+					if (Files.exists(targetPath)) {
+						history.store(target);
+					}
+					history.store(temporary.toFile(), target.getName());
+				}
+
+				SaveFile.copyAttributes(targetPath, temporary);
+				SaveFile.replace(temporary, targetPath);
+			} finally {
+				Files.deleteIfExists(temporary);
+			}
+		}
+	}
+
+	/**
+	 * Nested objects that are parsed (shallowly) rather than kept raw.
+	 */
+	private static final Set<String> expandedKeys = new HashSet<String>(Arrays.asList("CurrentPort", "EquippedPossession", "AssociatedQuality", "AssignToSlot"));
+
+	private final byte[] content;
+	private final Map<String, Object> header = new LinkedHashMap<String, Object>();
+	private ArrayList<Object> qualities = null;
+
+	/**
+	 * Position of the QualitiesPossessedList '['.
+	 */
+	private int qualitiesStart;
+
+	/**
+	 * Position after the last loaded quality (or after the '[' if there were none).
+	 */
+	private int qualitiesTail;
+
+	/**
+	 * Spans of the loaded qualities, by identity of the quality object.
+	 */
+	private final Map<Object, QualitySpan> qualitySpans = new IdentityHashMap<Object, QualitySpan>();
+
+	/**
+	 * Load a save file.
+	 * @param source Save file.
+	 * @return Loaded save.
+	 * @throws IOException On read error.
+	 * @throws ParseException If the file is not a JSON object.
+	 */
+	public static SaveFile load(File source) throws IOException, ParseException
+	{
+		return new SaveFile(Files.readAllBytes(source.toPath()));
+	}
+
+	/**
+	 * Parse a save file from its content.
+	 * @param content File content. This is retained, not copied.
+	 * @throws ParseException If the content is not a JSON object.
+	 */
+	public SaveFile(byte[] content) throws ParseException
+	{
+		this.content = content;
+
+		JSONScanner scanner = new JSONScanner(content);
+		scanner.expect('{');
+		if (!scanner.consume('}')) {
+			do {
+				String key = scanner.readKey();
+				if (key.equals("QualitiesPossessedList") && scanner.peek() == '[') {
+					this.qualitiesStart = scanner.getTokenPosition();
+					this.qualities = this.readQualities(scanner);
+					this.header.put(key, this.qualities);
+				} else {
+					this.header.put(key, SaveFile.readMember(key, scanner));
+				}
+			} while (scanner.consume(','));
+			scanner.expect('}');
+		}
+	}
+
+	/**
+	 * Get the top-level values. Values not used by the editor are RawJSON.
+	 * @return Top-level object.
+	 */
+	public Map<String, Object> getHeader()
+	{
+		return this.header;
+	}
+
+	/**
+	 * Get the QualitiesPossessedList entries. This list may be modified; changes are written by {@link #write(OutputStream)}.
+	 * @return Qualities; null if the save has none.
+	 */
+	public ArrayList<Object> getQualities()
+	{
+		return this.qualities;
+	}
+
+	/**
+	 * Get the Level a quality had when the save was loaded, before any changes.
+	 * @param quality Quality object, from {@link #getQualities()}.
+	 * @return Level as loaded; null if the quality had none, or was not loaded from this file.
+	 */
+	public Object getLoadedLevel(Object quality)
+	{
+		QualitySpan span = this.qualitySpans.get(quality);
+		return span != null ? span.level : null;
+	}
+
+	/**
+	 * Write the save. Everything outside QualitiesPossessedList is copied from the original content,
+	 * as are the qualities that were loaded, except for changed Level values. Changes to other values
+	 * of a loaded quality are not written.
+	 * @param output Output stream; this should be buffered.
+	 * @throws IOException On write error.
+	 */
+	public void write(OutputStream output) throws IOException
+	{
+		this.snapshot().write(output);
+	}
+
+	/**
+	 * Capture the current state of the save for writing; see {@link #write(OutputStream)}.
+	 * @return Snapshot.
+	 */
+	public Snapshot snapshot()
+	{
+		return this.snapshot(this.qualities);
+	}
+
+	/**
+	 * Capture the state of the save for writing, with the given QualitiesPossessedList entries in place of
+	 * those returned by {@link #getQualities()}. Entries that were loaded from this file are copied from the
+	 * original content, as by {@link #write(OutputStream)}.
+	 * @param qualities Quality entries, in order; ignored if the save has no QualitiesPossessedList.
+	 * @return Snapshot.
+	 */
+	public Snapshot snapshot(List<?> qualities)
+	{
+		Snapshot snapshot = new Snapshot();
+		if (this.qualities == null) {
+			snapshot.copy(0, this.content.length);
+			return snapshot;
+		}
+
+		// Up to and including the '['.
+		snapshot.copy(0, this.qualitiesStart + 1);
+		QualitySpan previous = null;
+		boolean first = true;
+		for (Object quality : qualities) {
+			QualitySpan span = this.qualitySpans.get(quality);
+			if (first) {
+				if (span != null && span.index == 0) {
+					snapshot.copy(this.qualitiesStart + 1, span.start);
+				}
+			} else if (span != null && previous != null && span.index == previous.index + 1) {
+				// Original separator, including any whitespace.
+				snapshot.copy(previous.end, span.start);
+			} else {
+				snapshot.add(new byte[] { ',' });
+			}
+
+			if (span == null) {
+				snapshot.add(SaveFile.serialize(quality));
+			} else {
+				this.snapshotLoadedQuality(quality, span, snapshot);
+			}
+			previous = span;
+			first = false;
+		}
+
+		// Any trailing whitespace, the ']', and the rest of the file.
+		snapshot.copy(this.qualitiesTail, this.content.length);
+		return snapshot;
+	}
+
+	/**
+	 * Add a quality that was loaded from the file to a snapshot, splicing in its Level if it has changed.
+	 * @param quality Quality object.
+	 * @param span Original location.
+	 * @param snapshot Snapshot.
+	 */
+	@SuppressWarnings("unchecked")
+	private void snapshotLoadedQuality(Object quality, QualitySpan span, Snapshot snapshot)
+	{
+		Object level = quality instanceof Map<?, ?> ? ((Map<String, Object>) quality).get("Level") : null;
+		if (SaveFile.sameValue(level, span.level)) {
+			snapshot.copy(span.start, span.end);
+		} else if (span.levelStart >= 0) {
+			snapshot.copy(span.start, span.levelStart);
+			snapshot.add(SaveFile.serialize(level));
+			snapshot.copy(span.levelEnd, span.end);
+		} else {
+			// There was no Level to splice into.
+			snapshot.add(SaveFile.serialize(quality));
+		}
+	}
+
+	/**
+	 * Serialize a value.
+	 * @param value Value.
+	 * @return JSON bytes.
+	 */
+	private static byte[] serialize(Object value)
+	{
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try {
+			JSONWriter.write(value, output);
+		} catch (IOException e) {
+			// Not possible with a ByteArrayOutputStream.
+			throw new IllegalStateException(e);
+		}
+		return output.toByteArray();
+	}
+
+	/**
+	 * Create an empty temporary file, in the same directory as the file it will replace. Unlike
+	 * Files.createTempFile, which makes the file readable by its owner only, it is created with the
+	 * default permissions, as the target would be.
+	 * @param target File the temporary file will replace; it need not exist.
+	 * @return Temporary file.
+	 * @throws IOException On error.
+	 */
+	static Path createTemporary(Path target) throws IOException
+	{
+		while (true) {
+			Path temporary = target.resolveSibling(target.getFileName() + Long.toUnsignedString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+			try {
+				Files.newByteChannel(temporary, EnumSet.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)).close();
+				return temporary;
+			} catch (FileAlreadyExistsException e) {
+				// Try another name.
+			}
+		}
+	}
+
+	/**
+	 * Give a file that will replace another the other's permissions, group and hidden attribute, if it exists.
+	 * A group that cannot be set is left as it is.
+	 * @param target File to be replaced; it need not exist.
+	 * @param replacement File that will replace it.
+	 * @throws IOException On error.
+	 */
+	static void copyAttributes(Path target, Path replacement) throws IOException
+	{
+		if (!Files.exists(target)) {
+			return;
+		}
+
+		PosixFileAttributeView posix = Files.getFileAttributeView(replacement, PosixFileAttributeView.class);
+		if (posix != null) {
+			PosixFileAttributes attributes = Files.readAttributes(target, PosixFileAttributes.class);
+			posix.setPermissions(attributes.permissions());
+			try {
+				posix.setGroup(attributes.group());
+			} catch (IOException e) {
+				// Only the owner's groups can be set, except by a privileged user.
+			}
+		}
+		DosFileAttributeView dos = Files.getFileAttributeView(replacement, DosFileAttributeView.class);
+		if (posix == null && dos != null) {
+			DosFileAttributes attributes = Files.readAttributes(target, DosFileAttributes.class);
+			dos.setHidden(attributes.isHidden());
+		}
+	}
+
+	/**
+	 * Move a file over another, atomically if the file system allows it.
+	 * @param source Source file.
+	 * @param target Target file.
+	 * @throws IOException On error.
+	 */
+	static void replace(Path source, Path target) throws IOException
+	{
+		try {
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Compare two JSON values, treating numbers of different classes as equal if they have the same value.
+	 * @param a First value.
+	 * @param b Second value.
+	 * @return true if equal.
+	 */
+	private static boolean sameValue(Object a, Object b)
+	{
+		if (a instanceof Number && b instanceof Number && !(a instanceof Double) && !(b instanceof Double)) {
+			return ((Number) a).longValue() == ((Number) b).longValue();
+		}
+		return a == null ? b == null : a.equals(b);
+	}
+
+	/**
+	 * Read the QualitiesPossessedList array.
+	 * @param scanner Scanner positioned at the '['.
+	 * @return Quality list.
+	 * @throws ParseException On malformed input.
+	 */
+	private ArrayList<Object> readQualities(JSONScanner scanner) throws ParseException
+	{
+		ArrayList<Object> result = new ArrayList<Object>();
+		scanner.expect('[');
+		this.qualitiesTail = scanner.getPosition();
+		if (!scanner.consume(']')) {
+			do {
+				QualitySpan span = new QualitySpan(result.size(), scanner.getTokenPosition());
+				Object quality = SaveFile.readShallow(scanner, span);
+				span.end = scanner.getPosition();
+				this.qualitiesTail = span.end;
+				this.qualitySpans.put(quality, span);
+				result.add(quality);
+			} while (scanner.consume(','));
+			scanner.expect(']');
+		}
+		return result;
+	}
+
+	/**
+	 * Read an object member value: scalars are parsed, as are objects named in {@link #expandedKeys};
+	 * other objects and arrays are kept as RawJSON.
+	 * @param key Member name.
+	 * @param scanner Scanner positioned at the value.
+	 * @return Value.
+	 * @throws ParseException On malformed input.
+	 */
+	private static Object readMember(String key, JSONScanner scanner) throws ParseException
+	{
+		if (!scanner.isContainer()) {
+			return scanner.readValue();
+		} else if (SaveFile.expandedKeys.contains(key) && scanner.peek() == '{') {
+			return SaveFile.readShallow(scanner, null);
+		}
+		return scanner.readRaw();
+	}
+
+	/**
+	 * Read an object shallowly, using {@link #readMember(String, JSONScanner)} for each member.
+	 * A value that is not an object is handled as by readMember.
+	 * @param scanner Scanner positioned at the value.
+	 * @param span If not null, records the location and value of the object's Level.
+	 * @return Value.
+	 * @throws ParseException On malformed input.
+	 */
+	private static Object readShallow(JSONScanner scanner, QualitySpan span) throws ParseException
+	{
+		if (scanner.peek() != '{') {
+			return scanner.isContainer() ? scanner.readRaw() : scanner.readValue();
+		}
+
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		scanner.expect('{');
+		if (!scanner.consume('}')) {
+			do {
+				String key = scanner.readKey();
+				if (span != null && key.equals("Level")) {
+					span.levelStart = scanner.getTokenPosition();
+					span.level = SaveFile.readMember(key, scanner);
+					span.levelEnd = scanner.getPosition();
+					result.put(key, span.level);
+				} else {
+					result.put(key, SaveFile.readMember(key, scanner));
+				}
+			} while (scanner.consume(','));
+			scanner.expect('}');
+		}
+		return result;
+	}
+}
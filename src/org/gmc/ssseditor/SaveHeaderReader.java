@@ -0,0 +1,288 @@
+package org.gmc.ssseditor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads a few values from a save without loading all of it: the named top-level members, and the first
+ * QualitiesPossessedList entry with each of the given AssociatedQualityIds.
+ *
+ * The file is read in growing blocks and scanned from the start with {@link JSONScanner}, stopping as soon as
+ * every value asked for has been found; if the values are not all in the part read so far, more is read and
+ * the scan repeated, so the work is at most about twice that of a single scan of the part needed. Values
+ * not asked for are skipped without being decoded. Of a value that is an object, only the scalar members are
+ * read; of a quality, the scalar members and the scalar members of its objects (such as EquippedPossession).
+ * Other nested values are left out.
+ *
+ * A reader does not change once created, and may be used on several threads at once.
+ * @author grant
+ *
+ */
+public class SaveHeaderReader
+{
+	/**
+	 * Values read from a save.
+	 */
+	public static class Header
+	{
+		private final Map<String, Object> values = new LinkedHashMap<String, Object>();
+		private final LongMap<Map<String, Object>> qualities = new LongMap<Map<String, Object>>();
+		private int bytesRead;
+
+		/**
+		 * Get the top-level values found.
+		 * @return Values by member name.
+		 */
+		public Map<String, Object> getValues()
+		{
+			return this.values;
+		}
+
+		/**
+		 * Get a quality.
+		 * @param id AssociatedQualityId.
+		 * @return Quality; null if not found.
+		 */
+		public Map<String, Object> getQuality(long id)
+		{
+			return this.qualities.get(id);
+		}
+
+		/**
+		 * Get the number of bytes of the file that were read.
+		 * @return Bytes read.
+		 */
+		public int getBytesRead()
+		{
+			return this.bytesRead;
+		}
+	}
+
+	private static final int initialBlock = 16384;
+
+	private final Set<String> keys;
+	private final long[] qualityIds;
+
+	/**
+	 * Create a reader.
+	 * @param keys Top-level members to read.
+	 * @param qualityIds AssociatedQualityIds of the qualities to read; may be empty.
+	 */
+	public SaveHeaderReader(Set<String> keys, long... qualityIds)
+	{
+		this.keys = Collections.unmodifiableSet(new HashSet<String>(keys));
+		this.qualityIds = qualityIds.clone();
+		Arrays.sort(this.qualityIds);
+	}
+
+	/**
+	 * Read a save.
+	 * @param source Save file.
+	 * @return Values found. Values not in the save are absent.
+	 * @throws IOException On read error.
+	 * @throws ParseException If the save is not valid JSON, as far as it was read.
+	 */
+	public Header read(File source) throws IOException, ParseException
+	{
+		try (InputStream input = new FileInputStream(source)) {
+			byte[] data = new byte[(int) Math.min(Math.max(source.length(), 1), SaveHeaderReader.initialBlock)];
+			int length = SaveHeaderReader.fill(input, data, 0);
+			while (true) {
+				boolean complete = length < data.length;
+				try {
+					Header header = this.scan(data, length);
+					header.bytesRead = length;
+					return header;
+				} catch (ParseException e) {
+					if (complete) {
+						throw e;
+					}
+					// Probably cut short; read more, and scan again.
+					data = Arrays.copyOf(data, data.length * 4);
+					length = SaveHeaderReader.fill(input, data, length);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Scan the part of the save read so far.
+	 * @param data File content.
+	 * @param length Length read.
+	 * @return Values.
+	 * @throws ParseException If the content is malformed, or ends before the values were all found.
+	 */
+	private Header scan(byte[] data, int length) throws ParseException
+	{
+		Header header = new Header();
+		JSONScanner scanner = new JSONScanner(data, 0, length);
+		scanner.expect('{');
+		if (scanner.consume('}')) {
+			return header;
+		}
+
+		do {
+			String key = scanner.readKey();
+			if (key.equals("QualitiesPossessedList") && this.qualityIds.length > 0 && scanner.peek() == '[') {
+				this.scanQualities(scanner, header);
+			} else if (this.keys.contains(key) && !header.values.containsKey(key)) {
+				header.values.put(key, SaveHeaderReader.readValue(scanner, 1));
+			} else {
+				scanner.skipValue();
+			}
+
+			// The next token must be there, as a scalar at the end of the data may have been cut short.
+			scanner.peek();
+			if (this.isComplete(header)) {
+				return header;
+			}
+		} while (scanner.consume(','));
+		scanner.expect('}');
+		return header;
+	}
+
+	/**
+	 * Scan QualitiesPossessedList, reading the qualities asked for. Only the AssociatedQualityId of the others is read.
+	 * @param scanner Scanner positioned at the '['.
+	 * @param header Receives the qualities.
+	 * @throws ParseException On malformed input.
+	 */
+	private void scanQualities(JSONScanner scanner, Header header) throws ParseException
+	{
+		scanner.expect('[');
+		if (scanner.consume(']')) {
+			return;
+		}
+
+		do {
+			int start = scanner.getTokenPosition();
+			long id = SaveHeaderReader.scanQualityId(scanner);
+			if (Arrays.binarySearch(this.qualityIds, id) >= 0 && !header.qualities.containsKey(id)) {
+				JSONScanner entry = new JSONScanner(scanner.getData(), start, scanner.getPosition());
+				header.qualities.put(id, SaveHeaderReader.readObject(entry, 2));
+				scanner.peek();
+				if (this.isComplete(header)) {
+					return;
+				}
+			}
+		} while (scanner.consume(','));
+		scanner.expect(']');
+	}
+
+	/**
+	 * Check whether every value asked for has been found.
+	 * @param header Values found.
+	 * @return true if complete.
+	 */
+	private boolean isComplete(Header header)
+	{
+		return header.values.size() == this.keys.size() && header.qualities.size() == this.qualityIds.length;
+	}
+
+	/**
+	 * Skip a quality, reading only its AssociatedQualityId.
+	 * @param scanner Scanner positioned at the quality.
+	 * @return AssociatedQualityId; -1 if there is none.
+	 * @throws ParseException On malformed input.
+	 */
+	private static long scanQualityId(JSONScanner scanner) throws ParseException
+	{
+		if (scanner.peek() != '{') {
+			scanner.skipValue();
+			return -1;
+		}
+
+		long id = -1;
+		scanner.expect('{');
+		if (!scanner.consume('}')) {
+			do {
+				if (id < 0 && scanner.consumeKey("AssociatedQualityId")) {
+					if (scanner.isContainer()) {
+						scanner.skipValue();
+					} else {
+						Object value = scanner.readValue();
+						id = value instanceof Long ? (Long) value : -1;
+					}
+				} else {
+					scanner.skipKey();
+					scanner.skipValue();
+				}
+			} while (scanner.consume(','));
+			scanner.expect('}');
+		}
+		return id;
+	}
+
+	/**
+	 * Read a value: scalars are read, objects are read to the given depth, and other containers skipped.
+	 * @param scanner Scanner positioned at the value.
+	 * @param depth Levels of objects to read.
+	 * @return Value; null for a skipped container.
+	 * @throws ParseException On malformed input.
+	 */
+	private static Object readValue(JSONScanner scanner, int depth) throws ParseException
+	{
+		if (!scanner.isContainer()) {
+			return scanner.readValue();
+		} else if (depth > 0 && scanner.peek() == '{') {
+			return SaveHeaderReader.readObject(scanner, depth);
+		}
+		scanner.skipValue();
+		return null;
+	}
+
+	/**
+	 * Read an object to the given depth. Members that are skipped containers are left out.
+	 * @param scanner Scanner positioned at the '{'.
+	 * @param depth Levels of objects to read, including this one.
+	 * @return Object.
+	 * @throws ParseException On malformed input.
+	 */
+	private static Map<String, Object> readObject(JSONScanner scanner, int depth) throws ParseException
+	{
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		scanner.expect('{');
+		if (!scanner.consume('}')) {
+			do {
+				String key = scanner.readKey();
+				boolean skipped = scanner.isContainer() && (depth <= 1 || scanner.peek() != '{');
+				Object value = SaveHeaderReader.readValue(scanner, depth - 1);
+				if (!skipped) {
+					result.put(key, value);
+				}
+			} while (scanner.consume(','));
+			scanner.expect('}');
+		}
+		return result;
+	}
+
+	/**
+	 * Read from a stream until the buffer is full or the stream ends.
+	 * @param input Input stream.
+	 * @param data Buffer.
+	 * @param offset Bytes already in the buffer.
+	 * @return Bytes in the buffer.
+	 * @throws IOException On read error.
+	 */
+	private static int fill(InputStream input, byte[] data, int offset) throws IOException
+	{
+		int length = offset;
+		while (length < data.length) {
+			int count = input.read(data, length, data.length - length);
+			if (count < 0) {
+				break;
+			}
+			length += count;
+		}
+		return length;
+	}
+}
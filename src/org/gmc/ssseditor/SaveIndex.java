@@ -0,0 +1,249 @@
+package org.gmc.ssseditor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Summaries of the saves in a directory, kept in a binary index file between runs.
+ *
+ * On refresh the directory is listed, and the summary of each save whose size and modification time
+ * match the index is reused. Only new and changed saves are read, in parallel; the index file is
+ * rewritten if anything changed. The in-memory summaries are kept, so later refreshes do not read the
+ * index file again. A save that cannot be read is indexed with its error, so it is not read again until
+ * it changes.
+ * @author grant
+ *
+ */
+public class SaveIndex
+{
+	private static final int magic = 0x53535349; // "SSSI"
+	private static final int version = 1;
+
+	private final File directory;
+	private final File indexFile;
+
+	/**
+	 * Summaries by file name; null until the index file has been read.
+	 */
+	private Map<String, SaveSummary> summaries = null;
+
+	/**
+	 * Create an index.
+	 * @param directory Saves directory.
+	 * @param indexFile Index file. It need not exist.
+	 */
+	public SaveIndex(File directory, File indexFile)
+	{
+		this.directory = directory;
+		this.indexFile = indexFile;
+	}
+
+	/**
+	 * Bring the index up to date with the directory. This may take some time, and should not be run on the event thread.
+	 * @return Summaries of the saves, most recently modified first.
+	 * @throws InterruptedException If interrupted while reading saves.
+	 */
+	public synchronized List<SaveSummary> refresh() throws InterruptedException
+	{
+		if (this.summaries == null) {
+			this.summaries = this.readIndex();
+		}
+
+		File[] files = this.directory.listFiles();
+		if (files == null) {
+			files = new File[0];
+		}
+
+		Map<String, SaveSummary> current = new HashMap<String, SaveSummary>();
+		List<Callable<SaveSummary>> reads = new ArrayList<Callable<SaveSummary>>();
+		for (final File file : files) {
+			if (!file.isFile() || !file.getName().toLowerCase().endsWith(".json")) {
+				continue;
+			}
+			SaveSummary summary = this.summaries.get(file.getName());
+			if (summary != null && summary.isCurrent(file.length(), file.lastModified())) {
+				current.put(file.getName(), summary);
+			} else {
+				reads.add(new Callable<SaveSummary>() {
+					@Override
+					public SaveSummary call()
+					{
+						return SaveSummary.read(file);
+					}
+				});
+			}
+		}
+
+		boolean changed = !reads.isEmpty() || current.size() != this.summaries.size();
+		for (Future<SaveSummary> read : ForkJoinPool.commonPool().invokeAll(reads)) {
+			try {
+				SaveSummary summary = read.get();
+				current.put(summary.getFile().getName(), summary);
+			} catch (ExecutionException e) {
+				// SaveSummary.read reports errors in the summary; anything else is a bug.
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+
+		this.summaries = current;
+		if (changed) {
+			this.writeIndex();
+		}
+
+		List<SaveSummary> result = new ArrayList<SaveSummary>(current.values());
+		Collections.sort(result, new Comparator<SaveSummary>() {
+			@Override
+			public int compare(SaveSummary o1, SaveSummary o2)
+			{
+				return Long.compare(o2.getLastModified(), o1.getLastModified());
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Read the index file.
+	 * @return Summaries by file name; empty if the index is missing, for another directory, or unreadable.
+	 */
+	private Map<String, SaveSummary> readIndex()
+	{
+		Map<String, SaveSummary> result = new HashMap<String, SaveSummary>();
+		if (!this.indexFile.isFile()) {
+			return result;
+		}
+
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(this.indexFile)))) {
+			if (input.readInt() != SaveIndex.magic || input.readInt() != SaveIndex.version
+					|| !input.readUTF().equals(this.directory.getAbsolutePath())) {
+				return result;
+			}
+
+			int count = input.readInt();
+			for (int i = 0; i < count; ++i) {
+				File file = new File(this.directory, input.readUTF());
+				long size = input.readLong();
+				long lastModified = input.readLong();
+				String captain = SaveIndex.readString(input);
+				String port = SaveIndex.readString(input);
+				String inGameDate = SaveIndex.readString(input);
+				Long echos = SaveIndex.readLong(input);
+				Long hull = SaveIndex.readLong(input);
+				Long shipId = SaveIndex.readLong(input);
+				String error = SaveIndex.readString(input);
+				result.put(file.getName(), new SaveSummary(file, size, lastModified, captain, port, inGameDate, echos, hull, shipId, error));
+			}
+			return result;
+		} catch (IOException e) {
+			// Treat as empty; the index will be rebuilt.
+			return new HashMap<String, SaveSummary>();
+		}
+	}
+
+	/**
+	 * Write the index file. Failure to write is not an error; the saves will be read again next time.
+	 */
+	private void writeIndex()
+	{
+		File temporary = new File(this.indexFile.getPath() + ".tmp");
+		File parent = this.indexFile.getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+			output.writeInt(SaveIndex.magic);
+			output.writeInt(SaveIndex.version);
+			output.writeUTF(this.directory.getAbsolutePath());
+			output.writeInt(this.summaries.size());
+			for (SaveSummary summary : this.summaries.values()) {
+				output.writeUTF(summary.getFile().getName());
+				output.writeLong(summary.getSize());
+				output.writeLong(summary.getLastModified());
+				SaveIndex.writeString(output, summary.getCaptain());
+				SaveIndex.writeString(output, summary.getPort());
+				SaveIndex.writeString(output, summary.getInGameDate());
+				SaveIndex.writeLong(output, summary.getEchos());
+				SaveIndex.writeLong(output, summary.getHull());
+				SaveIndex.writeLong(output, summary.getShipId());
+				SaveIndex.writeString(output, summary.getError());
+			}
+		} catch (IOException e) {
+			temporary.delete();
+			return;
+		}
+
+		try {
+			Files.move(temporary.toPath(), this.indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			temporary.delete();
+		}
+	}
+
+	/**
+	 * Read a string that may be null.
+	 * @param input Input stream.
+	 * @return String or null.
+	 * @throws IOException On read error.
+	 */
+	private static String readString(DataInputStream input) throws IOException
+	{
+		return input.readBoolean() ? input.readUTF() : null;
+	}
+
+	/**
+	 * Write a string that may be null.
+	 * @param output Output stream.
+	 * @param value String or null.
+	 * @throws IOException On write error.
+	 */
+	private static void writeString(DataOutputStream output, String value) throws IOException
+	{
+		output.writeBoolean(value != null);
+		if (value != null) {
+			output.writeUTF(value);
+		}
+	}
+
+	/**
+	 * Read a Long that may be null.
+	 * @param input Input stream.
+	 * @return Long or null.
+	 * @throws IOException On read error.
+	 */
+	private static Long readLong(DataInputStream input) throws IOException
+	{
+		return input.readBoolean() ? input.readLong() : null;
+	}
+
+	/**
+	 * Write a Long that may be null.
+	 * @param output Output stream.
+	 * @param value Long or null.
+	 * @throws IOException On write error.
+	 */
+	private static void writeLong(DataOutputStream output, Long value) throws IOException
+	{
+		output.writeBoolean(value != null);
+		if (value != null) {
+			output.writeLong(value);
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package org.gmc.ssseditor;
+
+import java.text.ParseException;
+
+/**
+ * Finds the qualities of a save with {@link JSONScanner}, without building a tree. The top-level object is
+ * skipped through, except for QualitiesPossessedList, and each object in that list is passed to a reader,
+ * which decodes only the members it needs. Entries that are not objects are skipped.
+ * @author grant
+ *
+ */
+class SaveScanner
+{
+	/**
+	 * Receives the qualities of a save.
+	 */
+	interface IQualityEvents
+	{
+		/**
+		 * Read one quality.
+		 * @param scanner Scanner positioned at the quality's '{'; the quality is to be read up to and including its '}'.
+		 * @throws ParseException On malformed input.
+		 */
+		public void onQuality(JSONScanner scanner) throws ParseException;
+	}
+
+	/**
+	 * Scan a save's qualities.
+	 * @param content Save content.
+	 * @param events Receives each quality, in order.
+	 * @throws ParseException If the save is not valid JSON.
+	 */
+	static void scanQualities(byte[] content, IQualityEvents events) throws ParseException
+	{
+		JSONScanner scanner = new JSONScanner(content);
+		scanner.expect('{');
+		if (!scanner.consume('}')) {
+			do {
+				if (!scanner.consumeKey("QualitiesPossessedList")) {
+					scanner.skipKey();
+					scanner.skipValue();
+				} else if (scanner.peek() == '[') {
+					SaveScanner.scanList(scanner, events);
+				} else {
+					scanner.skipValue();
+				}
+			} while (scanner.consume(','));
+			scanner.expect('}');
+		}
+	}
+
+	/**
+	 * Scan QualitiesPossessedList.
+	 * @param scanner Scanner positioned at the '['.
+	 * @param events Receives each quality.
+	 * @throws ParseException On malformed input.
+	 */
+	private static void scanList(JSONScanner scanner, IQualityEvents events) throws ParseException
+	{
+		scanner.expect('[');
+		if (scanner.consume(']')) {
+			return;
+		}
+
+		do {
+			if (scanner.peek() == '{') {
+				events.onQuality(scanner);
+			} else {
+				scanner.skipValue();
+			}
+		} while (scanner.consume(','));
+		scanner.expect(']');
+	}
+}
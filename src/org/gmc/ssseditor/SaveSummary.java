@@ -0,0 +1,213 @@
+package org.gmc.ssseditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * What the save browser shows of a save: the captain, port and date, and a few qualities.
+ * Summaries are immutable, and are kept in the {@link SaveIndex}.
+ * @author grant
+ *
+ */
+public class SaveSummary
+{
+	private static final long echosId = 102028;
+	private static final long hullId = 102029;
+	private static final long currentShipId = 102889;
+
+	/**
+	 * Reads only what a summary needs.
+	 */
+	private static final SaveHeaderReader reader = new SaveHeaderReader(new HashSet<String>(Arrays.asList("Name", "CurrentPort", "InGameDate")),
+			SaveSummary.echosId, SaveSummary.hullId, SaveSummary.currentShipId);
+
+	private final File file;
+	private final long size;
+	private final long lastModified;
+	private final String captain;
+	private final String port;
+	private final String inGameDate;
+	private final Long echos;
+	private final Long hull;
+	private final Long shipId;
+	private final String error;
+
+	/**
+	 * Create a summary.
+	 * @param file Save file.
+	 * @param size File size when read.
+	 * @param lastModified File modification time when read.
+	 * @param captain Captain name; may be null.
+	 * @param port Current port name; may be null.
+	 * @param inGameDate In-game date, as in the save; may be null.
+	 * @param echos Echos; null if not in the save.
+	 * @param hull Hull; null if not in the save.
+	 * @param shipId ID of the current ship; null if not known.
+	 * @param error Why the save could not be read; null if it was read.
+	 */
+	SaveSummary(File file, long size, long lastModified, String captain, String port, String inGameDate, Long echos, Long hull, Long shipId, String error)
+	{
+		this.file = file;
+		this.size = size;
+		this.lastModified = lastModified;
+		this.captain = captain;
+		this.port = port;
+		this.inGameDate = inGameDate;
+		this.echos = echos;
+		this.hull = hull;
+		this.shipId = shipId;
+		this.error = error;
+	}
+
+	/**
+	 * Read the summary of a save. Only as much of the save is read as is needed to find the values; see
+	 * {@link SaveHeaderReader}. A save that cannot be read still has a summary, giving the error.
+	 * @param file Save file.
+	 * @return Summary.
+	 */
+	public static SaveSummary read(File file)
+	{
+		long size = file.length();
+		long lastModified = file.lastModified();
+		try {
+			SaveHeaderReader.Header header = SaveSummary.reader.read(file);
+			Map<String, Object> values = header.getValues();
+
+			// As in the editor, the first quality with an ID is the one used.
+			return new SaveSummary(file, size, lastModified, SaveSummary.getString(values, "Name"), SaveSummary.getString(values, "CurrentPort", "Name"),
+					SaveSummary.getString(values, "InGameDate"), SaveSummary.getLevel(header.getQuality(SaveSummary.echosId)),
+					SaveSummary.getLevel(header.getQuality(SaveSummary.hullId)),
+					JSONUtil.getLong(header.getQuality(SaveSummary.currentShipId), "EquippedPossession", "AssociatedQualityId"), null);
+		} catch (IOException | ParseException e) {
+			return new SaveSummary(file, size, lastModified, null, null, null, null, null, null, e.toString());
+		}
+	}
+
+	/**
+	 * Get the save file.
+	 * @return File.
+	 */
+	public File getFile()
+	{
+		return this.file;
+	}
+
+	/**
+	 * Get the file size when the summary was read.
+	 * @return Size.
+	 */
+	public long getSize()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Get the file modification time when the summary was read.
+	 * @return Modification time.
+	 */
+	public long getLastModified()
+	{
+		return this.lastModified;
+	}
+
+	/**
+	 * Get the captain's name.
+	 * @return Name; null if not known.
+	 */
+	public String getCaptain()
+	{
+		return this.captain;
+	}
+
+	/**
+	 * Get the name of the current port.
+	 * @return Port name; null if not known.
+	 */
+	public String getPort()
+	{
+		return this.port;
+	}
+
+	/**
+	 * Get the in-game date, as written in the save (yyyy-MM-ddTHH:mm:ss.SSS).
+	 * @return Date; null if not known.
+	 */
+	public String getInGameDate()
+	{
+		return this.inGameDate;
+	}
+
+	/**
+	 * Get the echos.
+	 * @return Echos; null if not in the save.
+	 */
+	public Long getEchos()
+	{
+		return this.echos;
+	}
+
+	/**
+	 * Get the hull.
+	 * @return Hull; null if not in the save.
+	 */
+	public Long getHull()
+	{
+		return this.hull;
+	}
+
+	/**
+	 * Get the ID of the current ship.
+	 * @return Ship ID; null if not known.
+	 */
+	public Long getShipId()
+	{
+		return this.shipId;
+	}
+
+	/**
+	 * Get the reason the save could not be read.
+	 * @return Error; null if the save was read.
+	 */
+	public String getError()
+	{
+		return this.error;
+	}
+
+	/**
+	 * Check whether this summary is still current for its file.
+	 * @param size Current file size.
+	 * @param lastModified Current file modification time.
+	 * @return true if the file has not changed.
+	 */
+	boolean isCurrent(long size, long lastModified)
+	{
+		return this.size == size && this.lastModified == lastModified;
+	}
+
+	/**
+	 * Get a Level as a Long.
+	 * @param quality Save quality; may be null.
+	 * @return Level; null if it has none.
+	 */
+	private static Long getLevel(Map<String, Object> quality)
+	{
+		Object level = quality != null ? quality.get("Level") : null;
+		return level instanceof Number ? ((Number) level).longValue() : null;
+	}
+
+	/**
+	 * Get a scalar from a key path as a string.
+	 * @param json JSON root.
+	 * @param keys Path to target key.
+	 * @return String; null if not found.
+	 */
+	private static String getString(Map<String, Object> json, String... keys)
+	{
+		Object value = JSONUtil.getKeyValue(json, keys);
+		return value != null && !(value instanceof Map<?, ?>) ? value.toString() : null;
+	}
+}
@@ -0,0 +1,188 @@
+package org.gmc.ssseditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the open save for changes made by something else, such as the game autosaving.
+ *
+ * The save's directory is watched with a WatchService on a daemon thread. Events for the save are collected
+ * until there have been none for a short while, as the game may write the file in several steps; then, if the
+ * file's size or modification time differ from the last known state, the listener is told. The editor records
+ * the state after loading and after writing the save, so its own writes are not reported.
+ * @author grant
+ *
+ */
+public class SaveWatcher
+{
+	/**
+	 * Receives notice of changes. This is called on the watcher thread.
+	 */
+	public interface ISaveWatcherEvents
+	{
+		public void onSaveChanged(File file);
+	}
+
+	/**
+	 * Time with no further events before a change is reported, in milliseconds.
+	 */
+	private static final long quietPeriod = 500;
+
+	private final ISaveWatcherEvents listener;
+
+	private WatchService service = null;
+	private File file = null;
+	private long knownSize = -1;
+	private FileTime knownModified = null;
+
+	/**
+	 * Create a watcher; it watches nothing until {@link #watch(File)} is called.
+	 * @param listener Listener.
+	 */
+	public SaveWatcher(ISaveWatcherEvents listener)
+	{
+		this.listener = listener;
+	}
+
+	/**
+	 * Watch a save, instead of any watched before. Its current state is recorded as known.
+	 * @param file Save file.
+	 */
+	public synchronized void watch(File file)
+	{
+		this.stop();
+
+		Path directory = file.getAbsoluteFile().toPath().getParent();
+		try {
+			final WatchService service = directory.getFileSystem().newWatchService();
+			directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+			this.service = service;
+			this.file = file;
+			this.setKnownState(file);
+
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run()
+				{
+					SaveWatcher.this.run(service);
+				}
+			}, "Save watcher");
+			thread.setDaemon(true);
+			thread.start();
+		} catch (IOException e) {
+			// Watching is not available here; the save is simply not reloaded.
+			this.stop();
+		}
+	}
+
+	/**
+	 * Stop watching.
+	 */
+	public synchronized void stop()
+	{
+		if (this.service != null) {
+			try {
+				this.service.close();
+			} catch (IOException e) {
+				// Closing anyway.
+			}
+		}
+		this.service = null;
+		this.file = null;
+	}
+
+	/**
+	 * Record the current state of a file as known, such as after writing it, so that the change is not reported.
+	 * @param file File; ignored if it is not the watched save.
+	 */
+	public synchronized void setKnownState(File file)
+	{
+		if (this.file == null || !this.file.equals(file)) {
+			return;
+		}
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+			this.knownSize = attributes.size();
+			this.knownModified = attributes.lastModifiedTime();
+		} catch (IOException e) {
+			this.knownSize = -1;
+			this.knownModified = null;
+		}
+	}
+
+	/**
+	 * The watcher loop. This runs on its own thread until the service is closed.
+	 * @param service Watch service.
+	 */
+	private void run(WatchService service)
+	{
+		boolean pending = false;
+		try {
+			while (true) {
+				WatchKey key = pending ? service.poll(SaveWatcher.quietPeriod, TimeUnit.MILLISECONDS) : service.take();
+				if (key == null) {
+					// Quiet: the writer has finished, for now.
+					pending = false;
+					File changed = this.checkChanged(service);
+					if (changed != null) {
+						this.listener.onSaveChanged(changed);
+					}
+					continue;
+				}
+
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						pending = true;
+					} else if (event.context() instanceof Path && this.isWatchedName((Path) event.context())) {
+						pending = true;
+					}
+				}
+				if (!key.reset()) {
+					return;
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// Stopped.
+		}
+	}
+
+	/**
+	 * Check whether an event names the watched save.
+	 * @param name File name from the event.
+	 * @return true for the save.
+	 */
+	private synchronized boolean isWatchedName(Path name)
+	{
+		return this.file != null && name.getFileName().toString().equals(this.file.getName());
+	}
+
+	/**
+	 * Check whether the watched save has changed from its known state, and if so record the new state.
+	 * @param service The service of the calling thread; nothing is reported if it is no longer current.
+	 * @return The save, if changed; otherwise null.
+	 */
+	private synchronized File checkChanged(WatchService service)
+	{
+		if (service != this.service || this.file == null) {
+			return null;
+		}
+
+		long size = this.knownSize;
+		FileTime modified = this.knownModified;
+		this.setKnownState(this.file);
+		if (this.knownModified == null || (size == this.knownSize && this.knownModified.equals(modified))) {
+			return null;
+		}
+		return this.file;
+	}
+}
@@ -0,0 +1,572 @@
+package org.gmc.ssseditor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Every saved version of the saves in a directory, kept in a history directory next to them.
+ *
+ * Each version is split into content-defined chunks: a rolling hash over the bytes decides where chunks end, so
+ * that an edit changes only the chunks around it and the rest of the file splits as before. Chunks are stored
+ * once each, compressed, under their SHA-256 hash; a version is a manifest listing its chunks. Consecutive
+ * saves differ in only a few qualities, so each new version adds only a few chunks. Restoring a version reads
+ * its chunks in order, as a stream.
+ *
+ * Chunk and manifest files are written to a temporary file, forced to disk, and moved into place, so an
+ * interrupted write leaves at worst an unused temporary file, never a damaged chunk; and a chunk is on disk
+ * before any manifest that lists it. There is one store per directory, shared by all threads.
+ *
+ * The latest {@link #maximumVersions} versions of each save are kept; older manifests are deleted as new
+ * versions are added, and every so often the chunks that no manifest lists are deleted. A chunk is only
+ * deleted if it has not been written or reused for an hour, so that a store in progress, in this process or
+ * another, does not lose a chunk it has already counted on.
+ * @author grant
+ *
+ */
+public class SnapshotStore
+{
+	/**
+	 * A stored version of a save.
+	 */
+	public static class Version
+	{
+		private final File manifest;
+		private final String name;
+		private final long time;
+		private final long size;
+
+		Version(File manifest, String name, long time, long size)
+		{
+			this.manifest = manifest;
+			this.name = name;
+			this.time = time;
+			this.size = size;
+		}
+
+		/**
+		 * Get the name of the save.
+		 * @return File name.
+		 */
+		public String getName()
+		{
+			return this.name;
+		}
+
+		/**
+		 * Get the time the version was stored.
+		 * @return Time, in milliseconds since the epoch.
+		 */
+		public long getTime()
+		{
+			return this.time;
+		}
+
+		/**
+		 * Get the size of the save.
+		 * @return Size in bytes.
+		 */
+		public long getSize()
+		{
+			return this.size;
+		}
+	}
+
+	/**
+	 * Name of the history directory, in the saves directory.
+	 */
+	public static final String directoryName = ".ssseditor-history";
+
+	private static final int magic = 0x53535356; // "SSSV"
+	private static final int version = 1;
+	private static final String manifestSuffix = ".version";
+
+	/**
+	 * Number of versions kept of each save.
+	 */
+	public static final int maximumVersions = 50;
+
+	/**
+	 * Time since a chunk was last written or reused before it may be deleted, if no manifest lists it.
+	 */
+	private static final long chunkGraceMillis = 60 * 60 * 1000L;
+
+	/**
+	 * Chunk sizes. Chunks end where the top 13 bits of the rolling hash, which depend on the last 64 bytes,
+	 * are zero, giving an average of about 8K; but are never shorter than the minimum nor longer than the maximum.
+	 */
+	private static final int minimumChunk = 2048;
+	private static final int maximumChunk = 65536;
+	private static final long boundaryMask = -1L << 51;
+
+	/**
+	 * Random values for the rolling (gear) hash, one per byte value. The seed is fixed, as the boundaries
+	 * must be found in the same places in every run.
+	 */
+	private static final long[] gear = new long[256];
+	static {
+		Random random = new Random(0x5353534564697452L);
+		for (int i = 0; i < SnapshotStore.gear.length; ++i) {
+			SnapshotStore.gear[i] = random.nextLong();
+		}
+	}
+
+	private static final Map<File, SnapshotStore> stores = new HashMap<File, SnapshotStore>();
+
+	private final File directory;
+	private final File chunkDirectory;
+
+	/**
+	 * Versions deleted since chunks were last collected.
+	 */
+	private int prunedVersions = 0;
+
+	/**
+	 * Get the store for the saves in a directory.
+	 * @param saveDirectory Saves directory.
+	 * @return Store.
+	 */
+	public static SnapshotStore forDirectory(File saveDirectory)
+	{
+		File directory = new File(saveDirectory.getAbsoluteFile(), SnapshotStore.directoryName);
+		synchronized (SnapshotStore.stores) {
+			SnapshotStore store = SnapshotStore.stores.get(directory);
+			if (store == null) {
+				store = new SnapshotStore(directory);
+				SnapshotStore.stores.put(directory, store);
+			}
+			return store;
+		}
+	}
+
+	/**
+	 * Get the store for a save.
+	 * @param save Save file.
+	 * @return Store.
+	 */
+	public static SnapshotStore forSave(File save)
+	{
+		return SnapshotStore.forDirectory(save.getAbsoluteFile().getParentFile());
+	}
+
+	/**
+	 * Create a store.
+	 * @param directory History directory. It is created when first needed.
+	 */
+	private SnapshotStore(File directory)
+	{
+		this.directory = directory;
+		this.chunkDirectory = new File(directory, "chunks");
+	}
+
+	/**
+	 * Store the current content of a save as a version. Nothing is stored if it is the same as the latest version.
+	 * @param source Save file.
+	 * @return The version.
+	 * @throws IOException On error.
+	 */
+	public Version store(File source) throws IOException
+	{
+		return this.store(source, source.getName());
+	}
+
+	/**
+	 * Store a file as a version of a save. Chunking, hashing and compressing are done without holding the store's
+	 * lock, so saves can be stored on several threads at once; only deciding on and writing the manifest is locked.
+	 * @param source File to store.
+	 * @param name Name of the save.
+	 * @return The version.
+	 * @throws IOException On error.
+	 */
+	public Version store(File source, String name) throws IOException
+	{
+		// Saves are a few megabytes, and are read whole, as when loading.
+		byte[] content = Files.readAllBytes(source.toPath());
+		long size = content.length;
+		MessageDigest digest = SnapshotStore.createDigest();
+		ByteArrayOutputStream manifestContent = new ByteArrayOutputStream();
+		DataOutputStream manifest = new DataOutputStream(manifestContent);
+		int count = 0;
+		for (int start = 0; start < content.length; ) {
+			int end = SnapshotStore.findChunkEnd(content, start);
+			digest.update(content, start, end - start);
+			byte[] hash = digest.digest();
+			this.writeChunk(hash, content, start, end - start);
+			manifest.write(hash);
+			manifest.writeInt(end - start);
+			start = end;
+			++count;
+		}
+
+		return this.addVersion(name, size, count, manifestContent.toByteArray());
+	}
+
+	/**
+	 * Add a version, unless it is the same as the latest. Its chunks must already be stored.
+	 * @param name Name of the save.
+	 * @param size Size of the save.
+	 * @param count Number of chunks.
+	 * @param chunks Chunk list, as written in the manifest.
+	 * @return The version.
+	 * @throws IOException On error.
+	 */
+	private synchronized Version addVersion(String name, long size, int count, byte[] chunks) throws IOException
+	{
+		List<Version> versions = this.getVersions(name);
+		if (!versions.isEmpty() && versions.get(0).getSize() == size && Arrays.equals(this.readChunkList(versions.get(0)), chunks)) {
+			return versions.get(0);
+		}
+
+		// Versions are named by time, made unique if several are stored within a millisecond.
+		File versionDirectory = this.getVersionDirectory(name);
+		versionDirectory.mkdirs();
+		long time = System.currentTimeMillis();
+		if (!versions.isEmpty() && versions.get(0).getTime() >= time) {
+			time = versions.get(0).getTime() + 1;
+		}
+		File manifestFile = new File(versionDirectory, time + SnapshotStore.manifestSuffix);
+		Path temporary = new File(versionDirectory, time + SnapshotStore.manifestSuffix + ".tmp").toPath();
+		try {
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+				output.writeInt(SnapshotStore.magic);
+				output.writeInt(SnapshotStore.version);
+				output.writeUTF(name);
+				output.writeLong(time);
+				output.writeLong(size);
+				output.writeInt(count);
+				output.write(chunks);
+				output.flush();
+				channel.force(true);
+			}
+			SaveFile.replace(temporary, manifestFile.toPath());
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+
+		// The new version is not in versions, so one fewer of those is kept.
+		for (int i = SnapshotStore.maximumVersions - 1; i < versions.size(); ++i) {
+			if (versions.get(i).manifest.delete()) {
+				++this.prunedVersions;
+			}
+		}
+		if (this.prunedVersions >= SnapshotStore.maximumVersions) {
+			this.collectChunks();
+		}
+		return new Version(manifestFile, name, time, size);
+	}
+
+	/**
+	 * Delete the chunks that no manifest lists, and that have not been written or reused within the grace period.
+	 * Failures are ignored; those chunks are tried again next time.
+	 */
+	private synchronized void collectChunks()
+	{
+		this.prunedVersions = 0;
+		File[] versionDirectories = this.directory.listFiles();
+		if (versionDirectories == null) {
+			return;
+		}
+
+		Set<File> listed = new HashSet<File>();
+		int hashLength = SnapshotStore.createDigest().getDigestLength();
+		for (File versionDirectory : versionDirectories) {
+			File[] manifests = versionDirectory.equals(this.chunkDirectory) ? null : versionDirectory.listFiles();
+			if (manifests == null) {
+				continue;
+			}
+			for (File manifest : manifests) {
+				if (!manifest.getName().endsWith(SnapshotStore.manifestSuffix)) {
+					continue;
+				}
+				try {
+					byte[] chunks = this.readChunkList(new Version(manifest, null, 0, 0));
+					for (int offset = 0; offset < chunks.length; offset += hashLength + 4) {
+						listed.add(this.getChunkFile(Arrays.copyOfRange(chunks, offset, offset + hashLength)));
+					}
+				} catch (IOException e) {
+					// A manifest that cannot be read cannot be restored either.
+				}
+			}
+		}
+
+		File[] chunkDirectories = this.chunkDirectory.listFiles();
+		if (chunkDirectories == null) {
+			return;
+		}
+		long cutoff = System.currentTimeMillis() - SnapshotStore.chunkGraceMillis;
+		for (File chunkDirectory : chunkDirectories) {
+			File[] chunks = chunkDirectory.listFiles();
+			if (chunks == null) {
+				continue;
+			}
+			for (File chunk : chunks) {
+				if (!listed.contains(chunk) && chunk.lastModified() < cutoff) {
+					chunk.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the stored versions of a save.
+	 * @param name Name of the save.
+	 * @return Versions, latest first. Versions that cannot be read are left out.
+	 */
+	public synchronized List<Version> getVersions(String name)
+	{
+		List<Version> result = new ArrayList<Version>();
+		File[] files = this.getVersionDirectory(name).listFiles();
+		if (files == null) {
+			return result;
+		}
+
+		for (File file : files) {
+			if (!file.getName().endsWith(SnapshotStore.manifestSuffix)) {
+				continue;
+			}
+			try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 256))) {
+				if (input.readInt() != SnapshotStore.magic || input.readInt() != SnapshotStore.version) {
+					continue;
+				}
+				result.add(new Version(file, input.readUTF(), input.readLong(), input.readLong()));
+			} catch (IOException e) {
+				// Left out.
+			}
+		}
+		Collections.sort(result, new Comparator<Version>() {
+			@Override
+			public int compare(Version o1, Version o2)
+			{
+				return Long.compare(o2.getTime(), o1.getTime());
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Write the content of a version to a stream.
+	 * @param version Version.
+	 * @param output Output stream.
+	 * @throws IOException On error, including a missing or damaged chunk.
+	 */
+	public void restore(Version version, OutputStream output) throws IOException
+	{
+		MessageDigest digest = SnapshotStore.createDigest();
+		byte[] buffer = new byte[SnapshotStore.maximumChunk];
+		try (DataInputStream manifest = this.openManifest(version)) {
+			int count = manifest.readInt();
+			byte[] hash = new byte[digest.getDigestLength()];
+			for (int i = 0; i < count; ++i) {
+				manifest.readFully(hash);
+				int length = manifest.readInt();
+				if (length <= 0 || length > buffer.length) {
+					throw new IOException("Damaged version " + version.manifest.getName());
+				}
+				try (DataInputStream chunk = new DataInputStream(new InflaterInputStream(new FileInputStream(this.getChunkFile(hash))))) {
+					chunk.readFully(buffer, 0, length);
+				}
+				digest.update(buffer, 0, length);
+				if (!Arrays.equals(digest.digest(), hash)) {
+					throw new IOException("Damaged chunk " + SnapshotStore.toHex(hash));
+				}
+				output.write(buffer, 0, length);
+			}
+		}
+	}
+
+	/**
+	 * Restore a version over a save, safely, as {@link SaveFile.Snapshot#writeTo(File, SnapshotStore)} writes.
+	 * The save's current content is stored first, so it too can be restored.
+	 * @param version Version.
+	 * @param target Save file.
+	 * @throws IOException On error; the save is then left as it was.
+	 */
+	public void restore(Version version, File target) throws IOException
+	{
+		Path targetPath = target.getAbsoluteFile().toPath();
+		Path temporary = SaveFile.createTemporary(targetPath);
+		try {
+			// The version is read before the save is stored, as storing may delete the oldest version.
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+				OutputStream output = new BufferedOutputStream(Channels.newOutputStream(channel));
+				this.restore(version, output);
+				output.flush();
+				channel.force(true);
+			}
+			if (Files.exists(targetPath)) {
+				this.store(target);
+			}
+			SaveFile.copyAttributes(targetPath, temporary);
+			SaveFile.replace(temporary, targetPath);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Find the end of the content-defined chunk starting at a position.
+	 * @param content Content.
+	 * @param start Chunk start.
+	 * @return Chunk end.
+	 */
+	private static int findChunkEnd(byte[] content, int start)
+	{
+		int limit = Math.min(content.length, start + SnapshotStore.maximumChunk);
+		long hash = 0;
+		for (int i = start; i < limit; ++i) {
+			hash = (hash << 1) + SnapshotStore.gear[content[i] & 0xff];
+			if (i + 1 - start >= SnapshotStore.minimumChunk && (hash & SnapshotStore.boundaryMask) == 0) {
+				return i + 1;
+			}
+		}
+		return limit;
+	}
+
+	/**
+	 * Write a chunk, unless it is already stored, in which case it is marked as reused so that it is not collected.
+	 * Chunks are named by content, so if two threads write the same chunk at once, either may win.
+	 * @param hash Chunk hash.
+	 * @param content Content.
+	 * @param start Chunk start.
+	 * @param length Chunk length.
+	 * @throws IOException On write error.
+	 */
+	private void writeChunk(byte[] hash, byte[] content, int start, int length) throws IOException
+	{
+		File file = this.getChunkFile(hash);
+		if (file.isFile() && file.setLastModified(System.currentTimeMillis())) {
+			return;
+		}
+
+		file.getParentFile().mkdirs();
+		Path temporary = SaveFile.createTemporary(file.toPath());
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+				DeflaterOutputStream output = new DeflaterOutputStream(Channels.newOutputStream(channel), deflater);
+				output.write(content, start, length);
+				output.finish();
+				channel.force(true);
+			}
+			SaveFile.replace(temporary, file.toPath());
+		} finally {
+			deflater.end();
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Read the chunk list of a version, as written in its manifest.
+	 * @param version Version.
+	 * @return Chunk list.
+	 * @throws IOException On read error.
+	 */
+	private byte[] readChunkList(Version version) throws IOException
+	{
+		try (DataInputStream manifest = this.openManifest(version)) {
+			int count = manifest.readInt();
+			byte[] result = new byte[count * (SnapshotStore.createDigest().getDigestLength() + 4)];
+			manifest.readFully(result);
+			return result;
+		}
+	}
+
+	/**
+	 * Open a version's manifest, positioned at the chunk count.
+	 * @param version Version.
+	 * @return Stream.
+	 * @throws IOException On read error.
+	 */
+	private DataInputStream openManifest(Version version) throws IOException
+	{
+		DataInputStream manifest = new DataInputStream(new BufferedInputStream(new FileInputStream(version.manifest)));
+		try {
+			if (manifest.readInt() != SnapshotStore.magic || manifest.readInt() != SnapshotStore.version) {
+				throw new IOException("Not a version: " + version.manifest.getName());
+			}
+			manifest.readUTF();
+			manifest.readLong();
+			manifest.readLong();
+			return manifest;
+		} catch (IOException e) {
+			manifest.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Get the directory of a save's versions.
+	 * @param name Name of the save.
+	 * @return Directory.
+	 */
+	private File getVersionDirectory(String name)
+	{
+		return new File(this.directory, name);
+	}
+
+	/**
+	 * Get the file of a chunk. Chunks are spread over subdirectories by the first byte of their hash.
+	 * @param hash Chunk hash.
+	 * @return File.
+	 */
+	private File getChunkFile(byte[] hash)
+	{
+		String hex = SnapshotStore.toHex(hash);
+		return new File(new File(this.chunkDirectory, hex.substring(0, 2)), hex.substring(2));
+	}
+
+	/**
+	 * Create a SHA-256 digest.
+	 * @return Digest.
+	 */
+	private static MessageDigest createDigest()
+	{
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform has SHA-256.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Format bytes as hexadecimal.
+	 * @param bytes Bytes.
+	 * @return Hexadecimal.
+	 */
+	private static String toHex(byte[] bytes)
+	{
+		StringBuilder result = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return result.toString();
+	}
+}
@@ -0,0 +1,72 @@
+package org.gmc.ssseditor;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Variable-length integers, as used in the editor's binary files: seven bits a byte, low bits first, with the
+ * top bit set on all but the last byte. Small values take one byte. Signed values are zigzag-encoded first,
+ * so that small negative values are small too.
+ * @author grant
+ *
+ */
+class VarInts
+{
+	/**
+	 * Write an unsigned variable-length integer.
+	 * @param output Output.
+	 * @param value Value, treated as unsigned.
+	 * @throws IOException On write error.
+	 */
+	static void write(DataOutput output, long value) throws IOException
+	{
+		while ((value & ~0x7fL) != 0) {
+			output.writeByte((int) ((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		output.writeByte((int) value);
+	}
+
+	/**
+	 * Read an unsigned variable-length integer.
+	 * @param input Input.
+	 * @return Value.
+	 * @throws IOException On read error, or if the value is longer than ten bytes.
+	 */
+	static long read(DataInput input) throws IOException
+	{
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = input.readUnsignedByte();
+			value |= (long) (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed variable-length integer");
+	}
+
+	/**
+	 * Write a signed variable-length integer, zigzag-encoded.
+	 * @param output Output.
+	 * @param value Value.
+	 * @throws IOException On write error.
+	 */
+	static void writeSigned(DataOutput output, long value) throws IOException
+	{
+		VarInts.write(output, (value << 1) ^ (value >> 63));
+	}
+
+	/**
+	 * Read a signed variable-length integer, zigzag-encoded.
+	 * @param input Input.
+	 * @return Value.
+	 * @throws IOException On read error.
+	 */
+	static long readSigned(DataInput input) throws IOException
+	{
+		long zigzag = VarInts.read(input);
+		return (zigzag >>> 1) ^ -(zigzag & 1);
+	}
+}
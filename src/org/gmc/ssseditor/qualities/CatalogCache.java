@@ -0,0 +1,292 @@
+package org.gmc.ssseditor.qualities;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * This class loads the configuration catalog ('qualities.json') through a compact binary cache.
+ *
+ * The cache holds only what the editor uses: the ID, name, category and slot of each quality,
+ * and the enhancement levels of Ships. It is keyed by the size, modification time and CRC of
+ * the source file. If the size and modification time match the cache is used without reading
+ * the source at all; if they do not, but the size and CRC do, the cache is still used. Otherwise
+ * the source is parsed, on all processors (see {@link CatalogParser}), and the cache rewritten.
+ *
+ * The cache ends with a CRC of its own content. Items are only created, and so registered, once the
+ * whole cache has been read and that CRC checked; a truncated or corrupt cache registers nothing.
+ * @author grant
+ *
+ */
+public class CatalogCache
+{
+	private static final int magic = 0x53535143; // "SSQC"
+	private static final int version = 2;
+
+	private final File source;
+	private final File cacheFile;
+
+	/**
+	 * A quality as read from the cache, before its item is created.
+	 */
+	private static class CachedItem
+	{
+		String category;
+		long id;
+		String name;
+		String slot;
+
+		/**
+		 * Crew capacity, weight, maximum hull and hold capacity, if the item was a Ship; otherwise null.
+		 */
+		long[] ship;
+	}
+
+	/**
+	 * Create a catalog cache.
+	 * @param source The 'qualities.json' file.
+	 * @param cacheFile Cache file. It need not exist.
+	 */
+	public CatalogCache(File source, File cacheFile)
+	{
+		this.source = source;
+		this.cacheFile = cacheFile;
+	}
+
+	/**
+	 * Load the catalog, from the cache if it is current, otherwise from the source.
+	 * @return Configuration QualitiesList; null if the source is not a JSON array.
+	 * @throws IOException On error reading the source, or if it is not valid JSON.
+	 */
+	public QualitiesList load() throws IOException
+	{
+		long size = this.source.length();
+		long modified = this.source.lastModified();
+
+		List<QualityItem> items = this.readCache(size, modified, null);
+		if (items != null) {
+			return new QualitiesList(items);
+		}
+
+		byte[] content = Files.readAllBytes(this.source.toPath());
+		CRC32 crc = new CRC32();
+		crc.update(content);
+
+		items = this.readCache(content.length, -1, crc.getValue());
+		QualitiesList catalog = null;
+		if (items != null) {
+			catalog = new QualitiesList(items);
+		} else {
+			try {
+				catalog = CatalogParser.parse(content);
+			} catch (ParseException e) {
+				throw new IOException("Error parsing " + this.source.getName() + " at offset " + e.getErrorOffset(), e);
+			}
+		}
+
+		if (catalog != null) {
+			this.writeCache(catalog, content.length, modified, crc.getValue());
+		}
+
+		return catalog;
+	}
+
+	/**
+	 * Read the cache, if it matches the source.
+	 * @param size Source size.
+	 * @param modified Source modification time; ignored if crc is given.
+	 * @param crc Source CRC; null to match on modification time.
+	 * @return Items; null if the cache is missing, out of date, or unreadable.
+	 */
+	private List<QualityItem> readCache(long size, long modified, Long crc)
+	{
+		List<CachedItem> cached = this.readCachedItems(size, modified, crc);
+		if (cached == null) {
+			return null;
+		}
+
+		List<QualityItem> items = new ArrayList<QualityItem>(cached.size());
+		for (CachedItem item : cached) {
+			if (item.ship != null) {
+				items.add(new Ship(item.name, item.id, item.slot, item.ship[0], item.ship[1], item.ship[2], item.ship[3]));
+				continue;
+			}
+			switch (item.category) {
+				case Good.categoryName:
+					items.add(new Good(item.name, item.id, item.slot));
+					break;
+
+				case Companion.categoryName:
+					items.add(new Companion(item.name, item.id, item.slot));
+					break;
+
+				default:
+					items.add(new QualityItem(item.name, item.id, item.slot, item.category));
+					break;
+			}
+		}
+		return items;
+	}
+
+	/**
+	 * Read the cache into records, without creating any items.
+	 * @param size Source size.
+	 * @param modified Source modification time; ignored if crc is given.
+	 * @param crc Source CRC; null to match on modification time.
+	 * @return Records; null if the cache is missing, out of date, truncated or corrupt.
+	 */
+	private List<CachedItem> readCachedItems(long size, long modified, Long crc)
+	{
+		if (!this.cacheFile.isFile()) {
+			return null;
+		}
+
+		try (CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(new FileInputStream(this.cacheFile)), new CRC32());
+				DataInputStream input = new DataInputStream(checked)) {
+			if (input.readInt() != CatalogCache.magic || input.readInt() != CatalogCache.version) {
+				return null;
+			}
+			long cachedSize = input.readLong();
+			long cachedModified = input.readLong();
+			long cachedCrc = input.readLong();
+			if (cachedSize != size || (crc == null ? cachedModified != modified : cachedCrc != crc)) {
+				return null;
+			}
+
+			String[] categories = new String[input.readInt()];
+			for (int i = 0; i < categories.length; ++i) {
+				categories[i] = input.readUTF();
+			}
+
+			int count = input.readInt();
+			List<CachedItem> items = new ArrayList<CachedItem>(Math.max(0, Math.min(count, 65536)));
+			for (int i = 0; i < count; ++i) {
+				CachedItem item = new CachedItem();
+				item.category = categories[input.readUnsignedShort()];
+				item.id = input.readLong();
+				item.name = CatalogCache.readString(input);
+				item.slot = CatalogCache.readString(input);
+				if (input.readBoolean()) {
+					item.ship = new long[] { input.readLong(), input.readLong(), input.readLong(), input.readLong() };
+				}
+				items.add(item);
+			}
+
+			long contentCrc = checked.getChecksum().getValue();
+			if (input.readLong() != contentCrc || input.read() != -1) {
+				return null;
+			}
+			return items;
+		} catch (IOException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+			// Treat as out of date; the cache will be rebuilt.
+			return null;
+		}
+	}
+
+	/**
+	 * Write the cache. Failure to write is not an error; the catalog will be parsed again next time.
+	 * @param catalog Catalog to write.
+	 * @param size Source size.
+	 * @param modified Source modification time.
+	 * @param crc Source CRC.
+	 */
+	private void writeCache(QualitiesList catalog, long size, long modified, long crc)
+	{
+		File temporary = new File(this.cacheFile.getPath() + ".tmp");
+		File directory = this.cacheFile.getParentFile();
+		if (directory != null) {
+			directory.mkdirs();
+		}
+
+		try (CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)), new CRC32());
+				DataOutputStream output = new DataOutputStream(checked)) {
+			output.writeInt(CatalogCache.magic);
+			output.writeInt(CatalogCache.version);
+			output.writeLong(size);
+			output.writeLong(modified);
+			output.writeLong(crc);
+
+			Map<String, List<QualityItem>> categories = new LinkedHashMap<String, List<QualityItem>>();
+			int count = 0;
+			for (String category : catalog.getCategories()) {
+				List<QualityItem> items = catalog.GetQualities(category);
+				categories.put(category, items);
+				count += items.size();
+			}
+			output.writeInt(categories.size());
+			for (String category : categories.keySet()) {
+				output.writeUTF(category);
+			}
+
+			output.writeInt(count);
+			int category = 0;
+			for (List<QualityItem> items : categories.values()) {
+				for (QualityItem item : items) {
+					output.writeShort(category);
+					output.writeLong(item.getTag());
+					CatalogCache.writeString(output, item.getName());
+					CatalogCache.writeString(output, item.getSlot());
+					output.writeBoolean(item instanceof Ship);
+					if (item instanceof Ship) {
+						Ship ship = (Ship) item;
+						output.writeLong(ship.getCrewCapacity());
+						output.writeLong(ship.getWeight());
+						output.writeLong(ship.getMaxHull());
+						output.writeLong(ship.getHoldCapacity());
+					}
+				}
+				++category;
+			}
+			output.writeLong(checked.getChecksum().getValue());
+		} catch (IOException e) {
+			temporary.delete();
+			return;
+		}
+
+		try {
+			Files.move(temporary.toPath(), this.cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			temporary.delete();
+		}
+	}
+
+	/**
+	 * Read a string that may be null.
+	 * @param input Input stream.
+	 * @return String or null.
+	 * @throws IOException On read error.
+	 */
+	private static String readString(DataInputStream input) throws IOException
+	{
+		return input.readBoolean() ? input.readUTF() : null;
+	}
+
+	/**
+	 * Write a string that may be null.
+	 * @param output Output stream.
+	 * @param value String or null.
+	 * @throws IOException On write error.
+	 */
+	private static void writeString(DataOutputStream output, String value) throws IOException
+	{
+		output.writeBoolean(value != null);
+		if (value != null) {
+			output.writeUTF(value);
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package org.gmc.ssseditor.qualities;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.gmc.ssseditor.JSONScanner;
+import org.gmc.ssseditor.JSONUtil;
+
+/**
+ * Parses the configuration catalog ('qualities.json') on all processors.
+ *
+ * A structural scan, which skips each quality without decoding it, finds where the qualities of the
+ * top-level array begin and end. The qualities are then parsed in batches on the fork-join pool, and
+ * their QualityItems created there too. Items created on a pool thread are not registered as they are
+ * constructed, as registration is not thread-safe; they are registered afterwards, on the calling thread,
+ * in catalog order, so the result is as if the catalog had been loaded on one thread. Factories for
+ * categories not seen before are added, also on the calling thread, between parsing and creating items.
+ * Only the items are kept: the parsed JSON, which is most of the catalog, is released once they are created.
+ * @author grant
+ *
+ */
+class CatalogParser
+{
+	/**
+	 * Qualities per batch. Batches are small enough to balance the load, and large enough that
+	 * scheduling costs little.
+	 */
+	private static final int batchSize = 512;
+
+	/**
+	 * Parse the catalog.
+	 * @param content Content of 'qualities.json'.
+	 * @return Configuration QualitiesList; null if the content is not a JSON array.
+	 * @throws ParseException If the content is not valid JSON.
+	 */
+	static QualitiesList parse(final byte[] content) throws ParseException
+	{
+		// Find the qualities.
+		JSONScanner scanner = new JSONScanner(content);
+		if (scanner.peek() != '[') {
+			return null;
+		}
+		scanner.expect('[');
+		int[] bounds = new int[1024];
+		int count = 0;
+		if (!scanner.consume(']')) {
+			do {
+				if (count * 2 == bounds.length) {
+					bounds = Arrays.copyOf(bounds, bounds.length * 2);
+				}
+				bounds[count * 2] = scanner.getTokenPosition();
+				scanner.skipValue();
+				bounds[count * 2 + 1] = scanner.getPosition();
+				++count;
+			} while (scanner.consume(','));
+			scanner.expect(']');
+		}
+
+		// Parse them.
+		final Object[] entries = new Object[count];
+		final int[] elementBounds = bounds;
+		List<Set<String>> categorySets = CatalogParser.runBatches(count, new Batch<Set<String>>() {
+			@Override
+			public Set<String> run(int start, int end) throws ParseException
+			{
+				Set<String> categories = new HashSet<String>();
+				for (int i = start; i < end; ++i) {
+					entries[i] = new JSONScanner(content, elementBounds[i * 2], elementBounds[i * 2 + 1]).readValue();
+					String category = CatalogParser.getCategory(entries[i]);
+					if (category != null) {
+						categories.add(category);
+					}
+				}
+				return categories;
+			}
+		});
+
+		// Factories are added here, so that they are only read on the pool.
+		for (Set<String> categories : categorySets) {
+			for (String category : categories) {
+				QualitiesList.getFactory(category);
+			}
+		}
+
+		// Create the items; registration is deferred.
+		List<List<QualityItem>> created = CatalogParser.runBatches(count, new Batch<List<QualityItem>>() {
+			@Override
+			@SuppressWarnings("unchecked")
+			public List<QualityItem> run(int start, int end)
+			{
+				List<QualityItem> pending = QualityItem.deferRegistration();
+				try {
+					for (int i = start; i < end; ++i) {
+						String category = CatalogParser.getCategory(entries[i]);
+						if (category != null) {
+							QualityItem.getFactory(category).createItem((Map<String, Object>) entries[i]);
+						}
+					}
+				} finally {
+					QualityItem.endDeferral();
+				}
+				return pending;
+			}
+		});
+
+		// Only the items are kept, as when the catalog is read from the cache; the JSON is released.
+		List<QualityItem> catalog = new ArrayList<QualityItem>(count);
+		for (List<QualityItem> pending : created) {
+			QualityItem.registerAll(pending);
+			catalog.addAll(pending);
+		}
+		return new QualitiesList(catalog);
+	}
+
+	/**
+	 * Work on a range of qualities.
+	 * @param <T> Result type.
+	 */
+	private interface Batch<T>
+	{
+		public T run(int start, int end) throws ParseException;
+	}
+
+	/**
+	 * Run work on batches of qualities on the fork-join pool, and wait for it to finish.
+	 * @param count Number of qualities.
+	 * @param batch Work.
+	 * @return Results, in order of batch.
+	 * @throws ParseException If a batch threw it.
+	 */
+	private static <T> List<T> runBatches(int count, final Batch<T> batch) throws ParseException
+	{
+		List<Callable<T>> tasks = new ArrayList<Callable<T>>();
+		for (int start = 0; start < count; start += CatalogParser.batchSize) {
+			final int batchStart = start;
+			final int batchEnd = Math.min(count, start + CatalogParser.batchSize);
+			tasks.add(new Callable<T>() {
+				@Override
+				public T call() throws ParseException
+				{
+					return batch.run(batchStart, batchEnd);
+				}
+			});
+		}
+
+		List<T> results = new ArrayList<T>(tasks.size());
+		for (Future<T> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+			try {
+				results.add(future.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof ParseException) {
+					throw (ParseException) e.getCause();
+				}
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Get the category of a quality.
+	 * @param entry JSON quality.
+	 * @return Category; null if it is not a quality with a category.
+	 */
+	@SuppressWarnings("unchecked")
+	private static String getCategory(Object entry)
+	{
+		return entry instanceof Map<?, ?> ? JSONUtil.getString((Map<String, Object>) entry, "Category") : null;
+	}
+}
@@ -0,0 +1,109 @@
+package org.gmc.ssseditor.qualities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The items in one category, sorted by name (and by ID where names are equal).
+ *
+ * The sorted items are held in an array that is never modified once published, so callers
+ * can keep the list returned by {@link #getItems()}. Items registered or replaced after the
+ * array was built are collected, and merged in on the next call to getItems(); only the new
+ * items are sorted, so the cost of an update is linear in the size of the category.
+ * @author grant
+ *
+ */
+class CategoryIndex
+{
+	static final Comparator<QualityItem> byName = new Comparator<QualityItem>() {
+		@Override
+		public int compare(QualityItem o1, QualityItem o2)
+		{
+			String name1 = o1.getName() != null ? o1.getName() : "";
+			String name2 = o2.getName() != null ? o2.getName() : "";
+			int result = name1.compareTo(name2);
+			return result != 0 ? result : Long.compare(o1.getTag(), o2.getTag());
+		}
+	};
+
+	private QualityItem[] items = new QualityItem[0];
+	private List<QualityItem> view = Collections.emptyList();
+	private final List<QualityItem> added = new ArrayList<QualityItem>();
+	private final Map<QualityItem, Boolean> removed = new IdentityHashMap<QualityItem, Boolean>();
+
+	/**
+	 * Add an item.
+	 * @param item Item.
+	 */
+	void add(QualityItem item)
+	{
+		if (this.removed.remove(item) == null) {
+			this.added.add(item);
+		}
+	}
+
+	/**
+	 * Remove an item, such as one that has been replaced by another with the same ID.
+	 * @param item Item.
+	 */
+	void remove(QualityItem item)
+	{
+		for (int i = 0; i < this.added.size(); ++i) {
+			if (this.added.get(i) == item) {
+				this.added.remove(i);
+				return;
+			}
+		}
+		this.removed.put(item, Boolean.TRUE);
+	}
+
+	/**
+	 * Get the items, sorted by name.
+	 * @return Unmodifiable list of items.
+	 */
+	List<QualityItem> getItems()
+	{
+		if (!this.added.isEmpty() || !this.removed.isEmpty()) {
+			this.merge();
+		}
+		return this.view;
+	}
+
+	/**
+	 * Merge pending changes into a new sorted array.
+	 */
+	private void merge()
+	{
+		QualityItem[] newItems = this.added.toArray(new QualityItem[this.added.size()]);
+		Arrays.sort(newItems, CategoryIndex.byName);
+
+		QualityItem[] merged = new QualityItem[this.items.length + newItems.length];
+		int count = 0;
+		int next = 0;
+		for (QualityItem item : this.items) {
+			if (this.removed.containsKey(item)) {
+				continue;
+			}
+			while (next < newItems.length && CategoryIndex.byName.compare(newItems[next], item) < 0) {
+				merged[count++] = newItems[next++];
+			}
+			merged[count++] = item;
+		}
+		while (next < newItems.length) {
+			merged[count++] = newItems[next++];
+		}
+		if (count < merged.length) {
+			merged = Arrays.copyOf(merged, count);
+		}
+
+		this.items = merged;
+		this.view = Collections.unmodifiableList(Arrays.asList(merged));
+		this.added.clear();
+		this.removed.clear();
+	}
+}
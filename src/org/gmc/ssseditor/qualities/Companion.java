@@ -66,6 +66,17 @@ public class Companion extends QualityItem
 		//   "Name": "Surgeon", "Id": 102772
 	}
 
+	/**
+	 * Companion from previously extracted values, such as those in the catalog cache.
+	 * @param name Companion name.
+	 * @param id Companion ID.
+	 * @param slot Assigned slot. May be null.
+	 */
+	public Companion(String name, long id, String slot)
+	{
+		super(name, id, slot, Companion.categoryName);
+	}
+
 	/**
 	 * Determine if the given qualityNode is a companion, and hence can be passed to the {@link #Companion(Map)} constructor.
 	 * @param qualityNode - Quality node to test.
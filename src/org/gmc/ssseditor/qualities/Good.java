@@ -65,7 +65,18 @@ public class Good extends QualityItem
 	 */
 	public Good(String name, long id)
 	{
-		super(name, id, null, Good.categoryName);
+		this(name, id, null);
+	}
+
+	/**
+	 * Create a Good from a name, ID, and slot.
+	 * @param name Good name.
+	 * @param id Good ID.
+	 * @param slot Assigned slot. May be null.
+	 */
+	public Good(String name, long id, String slot)
+	{
+		super(name, id, slot, Good.categoryName);
 	}
 
 	/**
@@ -0,0 +1,176 @@
+package org.gmc.ssseditor.qualities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import org.gmc.ssseditor.LongMap;
+
+/**
+ * A trigram index over QualityItem names, for substring search.
+ *
+ * Each distinct three-character sequence of a (lower case) name maps to the sorted list of items
+ * containing it. A query of three or more characters intersects the lists of its trigrams, shortest
+ * first, and checks the few remaining candidates; shorter queries scan the names directly. The index
+ * does not change once built, so it may be built on any thread and then used on the event thread.
+ * @author grant
+ *
+ */
+public class NameIndex
+{
+	private final QualityItem[] items;
+	private final String[] names;
+	private final LongMap<int[]> trigrams = new LongMap<int[]>();
+
+	/**
+	 * Build an index.
+	 * @param items Items to index. Items without a name are not indexed.
+	 */
+	public NameIndex(List<QualityItem> items)
+	{
+		List<QualityItem> named = new ArrayList<QualityItem>(items.size());
+		for (QualityItem item : items) {
+			if (item.getName() != null) {
+				named.add(item);
+			}
+		}
+		Collections.sort(named, CategoryIndex.byName);
+
+		this.items = named.toArray(new QualityItem[named.size()]);
+		this.names = new String[this.items.length];
+
+		// Count, then fill, the posting list of each trigram.
+		LongMap<int[]> counts = new LongMap<int[]>();
+		for (int i = 0; i < this.items.length; ++i) {
+			this.names[i] = this.items[i].getName().toLowerCase(Locale.ROOT);
+			long last = -1;
+			for (long trigram : NameIndex.getTrigrams(this.names[i])) {
+				if (trigram != last) {
+					int[] count = counts.get(trigram);
+					if (count == null) {
+						counts.put(trigram, new int[] { 1 });
+					} else {
+						++count[0];
+					}
+				}
+				last = trigram;
+			}
+		}
+		for (long trigram : counts.keys()) {
+			int[] count = counts.get(trigram);
+			this.trigrams.put(trigram, new int[count[0]]);
+			count[0] = 0;
+		}
+		for (int i = 0; i < this.items.length; ++i) {
+			long last = -1;
+			for (long trigram : NameIndex.getTrigrams(this.names[i])) {
+				if (trigram != last) {
+					this.trigrams.get(trigram)[counts.get(trigram)[0]++] = i;
+				}
+				last = trigram;
+			}
+		}
+	}
+
+	/**
+	 * Get the number of items indexed.
+	 * @return Item count.
+	 */
+	public int size()
+	{
+		return this.items.length;
+	}
+
+	/**
+	 * Find the items whose names contain the given text, ignoring case.
+	 * @param text Text to find.
+	 * @return Matching items, sorted by name; all items if the text is empty.
+	 */
+	public List<QualityItem> find(String text)
+	{
+		String query = text.toLowerCase(Locale.ROOT);
+		List<QualityItem> result = new ArrayList<QualityItem>();
+
+		if (query.length() < 3) {
+			for (int i = 0; i < this.names.length; ++i) {
+				if (this.names[i].contains(query)) {
+					result.add(this.items[i]);
+				}
+			}
+			return result;
+		}
+
+		long[] queryTrigrams = NameIndex.getTrigrams(query);
+		int[][] postings = new int[queryTrigrams.length][];
+		for (int i = 0; i < queryTrigrams.length; ++i) {
+			postings[i] = this.trigrams.get(queryTrigrams[i]);
+			if (postings[i] == null) {
+				return result;
+			}
+		}
+		Arrays.sort(postings, new Comparator<int[]>() {
+			@Override
+			public int compare(int[] o1, int[] o2)
+			{
+				return Integer.compare(o1.length, o2.length);
+			}
+		});
+
+		int[] candidates = postings[0].clone();
+		int count = candidates.length;
+		for (int i = 1; i < postings.length && count > 0; ++i) {
+			count = NameIndex.intersect(candidates, count, postings[i]);
+		}
+
+		for (int i = 0; i < count; ++i) {
+			int index = candidates[i];
+			if (this.names[index].contains(query)) {
+				result.add(this.items[index]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Intersect a sorted candidate list with a sorted posting list. The result replaces the candidates.
+	 * @param candidates Candidates; modified in place.
+	 * @param count Number of candidates.
+	 * @param posting Posting list.
+	 * @return Number of remaining candidates.
+	 */
+	private static int intersect(int[] candidates, int count, int[] posting)
+	{
+		int result = 0;
+		int j = 0;
+		for (int i = 0; i < count && j < posting.length; ++i) {
+			while (j < posting.length && posting[j] < candidates[i]) {
+				++j;
+			}
+			if (j < posting.length && posting[j] == candidates[i]) {
+				candidates[result++] = candidates[i];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the trigrams of a string, in sorted order, packed into longs.
+	 * @param text Text.
+	 * @return Trigrams; there may be duplicates.
+	 */
+	private static long[] getTrigrams(String text)
+	{
+		if (text.length() < 3) {
+			return new long[0];
+		}
+		long[] result = new long[text.length() - 2];
+		for (int i = 0; i < result.length; ++i) {
+			result[i] = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+		}
+		Arrays.sort(result);
+		return result;
+	}
+}
@@ -1,103 +1,350 @@
 package org.gmc.ssseditor.qualities;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.gmc.ssseditor.JSONUtil;
+import org.gmc.ssseditor.LongMap;
 
 /**
  * This object contains a list of Qualities.
- * 
+ *
  * This list can be from a save file, which contains limited information, or from the 'qualties.json' in the 'entities' directory.
  *
  * The QualityItem factory is used to create the list of QualityItems; categories that are not known are added to the factory.
+ *
+ * Entries are held in slots in parallel arrays: the JSON quality, and the QualityItem loaded from it (either may be null,
+ * but not both). Removing an entry leaves an empty slot, which is reclaimed when the list is compacted, once half the slots
+ * are empty; so adding and removing an entry are both constant time, amortized. The list is indexed by the JSON object
+ * (by identity), by item tag, and by category; the indexes hold slot numbers and are rebuilt when the list is compacted.
  * @author grant
  *
  */
 public class QualitiesList
 {
-	Map<String, LinkedList<QualityItem>> loadedQualities = new HashMap<String, LinkedList<QualityItem>>();
+	/**
+	 * Lists are not compacted until they have at least this many empty slots.
+	 */
+	private static final int minimumCompaction = 64;
+
+	/**
+	 * A growable list of slot numbers, in increasing order. Category lists are not updated when an entry is
+	 * removed; the empty slot is skipped when reading, and dropped when the list is compacted.
+	 */
+	private static class Slots
+	{
+		int[] slots = new int[4];
+		int count = 0;
 
-	ArrayList<Object> list;
+		void add(int slot)
+		{
+			if (this.count == this.slots.length) {
+				this.slots = Arrays.copyOf(this.slots, this.count * 2);
+			}
+			this.slots[this.count++] = slot;
+		}
+
+		void remove(int slot)
+		{
+			for (int i = 0; i < this.count; ++i) {
+				if (this.slots[i] == slot) {
+					System.arraycopy(this.slots, i + 1, this.slots, i, this.count - i - 1);
+					--this.count;
+					return;
+				}
+			}
+		}
+	}
+
+	private final boolean isConfigurationFile;
+
+	private Object[] entries;
+	private QualityItem[] items;
+	private int size = 0;
+	private int empty = 0;
+
+	private final Map<Object, Integer> entrySlots = new IdentityHashMap<Object, Integer>();
+	private LongMap<Slots> tagSlots = new LongMap<Slots>();
+	private final Map<String, Slots> categorySlots = new LinkedHashMap<String, Slots>();
 
 	/**
-	 * Create a new QualitiesList from the supplied qualities list. 
+	 * Create a new QualitiesList from the supplied qualities list. The list is copied; later changes are made with
+	 * {@link #addQuality(Map)} and {@link #removeQuality(Map)}, and the result is given by {@link #getEntries()}.
 	 * @param jsonQualities List of qualities (either save file or configuration file).
+	 * @param isConfigurationFile true for the configuration file; false for a save file.
 	 */
 	@SuppressWarnings("unchecked")
-	public QualitiesList(ArrayList<Object> jsonQualities, boolean isConfigurationFile)
+	public QualitiesList(List<Object> jsonQualities, boolean isConfigurationFile)
 	{
-		this.list = jsonQualities;
+		this.isConfigurationFile = isConfigurationFile;
+		this.allocate(jsonQualities.size());
 
 		for (Object qualityObject: jsonQualities)
 		{
-			Map<String, Object> quality = null;
-			Map<String, Object> baseQuality = null;
+			if (qualityObject == null) {
+				// Not a quality; an empty slot would be taken for a removed one.
+				continue;
+			}
+			QualityItem item = null;
 			if (qualityObject instanceof Map<?, ?>) {
-				quality = (Map<String, Object>) qualityObject;
-				if (!isConfigurationFile) {
-					// Save file. Look for EquippedPossession/AssociatedQuality.
-					baseQuality = quality;
-					quality = JSONUtil.getObject(quality, "EquippedPossession", "AssociatedQuality");
-				}
-				if (quality != null) {
-					this.load(quality, baseQuality);
-				}
+				item = this.load((Map<String, Object>) qualityObject);
 			}
+			this.append(qualityObject, item);
+		}
+	}
+
+	/**
+	 * Create a new QualitiesList from items that have already been constructed, such as those read
+	 * from the catalog cache or by {@link CatalogParser}. There are no associated JSON entries, so the
+	 * configuration file's JSON need not be kept.
+	 * @param items Quality items.
+	 */
+	public QualitiesList(List<QualityItem> items)
+	{
+		this.isConfigurationFile = true;
+		this.allocate(items.size());
+
+		for (QualityItem item : items) {
+			QualitiesList.getFactory(item.getCategory());
+			this.append(null, item);
 		}
 	}
 
 	/**
 	 * Get all QualityItems of the given category.
 	 * @param category Category name, e.g. Ship.categoryName
-	 * @return List of items; null if no such quality has been seen.
+	 * @return List of items, in the order they were added; null if no such quality has been seen.
 	 */
 	public List<QualityItem> GetQualities(String category)
 	{
-		return this.loadedQualities.get(category);
+		Slots slots = this.categorySlots.get(category);
+		if (slots == null) {
+			return null;
+		}
+
+		List<QualityItem> result = new ArrayList<QualityItem>(slots.count);
+		for (int i = 0; i < slots.count; ++i) {
+			QualityItem item = this.items[slots.slots[i]];
+			if (item != null) {
+				result.add(item);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the categories that have been seen.
+	 * @return Category names, in the order they were first seen.
+	 */
+	public Set<String> getCategories()
+	{
+		return this.categorySlots.keySet();
+	}
+
+	/**
+	 * Get the first item with the given tag.
+	 * @param tag Item tag.
+	 * @return Item; null if there is none.
+	 */
+	public QualityItem getItem(long tag)
+	{
+		Slots slots = this.tagSlots.get(tag);
+		return slots != null ? this.items[slots.slots[0]] : null;
+	}
+
+	/**
+	 * Get the JSON entries, in order.
+	 * @return New list of entries.
+	 */
+	public List<Object> getEntries()
+	{
+		List<Object> result = new ArrayList<Object>(this.size - this.empty);
+		for (int i = 0; i < this.size; ++i) {
+			if (this.entries[i] != null) {
+				result.add(this.entries[i]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the number of entries.
+	 * @return Entry count.
+	 */
+	public int size()
+	{
+		return this.size - this.empty;
 	}
 
 	/**
-	 * Add a new quality to the JSON list and the loaded qualities list.
+	 * Add a new quality to the end of the list.
 	 * @param newQuality New quality.
 	 */
 	public void addQuality(Map<String, Object> newQuality)
 	{
-		this.list.add(newQuality);
-		this.load(newQuality, null);
+		if (this.entrySlots.containsKey(newQuality)) {
+			return;
+		}
+		this.append(newQuality, this.load(newQuality));
 	}
 
+	/**
+	 * Remove a quality from the list, and from the indexes.
+	 * @param quality Quality to remove; this is matched by identity.
+	 */
 	public void removeQuality(Map<String, Object> quality)
 	{
-		this.list.remove(quality);
-		// This does not remove the QualityItem from the loadedQualties list.
+		Integer slot = this.entrySlots.remove(quality);
+		if (slot == null) {
+			return;
+		}
+
+		QualityItem item = this.items[slot];
+		if (item != null) {
+			Slots tagged = this.tagSlots.get(item.getTag());
+			tagged.remove(slot);
+			if (tagged.count == 0) {
+				this.tagSlots.remove(item.getTag());
+			}
+		}
+
+		this.entries[slot] = null;
+		this.items[slot] = null;
+		++this.empty;
+
+		if (this.empty >= QualitiesList.minimumCompaction && this.empty * 2 >= this.size) {
+			this.compact();
+		}
 	}
 
 	/**
 	 * Load one quality.
-	 * @param qualityItem Quality item to load.
+	 * @param quality JSON quality; for a save file, the item is loaded from EquippedPossession/AssociatedQuality.
+	 * @return Item; null if the quality has no category.
 	 */
-	private void load(Map<String, Object> qualityItem, Map<String, Object> sourceQualityItem)
+	private QualityItem load(Map<String, Object> quality)
 	{
+		Map<String, Object> qualityItem = quality;
+		Map<String, Object> sourceQualityItem = null;
+		if (!this.isConfigurationFile) {
+			// Save file. Look for EquippedPossession/AssociatedQuality.
+			sourceQualityItem = quality;
+			qualityItem = JSONUtil.getObject(quality, "EquippedPossession", "AssociatedQuality");
+			if (qualityItem == null) {
+				return null;
+			}
+		}
+
 		String category = JSONUtil.getString(qualityItem, "Category");
-		if (category != null) {
-			IQualityFactory factory = QualityItem.getFactory(category);
-			if (factory == null) {
-				factory = new GenericItemFactory(category);
-				QualityItem.addFactory(category, factory);
+		if (category == null) {
+			return null;
+		}
+
+		IQualityFactory factory = QualitiesList.getFactory(category);
+		QualityItem item = factory.createItem(qualityItem);
+		item.setQuality(sourceQualityItem);
+		return item;
+	}
+
+	/**
+	 * Add an entry to the end of the arrays and the indexes.
+	 * @param entry JSON entry; may be null.
+	 * @param item Item; may be null.
+	 */
+	private void append(Object entry, QualityItem item)
+	{
+		if (this.size == this.entries.length) {
+			int capacity = Math.max(16, this.size * 2);
+			this.entries = Arrays.copyOf(this.entries, capacity);
+			this.items = Arrays.copyOf(this.items, capacity);
+		}
+
+		int slot = this.size++;
+		this.entries[slot] = entry;
+		this.items[slot] = item;
+		this.index(slot);
+	}
+
+	/**
+	 * Add a slot to the indexes.
+	 * @param slot Slot number.
+	 */
+	private void index(int slot)
+	{
+		if (this.entries[slot] != null) {
+			this.entrySlots.put(this.entries[slot], slot);
+		}
+
+		QualityItem item = this.items[slot];
+		if (item != null) {
+			Slots tagged = this.tagSlots.get(item.getTag());
+			if (tagged == null) {
+				tagged = new Slots();
+				this.tagSlots.put(item.getTag(), tagged);
+			}
+			tagged.add(slot);
+
+			Slots category = this.categorySlots.get(item.getCategory());
+			if (category == null) {
+				category = new Slots();
+				this.categorySlots.put(item.getCategory(), category);
 			}
+			category.add(slot);
+		}
+	}
+
+	/**
+	 * Remove the empty slots, and rebuild the indexes.
+	 */
+	private void compact()
+	{
+		Object[] oldEntries = this.entries;
+		QualityItem[] oldItems = this.items;
+		int oldSize = this.size;
 
-			LinkedList<QualityItem> list = this.loadedQualities.get(category);
-			if (list == null) {
-				list = new LinkedList<QualityItem>();
-				this.loadedQualities.put(factory.getQualityName(), list);
+		this.allocate(oldSize - this.empty);
+		this.entrySlots.clear();
+		this.tagSlots = new LongMap<Slots>();
+		for (Slots category : this.categorySlots.values()) {
+			category.count = 0;
+		}
+
+		for (int i = 0; i < oldSize; ++i) {
+			if (oldEntries[i] != null || oldItems[i] != null) {
+				this.append(oldEntries[i], oldItems[i]);
 			}
-			QualityItem item = factory.createItem(qualityItem);
-			item.setQuality(sourceQualityItem);
-			list.add(item);
 		}
 	}
+
+	/**
+	 * Allocate empty arrays.
+	 * @param capacity Initial capacity.
+	 */
+	private void allocate(int capacity)
+	{
+		this.entries = new Object[capacity];
+		this.items = new QualityItem[capacity];
+		this.size = 0;
+		this.empty = 0;
+	}
+
+	/**
+	 * Get the factory for a category; categories that are not known are added with a generic factory.
+	 * @param category Category name.
+	 * @return Factory.
+	 */
+	static IQualityFactory getFactory(String category)
+	{
+		IQualityFactory factory = QualityItem.getFactory(category);
+		if (factory == null) {
+			factory = new GenericItemFactory(category);
+			QualityItem.addFactory(category, factory);
+		}
+		return factory;
+	}
 }
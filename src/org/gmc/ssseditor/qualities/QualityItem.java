@@ -1,12 +1,15 @@
 package org.gmc.ssseditor.qualities;
 
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
+import org.gmc.ssseditor.LongMap;
+
 /**
  * This is an internal representation of the Quality as it exists in the save file or configuration file.
  * @author grant
@@ -27,9 +30,20 @@ public class QualityItem
 	private Map<String, Object> quality;
 
 	/**
-	 * All items known, by ID.
+	 * All items known, by ID. This is looked up for every save-file quality on import, and
+	 * holds the whole configuration catalog, so it is sized for tens of thousands of items.
+	 */
+	static LongMap<QualityItem> allItems = new LongMap<QualityItem>(32768);
+
+	/**
+	 * Known items by category, sorted by name. These are kept up to date as items are registered.
 	 */
-	static Map<Long, QualityItem> allItems = new HashMap<Long, QualityItem>();
+	private static Map<String, CategoryIndex> categoryIndexes = new HashMap<String, CategoryIndex>();
+
+	/**
+	 * Items constructed on this thread, not yet registered; null if items are registered as they are constructed.
+	 */
+	private static final ThreadLocal<List<QualityItem>> deferredItems = new ThreadLocal<List<QualityItem>>();
 
 	/**
 	 * Basic constructor for a QualityItem, with just a name and tag. This QualityItem will not have a Category.
@@ -52,10 +66,11 @@ public class QualityItem
 	{
 		this.tag = id;
 		this.name = name;
-		this.slot = slot;
-		this.category = category;
+		// There are few slots and categories, each repeated across thousands of items.
+		this.slot = slot != null ? slot.intern() : null;
+		this.category = category != null ? category.intern() : null;
 		
-		QualityItem.allItems.put(id, this);
+		QualityItem.register(this);
 	}
 
 	/**
@@ -105,32 +120,99 @@ public class QualityItem
 	}
 
 	/**
-	 * Return the set of known tags.
-	 * @return Tag set.
+	 * Return the known tags.
+	 * @return Tags, in no particular order.
+	 */
+	public static long[] getKnownItemTags()
+	{
+		return QualityItem.allItems.keys();
+	}
+
+	/**
+	 * Return the known items.
+	 * @return New list of items, in no particular order.
+	 */
+	public static List<QualityItem> getKnownItems()
+	{
+		return QualityItem.allItems.values();
+	}
+
+	/**
+	 * Return the known items in a category, sorted by name. Items with the same name are sorted by tag.
+	 * @param category Category name.
+	 * @return Unmodifiable list of items; empty if the category has none.
+	 */
+	public static List<QualityItem> getItemsInCategory(String category)
+	{
+		CategoryIndex index = QualityItem.categoryIndexes.get(category);
+		return index != null ? index.getItems() : Collections.<QualityItem>emptyList();
+	}
+
+	/**
+	 * Register an item as known. An item already registered with the same tag is replaced.
+	 * @param item New item.
 	 */
-	public static Set<Long> getKnownItemTags()
+	private static void register(QualityItem item)
 	{
-		return QualityItem.allItems.keySet();
+		List<QualityItem> deferred = QualityItem.deferredItems.get();
+		if (deferred != null) {
+			deferred.add(item);
+			return;
+		}
+
+		QualityItem previous = QualityItem.allItems.put(item.tag, item);
+		if (previous != null) {
+			QualityItem.getCategoryIndex(previous.category).remove(previous);
+		}
+		QualityItem.getCategoryIndex(item.category).add(item);
 	}
 
-	public static Set<QualityItem> getItemsInCategory(String category)
+	/**
+	 * Defer registration of the items constructed on this thread, until {@link #endDeferral()}. This allows
+	 * items to be constructed on several threads at once; registration itself is not thread-safe.
+	 * @return Receives the items constructed, in order; these are to be passed to {@link #registerAll(List)}.
+	 */
+	static List<QualityItem> deferRegistration()
+	{
+		List<QualityItem> deferred = new ArrayList<QualityItem>();
+		QualityItem.deferredItems.set(deferred);
+		return deferred;
+	}
+
+	/**
+	 * Register items as they are constructed on this thread again.
+	 */
+	static void endDeferral()
 	{
-		Set<QualityItem> result = new TreeSet<QualityItem>(new Comparator<QualityItem>() {
-			@Override
-			public int compare(QualityItem o1, QualityItem o2)
-			{
-				return o1.name.compareTo(o2.name);
-			}
-		});
+		QualityItem.deferredItems.remove();
+	}
 
-		for (QualityItem item : QualityItem.allItems.values()) {
-			if (item.getCategory().equals(category)) {
-				result.add(item);
-			}
+	/**
+	 * Register items whose registration was deferred.
+	 * @param items Items, in the order they were constructed.
+	 */
+	static void registerAll(List<QualityItem> items)
+	{
+		for (QualityItem item : items) {
+			QualityItem.register(item);
 		}
+	}
 
-		return result;
+	/**
+	 * Get the index for a category, creating it if necessary.
+	 * @param category Category name.
+	 * @return Category index.
+	 */
+	private static CategoryIndex getCategoryIndex(String category)
+	{
+		CategoryIndex index = QualityItem.categoryIndexes.get(category);
+		if (index == null) {
+			index = new CategoryIndex();
+			QualityItem.categoryIndexes.put(category, index);
+		}
+		return index;
 	}
+
 	/**
 	 * Return the set of known categories, sorted by category.
 	 * @return Category set.
@@ -41,10 +41,11 @@ public class Ship extends QualityItem
 		QualityItem.addFactory(Ship.categoryName, new ShipFactory());
 	}
 
-	private Map<String, Object> crewCapacity = null;
-	private Map<String, Object> weight = null;
-	private Map<String, Object> holdCapacity = null;
-	private Map<String, Object> maxHull = null;
+	private final long crewCapacity;
+	private final long weight;
+	private final long holdCapacity;
+	private final long maxHull;
+
 	/**
 	 * Ship, as described by the EquippedPossession/AssociatedQuality node.
 	 * @param quality AssociatedQuality node.
@@ -57,7 +58,6 @@ public class Ship extends QualityItem
 		// and the latter the actual entity.
 		// AssignToSlot will have ID 102889? and Tag "Ship Equipment Slot".
 		super(JSONUtil.getString(quality, "Name"), JSONUtil.getLong(quality, "Id"), JSONUtil.getString(quality, "AssignToSlot", "Name"), Ship.categoryName);
-		this.setQuality(quality);
 
 		// Extract nodes of interest.
 		//   AssignedToSlot: where equipped.
@@ -66,6 +66,11 @@ public class Ship extends QualityItem
 		//        4788 (AssociatedQuality: 109845, Name: "Ship Weight"): Ship weight. Level defines weight.
 		//        4797 (AssociatedQuality: 105361, Name: "MaxHull"): Hull strength. Level defines max strength. 
 		//        4798 (AssociatedQuality: 102031, Name: "Hold"): Hold. Level defines max capacity.
+		// Only the Levels are kept, so the node itself may be released.
+		long crewCapacity = 0;
+		long weight = 0;
+		long maxHull = 0;
+		long holdCapacity = 0;
 		ArrayList<Object> enhancements = JSONUtil.getArray(quality, "Enhancements");
 		if (enhancements != null) {
 			for (Object enhancementItem: enhancements) {
@@ -76,22 +81,22 @@ public class Ship extends QualityItem
 						switch ((int) associatedId) {
 							case 106992: // "Quarters":
 							{
-								this.crewCapacity = enhancement;
+								crewCapacity = Ship.getLevel(enhancement);
 								break;
 							}
 							case 109845: // "Ship Weight":
 							{
-								this.weight = enhancement;
+								weight = Ship.getLevel(enhancement);
 								break;
 							}
 							case 105361: // "MaxHull":
 							{
-								this.maxHull = enhancement;
+								maxHull = Ship.getLevel(enhancement);
 								break; 
 							}
 							case 102031: // "Hold":
 							{
-								this.holdCapacity = enhancement;
+								holdCapacity = Ship.getLevel(enhancement);
 								break;
 							}
 						}
@@ -99,6 +104,29 @@ public class Ship extends QualityItem
 				}
 			}
 		}
+		this.crewCapacity = crewCapacity;
+		this.weight = weight;
+		this.maxHull = maxHull;
+		this.holdCapacity = holdCapacity;
+	}
+
+	/**
+	 * Construct a Ship from previously extracted values, such as those in the catalog cache.
+	 * @param name Ship name.
+	 * @param id Ship ID.
+	 * @param slot Assigned slot. May be null.
+	 * @param crewCapacity Crew capacity.
+	 * @param weight Weight.
+	 * @param maxHull Maximum hull value.
+	 * @param holdCapacity Hold capacity.
+	 */
+	public Ship(String name, long id, String slot, long crewCapacity, long weight, long maxHull, long holdCapacity)
+	{
+		super(name, id, slot, Ship.categoryName);
+		this.crewCapacity = crewCapacity;
+		this.weight = weight;
+		this.maxHull = maxHull;
+		this.holdCapacity = holdCapacity;
 	}
 
 	/**
@@ -183,23 +211,23 @@ public class Ship extends QualityItem
 	}
 
 	/**
-	 * Get the crew capacity. 0 if not known.
-	 * @return Crew capacity.
+	 * Get the Level of an enhancement.
+	 * @param enhancement Enhancement node.
+	 * @return Level; 0 if not present.
 	 */
-	public long getCrewCapacity()
+	private static long getLevel(Map<String, Object> enhancement)
 	{
-		return this.crewCapacity != null ? JSONUtil.getLong(this.crewCapacity, "Level") : 0;
+		Long level = JSONUtil.getLong(enhancement, "Level");
+		return level != null ? level : 0;
 	}
 
 	/**
-	 * Set the crew capacity.
-	 * @param crewCapacity New crew capacity.
+	 * Get the crew capacity. 0 if not known.
+	 * @return Crew capacity.
 	 */
-	public void setCrewCapacity(int crewCapacity)
+	public long getCrewCapacity()
 	{
-		if (this.crewCapacity != null) {
-			this.crewCapacity.put("Level", new Long(crewCapacity));
-		}
+		return this.crewCapacity;
 	}
 
 	/**
@@ -208,18 +236,7 @@ public class Ship extends QualityItem
 	 */
 	public long getWeight()
 	{
-		return this.weight != null ? JSONUtil.getLong(this.weight, "Level") : 0;
-	}
-
-	/**
-	 * Set the weight.
-	 * @param weight New weight.
-	 */
-	public void setWeight(int weight)
-	{
-		if (this.weight != null) {
-			this.weight.put("Level", new Long(weight));
-		}
+		return this.weight;
 	}
 
 	/**
@@ -228,18 +245,7 @@ public class Ship extends QualityItem
 	 */
 	public long getHoldCapacity()
 	{
-		return this.holdCapacity != null ? JSONUtil.getLong(this.holdCapacity, "Level") : 0;
-	}
-
-	/**
-	 * Set the hold capacity.
-	 * @param holdCapacity New hold capacity.
-	 */
-	public void setHoldCapacity(int holdCapacity)
-	{
-		if (this.holdCapacity != null) {
-			this.holdCapacity.put("Level", new Long(holdCapacity));
-		}
+		return this.holdCapacity;
 	}
 
 	/**
@@ -248,17 +254,6 @@ public class Ship extends QualityItem
 	 */
 	public long getMaxHull()
 	{
-		return this.maxHull != null ? JSONUtil.getLong(this.maxHull, "Level") : 0;
-	}
-
-	/**
-	 * Set the maximum hull value.
-	 * @param maxHull New maximum hull value.
-	 */
-	public void setMaxHull(int maxHull)
-	{
-		if (this.maxHull != null) {
-			this.maxHull.put("Level", new Long(maxHull));
-		}
+		return this.maxHull;
 	}
 }
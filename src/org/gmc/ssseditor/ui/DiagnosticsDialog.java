@@ -0,0 +1,112 @@
+package org.gmc.ssseditor.ui;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
+
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JFileChooser;
+import javax.swing.JFrame;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+
+/**
+ * A dialog showing the event dispatch report, which can be refreshed, reset, or saved to a file.
+ * @author grant
+ *
+ */
+class DiagnosticsDialog extends JDialog
+{
+	private static final long serialVersionUID = 1L;
+
+	private final DispatchMonitor monitor;
+	private final JTextArea reportArea;
+
+	/**
+	 * Create the dialog.
+	 * @param owner Owner frame.
+	 * @param monitor Monitor to report.
+	 */
+	DiagnosticsDialog(JFrame owner, DispatchMonitor monitor)
+	{
+		super(owner, "Diagnostics", false);
+		this.monitor = monitor;
+
+		this.reportArea = new JTextArea(30, 90);
+		this.reportArea.setEditable(false);
+		this.reportArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+		this.getContentPane().add(new JScrollPane(this.reportArea), BorderLayout.CENTER);
+
+		JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+		JButton refreshButton = new JButton("Refresh");
+		refreshButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				DiagnosticsDialog.this.refresh();
+			}
+		});
+		buttonPanel.add(refreshButton);
+
+		JButton resetButton = new JButton("Reset");
+		resetButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				DiagnosticsDialog.this.monitor.reset();
+				DiagnosticsDialog.this.refresh();
+			}
+		});
+		buttonPanel.add(resetButton);
+
+		JButton saveButton = new JButton("Save...");
+		saveButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				DiagnosticsDialog.this.onSave();
+			}
+		});
+		buttonPanel.add(saveButton);
+
+		JButton closeButton = new JButton("Close");
+		closeButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				DiagnosticsDialog.this.setVisible(false);
+			}
+		});
+		buttonPanel.add(closeButton);
+		this.getContentPane().add(buttonPanel, BorderLayout.SOUTH);
+
+		this.pack();
+		this.setLocationRelativeTo(owner);
+	}
+
+	/**
+	 * Show the current report.
+	 */
+	void refresh()
+	{
+		this.reportArea.setText(this.monitor.getReport());
+		this.reportArea.setCaretPosition(0);
+	}
+
+	/**
+	 * Save the report to a file chosen by the user.
+	 */
+	private void onSave()
+	{
+		JFileChooser chooser = new JFileChooser();
+		chooser.setSelectedFile(new File("ssseditor-diagnostics.txt"));
+		if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+			return;
+		}
+
+		try {
+			this.monitor.writeReport(chooser.getSelectedFile());
+		} catch (IOException e) {
+			JOptionPane.showMessageDialog(this, e.getMessage(), "Diagnostics", JOptionPane.ERROR_MESSAGE);
+		}
+	}
+}
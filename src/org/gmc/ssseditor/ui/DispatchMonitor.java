@@ -0,0 +1,370 @@
+package org.gmc.ssseditor.ui;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * An event queue that measures how long each event takes to dispatch, for diagnosing an unresponsive UI.
+ * Its report also gives the heap in use.
+ *
+ * Dispatch times are counted in a histogram with power-of-two buckets, in microseconds. A watchdog
+ * thread checks the event thread periodically; if an event has been dispatching for longer than the
+ * stall threshold, the event thread's stack is captured, once per event. When a modal dialog runs its
+ * own event loop the events it dispatches are measured, and the event that opened the dialog is measured
+ * without the time spent in the dialog, waiting for or dispatching its events: its work before the dialog
+ * opened and after it closed is counted as one dispatch, and the watchdog watches that work too.
+ *
+ * The histogram is only updated and read on the event thread; the stall list is shared with the watchdog.
+ * @author grant
+ *
+ */
+public class DispatchMonitor extends EventQueue
+{
+	/**
+	 * A dispatch that took longer than the threshold.
+	 */
+	private static class Stall
+	{
+		final Date time;
+		final long elapsedMillis;
+		final String event;
+		final StackTraceElement[] stack;
+
+		Stall(Date time, long elapsedMillis, String event, StackTraceElement[] stack)
+		{
+			this.time = time;
+			this.elapsedMillis = elapsedMillis;
+			this.event = event;
+			this.stack = stack;
+		}
+	}
+
+	private static final int bucketCount = 32;
+	private static final int maximumDepth = 16;
+	private static final int maximumStalls = 50;
+
+	private final long thresholdNanos;
+
+	private long[] buckets = new long[DispatchMonitor.bucketCount];
+	private long count = 0;
+	private long totalNanos = 0;
+	private long maximumNanos = 0;
+
+	// Nested dispatch, for modal dialogs: by level, the time the event has worked so far, and when it last started or resumed.
+	private final long[] workedNanos = new long[DispatchMonitor.maximumDepth];
+	private final long[] resumed = new long[DispatchMonitor.maximumDepth];
+	private final AWTEvent[] events = new AWTEvent[DispatchMonitor.maximumDepth];
+	private int depth = 0;
+
+	// Read by the watchdog.
+	private volatile Thread eventThread = null;
+	private volatile AWTEvent currentEvent = null;
+	private volatile long currentStart = 0;
+	private volatile long sequence = 0;
+	private final LinkedList<Stall> stalls = new LinkedList<Stall>();
+
+	/**
+	 * Install a monitor on the system event queue, and start its watchdog.
+	 * @param thresholdMillis Dispatch time over which the event thread's stack is captured.
+	 * @return Monitor.
+	 */
+	public static DispatchMonitor install(long thresholdMillis)
+	{
+		final DispatchMonitor monitor = new DispatchMonitor(thresholdMillis);
+		Toolkit.getDefaultToolkit().getSystemEventQueue().push(monitor);
+
+		Thread watchdog = new Thread(new Runnable() {
+			@Override
+			public void run()
+			{
+				monitor.watch();
+			}
+		}, "EDT watchdog");
+		watchdog.setDaemon(true);
+		watchdog.start();
+
+		return monitor;
+	}
+
+	/**
+	 * Create a monitor.
+	 * @param thresholdMillis Stall threshold.
+	 */
+	private DispatchMonitor(long thresholdMillis)
+	{
+		this.thresholdNanos = thresholdMillis * 1000000L;
+	}
+
+	/**
+	 * Get the stall threshold.
+	 * @return Threshold in milliseconds.
+	 */
+	public long getThresholdMillis()
+	{
+		return this.thresholdNanos / 1000000L;
+	}
+
+	@Override
+	protected void dispatchEvent(AWTEvent event)
+	{
+		if (this.depth >= DispatchMonitor.maximumDepth) {
+			super.dispatchEvent(event);
+			return;
+		}
+
+		int level = this.depth++;
+		long start = System.nanoTime();
+		if (level > 0) {
+			// A nested event loop: the outer event is waiting, not working, until this returns.
+			this.workedNanos[level - 1] += start - this.resumed[level - 1];
+		}
+		this.workedNanos[level] = 0;
+		this.resumed[level] = start;
+		this.events[level] = event;
+		this.eventThread = Thread.currentThread();
+		this.currentEvent = event;
+		this.currentStart = start;
+		++this.sequence;
+
+		try {
+			super.dispatchEvent(event);
+		} finally {
+			long end = System.nanoTime();
+			this.depth = level;
+			this.record(this.workedNanos[level] + end - this.resumed[level]);
+			this.events[level] = null;
+			if (level > 0) {
+				// Resume watching the outer event from now.
+				this.resumed[level - 1] = end;
+				this.currentEvent = this.events[level - 1];
+				this.currentStart = end;
+			} else {
+				this.currentEvent = null;
+				this.currentStart = 0;
+			}
+			++this.sequence;
+		}
+	}
+
+	@Override
+	public AWTEvent getNextEvent() throws InterruptedException
+	{
+		int level = this.depth - 1;
+		if (level < 0 || Thread.currentThread() != this.eventThread) {
+			return super.getNextEvent();
+		}
+
+		// A nested event loop is waiting for an event: the outer event is not working.
+		this.workedNanos[level] += System.nanoTime() - this.resumed[level];
+		this.currentStart = 0;
+		++this.sequence;
+		try {
+			return super.getNextEvent();
+		} finally {
+			long now = System.nanoTime();
+			this.resumed[level] = now;
+			this.currentStart = now;
+			++this.sequence;
+		}
+	}
+
+	/**
+	 * Reset the histogram and stalls.
+	 */
+	public void reset()
+	{
+		this.buckets = new long[DispatchMonitor.bucketCount];
+		this.count = 0;
+		this.totalNanos = 0;
+		this.maximumNanos = 0;
+		synchronized (this.stalls) {
+			this.stalls.clear();
+		}
+	}
+
+	/**
+	 * Get a text report of the histogram and stalls, and of the heap.
+	 * @return Report.
+	 */
+	public String getReport()
+	{
+		StringBuilder report = new StringBuilder();
+		report.append("Event dispatch latency, ").append(this.count).append(" events\n");
+		if (this.count > 0) {
+			report.append(String.format("  mean %.3f ms, max %.3f ms%n", this.totalNanos / 1e6 / this.count, this.maximumNanos / 1e6));
+			report.append(String.format("  p50 < %s, p90 < %s, p99 < %s, p99.9 < %s%n",
+					this.getPercentile(0.5), this.getPercentile(0.9), this.getPercentile(0.99), this.getPercentile(0.999)));
+			report.append("\n");
+			long cumulative = 0;
+			for (int i = 0; i < this.buckets.length; ++i) {
+				if (this.buckets[i] == 0) {
+					continue;
+				}
+				cumulative += this.buckets[i];
+				report.append(String.format("  < %-10s %10d  %6.2f%%  %6.2f%%%n",
+						DispatchMonitor.formatMicros(1L << (i + 1)), this.buckets[i], 100.0 * this.buckets[i] / this.count, 100.0 * cumulative / this.count));
+			}
+		}
+
+		List<Stall> stalls;
+		synchronized (this.stalls) {
+			stalls = new ArrayList<Stall>(this.stalls);
+		}
+		report.append("\nStalls over ").append(this.getThresholdMillis()).append(" ms: ").append(stalls.size());
+		if (stalls.size() == DispatchMonitor.maximumStalls) {
+			report.append(" (most recent only)");
+		}
+		report.append("\n");
+		for (Stall stall : stalls) {
+			report.append("\n").append(stall.time).append(": ").append(stall.event)
+				.append(", dispatching for ").append(stall.elapsedMillis).append(" ms when captured\n");
+			for (StackTraceElement element : stall.stack) {
+				report.append("    at ").append(element).append("\n");
+			}
+		}
+
+		DispatchMonitor.appendHeap(report);
+		return report.toString();
+	}
+
+	/**
+	 * Report the heap. The size after the last collection is the steady state: what the editor holds on to,
+	 * such as the quality catalog and the open save, without the garbage since.
+	 * @param report Report.
+	 */
+	private static void appendHeap(StringBuilder report)
+	{
+		long afterCollection = 0;
+		boolean collected = false;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			MemoryUsage usage = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+			if (usage != null) {
+				afterCollection += usage.getUsed();
+				collected = true;
+			}
+		}
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+
+		report.append("\nHeap\n");
+		report.append(String.format("  used %.1f MB, committed %.1f MB%n", heap.getUsed() / 1048576.0, heap.getCommitted() / 1048576.0));
+		if (collected) {
+			report.append(String.format("  used after the last collection %.1f MB%n", afterCollection / 1048576.0));
+		}
+	}
+
+	/**
+	 * Write the report to a file.
+	 * @param file File.
+	 * @throws IOException On write error.
+	 */
+	public void writeReport(File file) throws IOException
+	{
+		try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+			writer.print(this.getReport());
+			if (writer.checkError()) {
+				throw new IOException("Error writing " + file.getName());
+			}
+		}
+	}
+
+	/**
+	 * Count one dispatch.
+	 * @param nanos Dispatch time.
+	 */
+	private void record(long nanos)
+	{
+		long micros = nanos / 1000;
+		int bucket = micros <= 1 ? 0 : Math.min(DispatchMonitor.bucketCount - 1, 63 - Long.numberOfLeadingZeros(micros));
+		++this.buckets[bucket];
+		++this.count;
+		this.totalNanos += nanos;
+		this.maximumNanos = Math.max(this.maximumNanos, nanos);
+	}
+
+	/**
+	 * Get the upper bound of the bucket containing a percentile.
+	 * @param fraction Percentile, as a fraction.
+	 * @return Formatted bound.
+	 */
+	private String getPercentile(double fraction)
+	{
+		long target = (long) Math.ceil(this.count * fraction);
+		long cumulative = 0;
+		for (int i = 0; i < this.buckets.length; ++i) {
+			cumulative += this.buckets[i];
+			if (cumulative >= target) {
+				return DispatchMonitor.formatMicros(1L << (i + 1));
+			}
+		}
+		return "?";
+	}
+
+	/**
+	 * Format a time.
+	 * @param micros Time in microseconds.
+	 * @return Formatted time.
+	 */
+	private static String formatMicros(long micros)
+	{
+		if (micros < 1000) {
+			return micros + " us";
+		} else if (micros < 1000000) {
+			return (micros / 1000.0) + " ms";
+		}
+		return (micros / 1000000.0) + " s";
+	}
+
+	/**
+	 * The watchdog loop. This runs on its own thread.
+	 */
+	private void watch()
+	{
+		long interval = Math.max(10, this.getThresholdMillis() / 4);
+		long capturedSequence = -1;
+		while (true) {
+			try {
+				Thread.sleep(interval);
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			long sequence = this.sequence;
+			long start = this.currentStart;
+			AWTEvent event = this.currentEvent;
+			Thread thread = this.eventThread;
+			if (start == 0 || event == null || thread == null || sequence == capturedSequence) {
+				continue;
+			}
+
+			long elapsed = System.nanoTime() - start;
+			if (elapsed >= this.thresholdNanos) {
+				StackTraceElement[] stack = thread.getStackTrace();
+				if (this.sequence != sequence) {
+					// The event finished while the stack was captured.
+					continue;
+				}
+				capturedSequence = sequence;
+				String description = event.getClass().getName() + " from " + event.getSource().getClass().getName();
+				synchronized (this.stalls) {
+					if (this.stalls.size() == DispatchMonitor.maximumStalls) {
+						this.stalls.removeFirst();
+					}
+					this.stalls.add(new Stall(new Date(), elapsed / 1000000L, description, stack));
+				}
+			}
+		}
+	}
+}
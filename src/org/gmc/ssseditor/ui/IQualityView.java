@@ -0,0 +1,36 @@
+package org.gmc.ssseditor.ui;
+
+import java.util.Map;
+
+/**
+ * A quality as shown on the UI: either a field on a fixed panel, or a row in a category table.
+ *
+ * A view is in one of two states: added, with a save file Quality and a value, or not added.
+ * @author grant
+ *
+ */
+public interface IQualityView
+{
+	/**
+	 * Get the value shown.
+	 * @return Value.
+	 */
+	public String getValue();
+
+	/**
+	 * Get the save file Quality.
+	 * @return Save item; null if not added.
+	 */
+	public Map<String, Object> getSaveItem();
+
+	/**
+	 * Mutate the view to the save-file instance state.
+	 * @param saveItem Associated save item.
+	 */
+	public void mutate(Map<String, Object> saveItem);
+
+	/**
+	 * Mutate the view to the no-save-file instance state.
+	 */
+	public void mutate();
+}
@@ -11,6 +11,7 @@ import java.util.Map;
 import javax.swing.JButton;
 import javax.swing.JFormattedTextField;
 import javax.swing.JPanel;
+import javax.swing.Timer;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 
@@ -23,19 +24,47 @@ import org.gmc.ssseditor.qualities.QualityItem;
  * <li>Not added: the label and an 'add' button are shown</li>
  * <li>Added: the label, a text field with an integer value, and a 'delete' button are shown</li>
  * </ul>
+ *
+ * Typing in the text field is coalesced: handlers are told of a change once typing has paused for
+ * {@link #changeDelay} milliseconds, and only if the value differs from the one last reported. Values
+ * set by the program, such as when a save is loaded, are not reported at all.
  * @author grant
  *
  */
-public class QualityItemUI {
+public class QualityItemUI implements IQualityView {
 	public static interface IQualityItemUIEvents
 	{
-		public void onValueChanged(QualityItemUI ui, QualityItem item, Map<String, Object> saveItem);
-		public void onRequestAdd(QualityItemUI ui, QualityItem item);
-		public void onRequestDelete(QualityItemUI ui, QualityItem item, Map<String, Object> saveItem);
+		/**
+		 * The value has been changed by the user.
+		 * @param ui View.
+		 * @param item QualityItem.
+		 * @param saveItem Save file Quality; may be null for fields on the fixed panels.
+		 * @param value New value.
+		 */
+		public void onValueChanged(IQualityView ui, QualityItem item, Map<String, Object> saveItem, long value);
+		public void onRequestAdd(IQualityView ui, QualityItem item);
+		public void onRequestDelete(IQualityView ui, QualityItem item, Map<String, Object> saveItem);
 	}
 	
+	/**
+	 * Delay after the last keystroke before a change is reported, in milliseconds.
+	 */
+	private static final int changeDelay = 250;
+
+	/**
+	 * Text shown when there is no value.
+	 */
+	private static final String unsetText = "-unset-";
+
 	private QualityItem item;
 	private Map<String, Object> saveItem;
+	private Timer changeTimer;
+	private boolean settingValue = false;
+
+	/**
+	 * The value last set or reported; null if the field is not a number.
+	 */
+	private Long reportedValue = null;
 	private JButton addButton;
 	private JButton deleteButton;
 	private JFormattedTextField valueField;
@@ -126,11 +155,12 @@ public class QualityItemUI {
 	 * Mutate the UI to the save-file instance state.
 	 * @param saveItem Associated save item.
 	 */
+	@Override
 	public void mutate(Map<String, Object> saveItem)
 	{
 		this.saveItem = saveItem;
 		
-		this.valueField.setText(Long.toString(JSONUtil.getLong(saveItem, "Level")));
+		this.setValue(saveItem);
 		this.addButton.setVisible(false);
 		this.valueField.setVisible(true);
 		this.deleteButton.setVisible(true);
@@ -139,6 +169,7 @@ public class QualityItemUI {
 	/**
 	 * Mutate the UI to the no-save-file instance state.
 	 */
+	@Override
 	public void mutate()
 	{
 		this.saveItem = null;
@@ -152,18 +183,32 @@ public class QualityItemUI {
 	 * Get the value of the input field.
 	 * @return Value.
 	 */
+	@Override
 	public String getValue()
 	{
 		return this.valueField.getText();
 	}
 
+	@Override
+	public Map<String, Object> getSaveItem()
+	{
+		return this.saveItem;
+	}
+
 	/**
 	 * Set the value of the text field from a string.
 	 * @param newValue New value.
 	 */
 	public void setValue(String newValue)
 	{
-		this.valueField.setText(newValue);
+		this.changeTimer.stop();
+		this.settingValue = true;
+		try {
+			this.valueField.setText(newValue);
+		} finally {
+			this.settingValue = false;
+		}
+		this.reportedValue = QualityItemUI.parse(newValue);
 	}
 
 	/**
@@ -172,7 +217,8 @@ public class QualityItemUI {
 	 */
 	public void setValue(Map<String, Object> quality)
 	{
-		this.setValue(Long.toString(JSONUtil.getLong(quality, "Level")));
+		Object level = JSONUtil.getKeyValue(quality, "Level");
+		this.setValue(level instanceof Number ? Long.toString(((Number) level).longValue()) : "0");
 	}
 	
 	/**
@@ -183,10 +229,18 @@ public class QualityItemUI {
 		this.setValue(this.saveItem);
 	}
 
+	/**
+	 * Bind the field to a save file Quality, and show its value.
+	 * @param newItem Save item; null to show no value.
+	 */
 	public void setSaveItem(Map<String, Object> newItem)
 	{
 		this.saveItem = newItem;
-		this.update();
+		if (newItem != null) {
+			this.update();
+		} else {
+			this.setValue(QualityItemUI.unsetText);
+		}
 	}
 
 	/**
@@ -210,22 +264,58 @@ public class QualityItemUI {
 	}
 	
 	/**
-	 * Handle changes to the value field.
+	 * Handle an edit of the value field: report it once typing pauses.
+	 */
+	private void onEdit()
+	{
+		if (!this.settingValue) {
+			this.changeTimer.restart();
+		}
+	}
+
+	/**
+	 * Report any change still waiting for the typing delay to pass.
+	 */
+	public void flush()
+	{
+		if (this.changeTimer.isRunning()) {
+			this.changeTimer.stop();
+			this.onChange();
+		}
+	}
+
+	/**
+	 * Report a change to the value field, if the value has changed.
 	 */
 	private void onChange()
 	{
-		if (!this.valueField.getText().isEmpty())
+		Long value = QualityItemUI.parse(this.valueField.getText());
+		if (value == null || value.equals(this.reportedValue)) {
+			// Not a number (the formatter should fix it on focus-out or similar), or no change.
+			return;
+		}
+
+		this.reportedValue = value;
+		for (IQualityItemUIEvents handler : this.eventHandlers)
 		{
-			try
-			{
-				Integer.parseInt(this.valueField.getText());
-				for (IQualityItemUIEvents handler : this.eventHandlers)
-				{
-					handler.onValueChanged(this, this.item, this.saveItem);
-				}
-			} catch (NumberFormatException e) {
-				// Ignore it. The formatter should fix it on focus-out or similar.
-			}
+			handler.onValueChanged(this, this.item, this.saveItem, value);
+		}
+	}
+
+	/**
+	 * Parse a value.
+	 * @param text Text.
+	 * @return Value; null if the text is not a number.
+	 */
+	private static Long parse(String text)
+	{
+		if (text == null || text.isEmpty()) {
+			return null;
+		}
+		try {
+			return Long.valueOf(text);
+		} catch (NumberFormatException e) {
+			return null;
 		}
 	}
 	
@@ -249,7 +339,7 @@ public class QualityItemUI {
 	private void constructUI(JPanel panel, int row, int baseColumn, String name)
 	{
 		this.valueField = SSSaveEditorUI.addLabeledNumericInput(panel, name, row, baseColumn);
-		this.valueField.setText("-unset-");
+		this.valueField.setText(QualityItemUI.unsetText);
 
 		// Add a 'delete' button.
 		this.deleteButton = new JButton("-");
@@ -277,21 +367,30 @@ public class QualityItemUI {
 			@Override
 			public void removeUpdate(DocumentEvent e)
 			{
-				QualityItemUI.this.onChange();
+				QualityItemUI.this.onEdit();
 			}
 			
 			@Override
 			public void insertUpdate(DocumentEvent e)
 			{
-				QualityItemUI.this.onChange();
+				QualityItemUI.this.onEdit();
 			}
 			
 			@Override
 			public void changedUpdate(DocumentEvent e)
+			{
+				QualityItemUI.this.onEdit();
+			}
+		});
+
+		this.changeTimer = new Timer(QualityItemUI.changeDelay, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e)
 			{
 				QualityItemUI.this.onChange();
 			}
 		});
+		this.changeTimer.setRepeats(false);
 
 		this.deleteButton.addActionListener(new ActionListener() {
 			@Override
@@ -309,9 +408,4 @@ public class QualityItemUI {
 			}
 		});
 	}
-
-	public int getHeight()
-	{
-		return this.addButton.isShowing() ? this.addButton.getHeight() : this.deleteButton.getHeight();
-	}
 }
@@ -0,0 +1,109 @@
+package org.gmc.ssseditor.ui;
+
+import java.util.Map;
+
+import org.gmc.ssseditor.JSONUtil;
+import org.gmc.ssseditor.qualities.QualityItem;
+
+/**
+ * One row of a {@link QualityTableModel}. This holds no Swing components; the table draws
+ * every row with the same renderers.
+ * @author grant
+ *
+ */
+class QualityRow implements IQualityView
+{
+	private final QualityTableModel model;
+	private final int index;
+	private QualityItem item;
+	private Map<String, Object> saveItem;
+	private String value;
+
+	/**
+	 * Create a row.
+	 * @param model Owning table model.
+	 * @param index Row index in the model.
+	 * @param item QualityItem.
+	 */
+	QualityRow(QualityTableModel model, int index, QualityItem item)
+	{
+		this.model = model;
+		this.index = index;
+		this.item = item;
+	}
+
+	/**
+	 * Get the QualityItem.
+	 * @return Item.
+	 */
+	QualityItem getItem()
+	{
+		return this.item;
+	}
+
+	@Override
+	public Map<String, Object> getSaveItem()
+	{
+		return this.saveItem;
+	}
+
+	/**
+	 * Set the value, as edited in the table.
+	 * @param value New value.
+	 */
+	void setValue(String value)
+	{
+		this.value = value;
+	}
+
+	@Override
+	public String getValue()
+	{
+		return this.value;
+	}
+
+	@Override
+	public void mutate(Map<String, Object> saveItem)
+	{
+		this.bind(saveItem);
+		this.model.fireTableRowsUpdated(this.index, this.index);
+	}
+
+	/**
+	 * Rebind the row to an item, such as the same item loaded again, and its save file Quality, without notifying the table.
+	 * @param item QualityItem.
+	 * @param saveItem Save item; null for the no-save-file state.
+	 * @return true if what the row shows has changed.
+	 */
+	boolean rebind(QualityItem item, Map<String, Object> saveItem)
+	{
+		String oldValue = this.value;
+		boolean wasInSave = this.saveItem != null;
+		this.item = item;
+		if (saveItem != null) {
+			this.bind(saveItem);
+		} else {
+			this.saveItem = null;
+			this.value = null;
+		}
+		return wasInSave != (saveItem != null) || (oldValue == null ? this.value != null : !oldValue.equals(this.value));
+	}
+
+	/**
+	 * Set the save file Quality without notifying the table.
+	 * @param saveItem Save item.
+	 */
+	void bind(Map<String, Object> saveItem)
+	{
+		this.saveItem = saveItem;
+		this.value = Long.toString(JSONUtil.getLong(saveItem, "Level"));
+	}
+
+	@Override
+	public void mutate()
+	{
+		this.saveItem = null;
+		this.value = null;
+		this.model.fireTableRowsUpdated(this.index, this.index);
+	}
+}
@@ -0,0 +1,240 @@
+package org.gmc.ssseditor.ui;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.table.AbstractTableModel;
+
+import org.gmc.ssseditor.qualities.QualityItem;
+import org.gmc.ssseditor.ui.QualityItemUI.IQualityItemUIEvents;
+
+/**
+ * Table model for one Quality category: a name, a value for qualities in the save, and an
+ * add (+) or delete (-) button.
+ * @author grant
+ *
+ */
+class QualityTableModel extends AbstractTableModel
+{
+	private static final long serialVersionUID = 1L;
+
+	static final int nameColumn = 0;
+	static final int valueColumn = 1;
+	static final int actionColumn = 2;
+
+	private final List<QualityRow> rows = new ArrayList<QualityRow>();
+	private final List<IQualityItemUIEvents> eventHandlers;
+
+	/**
+	 * Create an empty table model.
+	 * @param eventHandlers Event handlers; this list is shared, not copied.
+	 */
+	QualityTableModel(List<IQualityItemUIEvents> eventHandlers)
+	{
+		this.eventHandlers = eventHandlers;
+	}
+
+	/**
+	 * Add a row in the save-file state.
+	 * @param item QualityItem.
+	 * @param saveItem Save file Quality.
+	 * @return New row.
+	 */
+	QualityRow add(QualityItem item, Map<String, Object> saveItem)
+	{
+		QualityRow row = this.add(item);
+		row.mutate(saveItem);
+		return row;
+	}
+
+	/**
+	 * Add a row in the no-save-file state.
+	 * @param item QualityItem.
+	 * @return New row.
+	 */
+	QualityRow add(QualityItem item)
+	{
+		int index = this.rows.size();
+		QualityRow row = new QualityRow(this, index, item);
+		this.rows.add(row);
+		this.fireTableRowsInserted(index, index);
+		return row;
+	}
+
+	/**
+	 * Replace all rows.
+	 * @param items Items, in order.
+	 * @param saveItems Save file Qualities of the items that are in the save.
+	 */
+	void setRows(List<QualityItem> items, Map<QualityItem, Map<String, Object>> saveItems)
+	{
+		this.rows.clear();
+		for (QualityItem item : items) {
+			QualityRow row = new QualityRow(this, this.rows.size(), item);
+			Map<String, Object> saveItem = saveItems.get(item);
+			if (saveItem != null) {
+				row.bind(saveItem);
+			}
+			this.rows.add(row);
+		}
+		this.fireTableDataChanged();
+	}
+
+	/**
+	 * Rebind the existing rows to new content, if it is for the same items (by tag) in the same order.
+	 * The rows are kept, so the table keeps its layout, selection and scroll position; only rows whose
+	 * value has changed are repainted.
+	 * @param items Items, in order.
+	 * @param saveItems Save file Qualities of the items that are in the save.
+	 * @return true if rebound; false if the items differ, and the rows must be replaced.
+	 */
+	boolean rebind(List<QualityItem> items, Map<QualityItem, Map<String, Object>> saveItems)
+	{
+		if (items.size() != this.rows.size()) {
+			return false;
+		}
+		for (int i = 0; i < items.size(); ++i) {
+			if (items.get(i).getTag() != this.rows.get(i).getItem().getTag()) {
+				return false;
+			}
+		}
+
+		// Runs of changed rows are reported together.
+		int firstChanged = -1;
+		for (int i = 0; i < items.size(); ++i) {
+			QualityItem item = items.get(i);
+			boolean changed = this.rows.get(i).rebind(item, saveItems.get(item));
+			if (changed && firstChanged < 0) {
+				firstChanged = i;
+			} else if (!changed && firstChanged >= 0) {
+				this.fireTableRowsUpdated(firstChanged, i - 1);
+				firstChanged = -1;
+			}
+		}
+		if (firstChanged >= 0) {
+			this.fireTableRowsUpdated(firstChanged, this.rows.size() - 1);
+		}
+		return true;
+	}
+
+	/**
+	 * Get the rows that are in the save.
+	 * @param views Receives the rows.
+	 */
+	void getAddedRows(List<IQualityView> views)
+	{
+		for (QualityRow row : this.rows) {
+			if (row.getSaveItem() != null) {
+				views.add(row);
+			}
+		}
+	}
+
+	/**
+	 * Remove all rows.
+	 */
+	void clear()
+	{
+		this.rows.clear();
+		this.fireTableDataChanged();
+	}
+
+	/**
+	 * Get a row.
+	 * @param index Row index.
+	 * @return Row.
+	 */
+	QualityRow getRow(int index)
+	{
+		return this.rows.get(index);
+	}
+
+	/**
+	 * Handle a push of a row's add or delete button.
+	 * @param index Row index.
+	 */
+	void onAction(int index)
+	{
+		QualityRow row = this.rows.get(index);
+		for (IQualityItemUIEvents handler : this.eventHandlers) {
+			if (row.getSaveItem() == null) {
+				handler.onRequestAdd(row, row.getItem());
+			} else {
+				handler.onRequestDelete(row, row.getItem(), row.getSaveItem());
+			}
+		}
+	}
+
+	@Override
+	public int getRowCount()
+	{
+		return this.rows.size();
+	}
+
+	@Override
+	public int getColumnCount()
+	{
+		return 3;
+	}
+
+	@Override
+	public String getColumnName(int column)
+	{
+		switch (column) {
+			case QualityTableModel.nameColumn:
+				return "Name";
+			case QualityTableModel.valueColumn:
+				return "Level";
+			default:
+				return "";
+		}
+	}
+
+	@Override
+	public Object getValueAt(int rowIndex, int columnIndex)
+	{
+		QualityRow row = this.rows.get(rowIndex);
+		switch (columnIndex) {
+			case QualityTableModel.nameColumn:
+				return row.getItem().getName();
+			case QualityTableModel.valueColumn:
+				return row.getValue();
+			default:
+				return row.getSaveItem() == null ? "+" : "-";
+		}
+	}
+
+	@Override
+	public boolean isCellEditable(int rowIndex, int columnIndex)
+	{
+		return columnIndex == QualityTableModel.valueColumn && this.rows.get(rowIndex).getSaveItem() != null;
+	}
+
+	@Override
+	public void setValueAt(Object value, int rowIndex, int columnIndex)
+	{
+		QualityRow row = this.rows.get(rowIndex);
+		if (columnIndex != QualityTableModel.valueColumn || row.getSaveItem() == null || value == null) {
+			return;
+		}
+
+		String text = value.toString();
+		long newValue;
+		try {
+			newValue = Long.parseLong(text);
+		} catch (NumberFormatException e) {
+			// Ignore it; the editor only allows numbers.
+			return;
+		}
+		if (text.equals(row.getValue())) {
+			return;
+		}
+
+		row.setValue(text);
+		this.fireTableCellUpdated(rowIndex, columnIndex);
+		for (IQualityItemUIEvents handler : this.eventHandlers) {
+			handler.onValueChanged(row, row.getItem(), row.getSaveItem(), newValue);
+		}
+	}
+}
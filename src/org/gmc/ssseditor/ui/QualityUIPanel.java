@@ -1,118 +1,281 @@
 package org.gmc.ssseditor.ui;
 
+import java.awt.Component;
 import java.awt.Dimension;
-import java.awt.FlowLayout;
-import java.awt.GridBagLayout;
-import java.awt.event.ComponentEvent;
-import java.awt.event.ComponentListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
 import java.util.Map;
 
-import javax.swing.JPanel;
-import javax.swing.JScrollBar;
+import javax.swing.DefaultCellEditor;
+import javax.swing.JButton;
+import javax.swing.JFormattedTextField;
 import javax.swing.JScrollPane;
 import javax.swing.JTabbedPane;
+import javax.swing.JTable;
+import javax.swing.ListSelectionModel;
+import javax.swing.RowFilter;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.table.TableCellRenderer;
+import javax.swing.table.TableColumn;
+import javax.swing.table.TableRowSorter;
 
+import org.gmc.ssseditor.LongMap;
 import org.gmc.ssseditor.qualities.QualityItem;
+import org.gmc.ssseditor.ui.QualityItemUI.IQualityItemUIEvents;
 
 /**
- * This class contains a panel intended to hold data for one Quality category. It is shown as a scrolled window.
+ * This class contains a panel intended to hold data for one Quality category. It is shown as a scrolled table.
+ *
+ * The table creates no components per row: every row is drawn with the same renderers, and only the visible rows
+ * are drawn, so the cost of a category does not depend on its size. The rows themselves are only created when the
+ * tab is first shown; until then the panel holds only the content given to {@link #setContent(List, Map)}.
  * @author grant
  *
  */
-public class QualityUIPanel implements ComponentListener
+public class QualityUIPanel
 {
-	private JPanel itemPanel;
-	private JScrollBar verticalBar;
-	private int addRow = 0;
-	private QualityItemUI lastAddedField = null;
-
-	public QualityUIPanel(JTabbedPane tabs, String labelString)
+	/**
+	 * Draws the add (+) or delete (-) button of a row.
+	 */
+	private static class ButtonRenderer implements TableCellRenderer
 	{
-		JPanel fillPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
-		this.itemPanel = new JPanel();
-		this.itemPanel.setLayout(new GridBagLayout());
-		fillPanel.add(this.itemPanel);
-		JScrollPane scrollPane = new JScrollPane(fillPanel);
-
-		scrollPane.setPreferredSize(new Dimension(200, 200));
-		tabs.addTab(labelString, scrollPane);
-		
-		this.verticalBar = scrollPane.getVerticalScrollBar();
-		this.itemPanel.addComponentListener(this);
+		private final JButton button = new JButton("+");
+
+		@Override
+		public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column)
+		{
+			this.button.setText(value != null ? value.toString() : "");
+			return this.button;
+		}
+
+		int getPreferredHeight()
+		{
+			return this.button.getPreferredSize().height;
+		}
 	}
-	
-	public JPanel getPanel()
+
+	private static final ButtonRenderer buttonRenderer = new ButtonRenderer();
+
+	private QualityTableModel model;
+	private JTable table;
+	private TableRowSorter<QualityTableModel> sorter;
+	private JTabbedPane tabs;
+	private JScrollPane scrollPane;
+	private String label;
+
+	/**
+	 * Items to show, by tag; null to show all.
+	 */
+	private LongMap<QualityItem> filter = null;
+
+	/**
+	 * Content not yet turned into rows; null once the rows have been created.
+	 */
+	private List<QualityItem> pendingItems = null;
+	private Map<QualityItem, Map<String, Object>> pendingSaveItems = null;
+
+	/**
+	 * Create a panel, and add it to the tabs.
+	 * @param tabs Tab pane.
+	 * @param labelString Tab label.
+	 * @param eventHandlers Event handlers for the rows; this list is shared, not copied.
+	 */
+	public QualityUIPanel(JTabbedPane tabs, String labelString, List<IQualityItemUIEvents> eventHandlers)
 	{
-		return this.itemPanel;
+		this.model = new QualityTableModel(eventHandlers);
+		this.table = new JTable(this.model);
+		this.sorter = new TableRowSorter<QualityTableModel>(this.model);
+		for (int column = 0; column < this.model.getColumnCount(); ++column) {
+			// Rows are in name order already; the sorter is only used to filter.
+			this.sorter.setSortable(column, false);
+		}
+		this.sorter.setRowFilter(new RowFilter<QualityTableModel, Integer>() {
+			@Override
+			public boolean include(Entry<? extends QualityTableModel, ? extends Integer> entry)
+			{
+				LongMap<QualityItem> filter = QualityUIPanel.this.filter;
+				return filter == null || filter.containsKey(entry.getModel().getRow(entry.getIdentifier()).getItem().getTag());
+			}
+		});
+		this.table.setRowSorter(this.sorter);
+		this.table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		this.table.setRowHeight(Math.max(this.table.getRowHeight(), QualityUIPanel.buttonRenderer.getPreferredHeight()));
+		this.table.setFillsViewportHeight(true);
+		this.table.getTableHeader().setReorderingAllowed(false);
+
+		TableColumn valueColumn = this.table.getColumnModel().getColumn(QualityTableModel.valueColumn);
+		valueColumn.setCellEditor(new DefaultCellEditor(new JFormattedTextField(SSSaveEditorUI.levelFormatter)));
+		valueColumn.setPreferredWidth(100);
+		valueColumn.setMaxWidth(150);
+
+		TableColumn actionColumn = this.table.getColumnModel().getColumn(QualityTableModel.actionColumn);
+		actionColumn.setCellRenderer(QualityUIPanel.buttonRenderer);
+		actionColumn.setPreferredWidth(50);
+		actionColumn.setMaxWidth(50);
+
+		this.table.getColumnModel().getColumn(QualityTableModel.nameColumn).setPreferredWidth(300);
+
+		this.table.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e)
+			{
+				QualityUIPanel.this.onClick(e);
+			}
+		});
+
+		this.tabs = tabs;
+		this.label = labelString;
+		this.scrollPane = new JScrollPane(this.table);
+		this.scrollPane.setPreferredSize(new Dimension(200, 200));
+		tabs.addTab(labelString, this.scrollPane);
+
+		tabs.addChangeListener(new ChangeListener() {
+			@Override
+			public void stateChanged(ChangeEvent e)
+			{
+				QualityUIPanel.this.populateIfShown();
+			}
+		});
 	}
-	
+
 	/**
-	 * Add an input field for a quantity item.
-	 * @param item QualityItem.
-	 * @param saveItem Save-file Quality.
-	 * @return New QualityItemUI.
+	 * Finish any edit in progress in the table, so that its value is reported.
 	 */
-	public QualityItemUI add(QualityItem item, Map<String, Object> saveItem)
+	public void stopEditing()
 	{
-		QualityItemUI ui = new QualityItemUI(this.itemPanel, item, saveItem, this.addRow);
-		
-		++this.addRow;
+		if (this.table.isEditing() && !this.table.getCellEditor().stopCellEditing()) {
+			this.table.getCellEditor().cancelCellEditing();
+		}
+	}
 
-		this.lastAddedField = ui;
+	/**
+	 * Set the content of the panel. If the panel already has rows for the same items, as when another save
+	 * is opened, they are rebound to the new save; otherwise the rows are created when the tab is shown.
+	 * @param items Items, in order.
+	 * @param saveItems Save file Qualities of the items that are in the save; this is kept, not copied.
+	 */
+	public void setContent(List<QualityItem> items, Map<QualityItem, Map<String, Object>> saveItems)
+	{
+		if (this.table.isEditing()) {
+			this.table.getCellEditor().cancelCellEditing();
+		}
+		if (this.model.getRowCount() > 0 && this.model.rebind(items, saveItems)) {
+			this.pendingItems = null;
+			this.pendingSaveItems = null;
+			return;
+		}
 
-		return ui;
+		this.reset();
+		this.pendingItems = items;
+		this.pendingSaveItems = saveItems;
+		this.populateIfShown();
 	}
 
 	/**
-	 * Add a QualityItemUI in the non-save-file state.
-	 * @param item QualityItem.
-	 * @return New QualityItemUI.
+	 * Show only some items, such as the results of a search. The tab title shows the number of items shown.
+	 * @param filter Items to show, by tag; null to show all.
+	 * @param count Number of the items to show that are in this panel's category.
 	 */
-	public QualityItemUI add(QualityItem item)
+	public void setFilter(LongMap<QualityItem> filter, int count)
 	{
-		QualityItemUI ui = new QualityItemUI(this.itemPanel, item, this.addRow);
-		
-		++this.addRow;
-
-		this.lastAddedField = ui;
+		this.filter = filter;
+		this.sorter.sort();
+		int index = this.tabs.indexOfComponent(this.scrollPane);
+		if (index >= 0) {
+			this.tabs.setTitleAt(index, filter == null ? this.label : this.label + " (" + count + ")");
+		}
+	}
 
-		return ui;
+	/**
+	 * Show this panel's tab, and select and scroll to an item.
+	 * @param item Item; this is matched by tag.
+	 */
+	public void showItem(QualityItem item)
+	{
+		// Selecting the tab creates the rows if necessary.
+		this.tabs.setSelectedComponent(this.scrollPane);
+		for (int row = 0; row < this.model.getRowCount(); ++row) {
+			if (this.model.getRow(row).getItem().getTag() == item.getTag()) {
+				int viewRow = this.table.convertRowIndexToView(row);
+				if (viewRow >= 0) {
+					this.table.setRowSelectionInterval(viewRow, viewRow);
+					this.table.scrollRectToVisible(this.table.getCellRect(viewRow, 0, true));
+				}
+				return;
+			}
+		}
 	}
 
 	/**
-	 * Reset the panel by clearing all items and preparing to add new items.
+	 * Get the rows that are in the save. Rows that have not been created yet have not been edited, and are not included.
+	 * @param views Receives the rows.
 	 */
-	public void reset()
+	public void getAddedViews(List<IQualityView> views)
 	{
-		this.itemPanel.removeAll();
-		this.addRow = 0;
+		this.model.getAddedRows(views);
 	}
 
+	/**
+	 * Add a row for a quantity item.
+	 * @param item QualityItem.
+	 * @param saveItem Save-file Quality.
+	 * @return New row.
+	 */
+	public IQualityView add(QualityItem item, Map<String, Object> saveItem)
+	{
+		return this.model.add(item, saveItem);
+	}
 
-	@Override
-	public void componentShown(ComponentEvent e)
+	/**
+	 * Add a row in the non-save-file state.
+	 * @param item QualityItem.
+	 * @return New row.
+	 */
+	public IQualityView add(QualityItem item)
 	{
-		// Not used, required by ComponentListener interface.
+		return this.model.add(item);
 	}
-	
-	@Override
-	public void componentResized(ComponentEvent e)
+
+	/**
+	 * Reset the panel by clearing all items and preparing to add new items.
+	 */
+	public void reset()
 	{
-		if (this.lastAddedField != null && this.lastAddedField != null && this.lastAddedField.getHeight() != 0) {
-			this.verticalBar.setUnitIncrement(lastAddedField.getHeight());
-			this.itemPanel.removeComponentListener(this);
+		if (this.table.isEditing()) {
+			this.table.getCellEditor().cancelCellEditing();
 		}
+		this.pendingItems = null;
+		this.pendingSaveItems = null;
+		this.model.clear();
 	}
-	
-	@Override
-	public void componentMoved(ComponentEvent e)
+
+	/**
+	 * Create the rows from the pending content, if this panel's tab is selected.
+	 */
+	private void populateIfShown()
 	{
-		// Not used, required by ComponentListener interface.
+		if (this.pendingItems != null && this.tabs.getSelectedComponent() == this.scrollPane) {
+			this.model.setRows(this.pendingItems, this.pendingSaveItems);
+			this.pendingItems = null;
+			this.pendingSaveItems = null;
+		}
 	}
-	
-	@Override
-	public void componentHidden(ComponentEvent e)
+
+	/**
+	 * Handle a click on the table; a click on a button cell pushes the button.
+	 * @param e Mouse event.
+	 */
+	private void onClick(MouseEvent e)
 	{
-		// Not used, required by ComponentListener interface.
+		int row = this.table.rowAtPoint(e.getPoint());
+		int column = this.table.columnAtPoint(e.getPoint());
+		if (row >= 0 && column >= 0 && this.table.convertColumnIndexToModel(column) == QualityTableModel.actionColumn) {
+			if (this.table.isEditing()) {
+				this.table.getCellEditor().stopCellEditing();
+			}
+			this.model.onAction(this.table.convertRowIndexToModel(row));
+		}
 	}
 }
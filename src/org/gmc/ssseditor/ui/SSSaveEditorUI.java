@@ -9,11 +9,15 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
+import java.io.File;
 import java.text.NumberFormat;
+import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.swing.BorderFactory;
 import javax.swing.JFormattedTextField;
@@ -24,17 +28,27 @@ import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JSeparator;
 import javax.swing.JTabbedPane;
+import javax.swing.JTextField;
 import javax.swing.KeyStroke;
 import javax.swing.border.Border;
 import javax.swing.border.TitledBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.text.NumberFormatter;
 
 import org.gmc.ssseditor.qualities.Companion;
 import org.gmc.ssseditor.qualities.Good;
+import org.gmc.ssseditor.LongMap;
+import org.gmc.ssseditor.SaveDiff;
+import org.gmc.ssseditor.SaveSummary;
+import org.gmc.ssseditor.SnapshotStore;
 import org.gmc.ssseditor.qualities.ItemTags;
+import org.gmc.ssseditor.qualities.NameIndex;
 import org.gmc.ssseditor.qualities.QualityItem;
+import org.gmc.ssseditor.ui.QualityItemUI.IQualityItemUIEvents;
 
 /**
  * This class contains only the UI for the save editor.
@@ -48,12 +62,21 @@ public class SSSaveEditorUI {
 	 */
 	public JFrame frame;
 	static public NumberFormatter formatter;
+	/**
+	 * Formatter for quality Levels, which are stored as long.
+	 */
+	static public NumberFormatter levelFormatter;
 	private TitledBorder titleBorder;
 	private TitledBorder shipBorder;
 	private JPanel shipPanel;
 	private JPanel titlePanel;
 	public JMenuItem saveMenuItem;
 	public JMenuItem saveAsMenuItem;
+	public JMenuItem compareMenuItem;
+	public JMenuItem historyMenuItem;
+	private JMenuItem diagnosticsMenuItem;
+	private DispatchMonitor dispatchMonitor;
+	private DiagnosticsDialog diagnosticsDialog;
 	public JLabel currentPortLabel;
 	public JLabel inGameDateLabel;
 	public JLabel playerLabel;
@@ -87,6 +110,17 @@ public class SSSaveEditorUI {
 	private QualityUIPanel companionsPanel;
 	private QualityUIPanel otherItemsPanel;
 	private Map<String, QualityUIPanel> categoryPanels = new HashMap<String, QualityUIPanel>();
+	private List<IQualityItemUIEvents> qualityEventHandlers = new LinkedList<IQualityItemUIEvents>();
+
+	private JPanel progressPanel;
+	private JLabel progressLabel;
+	private JProgressBar progressBar;
+
+	private JTextField searchField;
+	private JLabel searchResultLabel;
+	private NameIndex nameIndex = null;
+	private List<QualityItem> searchResults = new ArrayList<QualityItem>();
+	private int searchPosition = 0;
 
 	private List<ISaveEditorEvents> eventHandlers = new LinkedList<ISaveEditorEvents>();
 
@@ -96,8 +130,26 @@ public class SSSaveEditorUI {
 
 	public interface ISaveEditorEvents {
 		public void onFileOpen();
+		public void onFileBrowse();
 		public void onFileSave();
 		public void onFileSaveAs();
+		public void onFileCompare();
+		public void onFileHistory();
+		public void onVersionCompare(SnapshotStore.Version version);
+		public void onVersionRestore(SnapshotStore.Version version);
+	};
+
+	/**
+	 * Finds saves by their qualities, for the save browser.
+	 */
+	public interface ISaveQuery {
+		/**
+		 * Find the saves that match a {@link org.gmc.ssseditor.QualityQuery}.
+		 * @param query Query text.
+		 * @return Matching saves.
+		 * @throws ParseException If the query is not valid.
+		 */
+		public Set<File> findSaves(String query) throws ParseException;
 	};
 
 
@@ -113,6 +165,11 @@ public class SSSaveEditorUI {
 	    SSSaveEditorUI.formatter.setMinimum(0);
 	    SSSaveEditorUI.formatter.setMaximum(Integer.MAX_VALUE);
 	    SSSaveEditorUI.formatter.setAllowsInvalid(false);
+	    SSSaveEditorUI.levelFormatter = new NumberFormatter(format);
+	    SSSaveEditorUI.levelFormatter.setValueClass(Long.class);
+	    SSSaveEditorUI.levelFormatter.setMinimum(0L);
+	    SSSaveEditorUI.levelFormatter.setMaximum(Long.MAX_VALUE);
+	    SSSaveEditorUI.levelFormatter.setAllowsInvalid(false);
 	    
 	    this.frame = new JFrame();
 
@@ -152,10 +209,13 @@ public class SSSaveEditorUI {
 		this.createAttributesPanel(dataPanel, row, 0);
 		this.createBasicInventoryPanel(dataPanel, row, 1);
 
+		++row;
+		this.createSearchPanel(dataPanel, row);
+
 		++row;
 		tabs = new JTabbedPane();
-		this.goodsPanel = new QualityUIPanel(tabs, "Goods");
-		this.companionsPanel = new QualityUIPanel(tabs, "Companions");
+		this.goodsPanel = new QualityUIPanel(tabs, "Goods", this.qualityEventHandlers);
+		this.companionsPanel = new QualityUIPanel(tabs, "Companions", this.qualityEventHandlers);
 
 		this.categoryPanels.put(Good.categoryName, goodsPanel);
 		this.categoryPanels.put(Companion.categoryName, companionsPanel);
@@ -169,6 +229,9 @@ public class SSSaveEditorUI {
 		constraints.gridx = 0;
 		constraints.gridy = row;
 		dataPanel.add(tabs, constraints);
+
+		++row;
+		this.createProgressPanel(dataPanel, row);
 		this.frame.pack();
 	}
 
@@ -190,6 +253,51 @@ public class SSSaveEditorUI {
 		this.eventHandlers.remove(handler);
 	}
 
+	/**
+	 * Add an event handler for the Quality rows of all category panels, and the Quality fields of the fixed panels.
+	 * @param handler Event handler.
+	 */
+	public void addQualityEventHandler(IQualityItemUIEvents handler)
+	{
+		this.qualityEventHandlers.add(handler);
+		for (QualityItemUI field : this.getQualityFields()) {
+			field.addEventHandler(handler);
+		}
+	}
+
+	/**
+	 * Remove a Quality event handler.
+	 * @param handler Event handler.
+	 */
+	public void removeQualityEventHandler(IQualityItemUIEvents handler)
+	{
+		this.qualityEventHandlers.remove(handler);
+		for (QualityItemUI field : this.getQualityFields()) {
+			field.removeEventHandler(handler);
+		}
+	}
+
+	/**
+	 * Get the Quality fields of the fixed panels.
+	 * @return Fields.
+	 */
+	private QualityItemUI[] getQualityFields()
+	{
+		return new QualityItemUI[] {
+			this.echosField,
+			this.fuelField,
+			this.suppliesField,
+			this.terrorField,
+			this.hullField,
+			this.mirrorsField,
+			this.ironField,
+			this.pagesField,
+			this.heartsField,
+			this.veilsField,
+			this.crewField
+		};
+	}
+
 	/**
 	 * Make the UI visible.
 	 */
@@ -235,6 +343,45 @@ public class SSSaveEditorUI {
 		this.shipPanel.repaint();
 	}
 
+	/**
+	 * Show the progress bar, for a long operation such as loading.
+	 * @param text Description of the operation.
+	 */
+	public void showProgress(String text)
+	{
+		this.progressLabel.setText(text);
+		this.progressBar.setValue(0);
+		this.progressPanel.setVisible(true);
+	}
+
+	/**
+	 * Set the progress bar value.
+	 * @param percent Percentage complete.
+	 */
+	public void setProgress(int percent)
+	{
+		this.progressBar.setValue(percent);
+	}
+
+	/**
+	 * Hide the progress bar.
+	 */
+	public void hideProgress()
+	{
+		this.progressPanel.setVisible(false);
+	}
+
+	/**
+	 * Set the index used to search quality names, and enable searching.
+	 * @param nameIndex Name index.
+	 */
+	public void setNameIndex(NameIndex nameIndex)
+	{
+		this.nameIndex = nameIndex;
+		this.searchField.setEnabled(true);
+		this.onSearchChanged();
+	}
+
 	/**
 	 * Add a category panel, if it does not already exist.
 	 * @param category Category panel name.
@@ -243,7 +390,7 @@ public class SSSaveEditorUI {
 	{
 		if (!this.categoryPanels.containsKey(category))
 		{
-			this.categoryPanels.put(category, new QualityUIPanel(tabs, category));
+			this.categoryPanels.put(category, new QualityUIPanel(tabs, category, this.qualityEventHandlers));
 		}
 	}
 
@@ -252,7 +399,7 @@ public class SSSaveEditorUI {
 	 */
 	public void addOtherPanel()
 	{
-		this.otherItemsPanel = new QualityUIPanel(tabs, "Other");
+		this.otherItemsPanel = new QualityUIPanel(tabs, "Other", this.qualityEventHandlers);
 	}
 
 	/**
@@ -268,26 +415,46 @@ public class SSSaveEditorUI {
 	}
 
 	/**
-	 * Add a Quality display to a quality panel, in the input state.
-	 * @param item Quality item.
-	 * @param saveItem Associated save item.
-	 * @return New QualityItemUI.
+	 * Set the content of a category panel. The rows are created when the panel is first shown.
+	 * @param category Category name.
+	 * @param items Items in the category, in display order.
+	 * @param saveItems Save file Qualities of the items that are in the save.
+	 */
+	public void setPanelContent(String category, List<QualityItem> items, Map<QualityItem, Map<String, Object>> saveItems)
+	{
+		QualityUIPanel panel = this.categoryPanels.get(category);
+		if (panel != null) {
+			panel.setContent(items, saveItems);
+		}
+	}
+
+	/**
+	 * Report edits in progress: a table cell being edited, or a field still waiting for the typing delay.
+	 * This is done before the save's values are read.
 	 */
-	public QualityItemUI addToQualityPanel(QualityItem item, Map<String, Object> saveItem)
+	public void commitEdits()
 	{
-		QualityUIPanel panel = this.categoryPanels.get(item.getCategory());
-		return panel != null ? panel.add(item, saveItem) : null;
+		for (QualityUIPanel panel : this.categoryPanels.values()) {
+			panel.stopEditing();
+		}
+		this.otherItemsPanel.stopEditing();
+		for (QualityItemUI field : this.getQualityFields()) {
+			field.flush();
+		}
 	}
 
 	/**
-	 * Add a Quality display to a quality panel, with a button for adding it to the save.
-	 * @param item Quality item.
-	 * @return New QualityItemUI.
+	 * Get the Quality rows, in all category panels, that are in the save.
+	 * @return Rows.
 	 */
-	public QualityItemUI addToQualityPanel(QualityItem item)
+	public List<IQualityView> getAddedQualityViews()
 	{
-		QualityUIPanel panel = this.categoryPanels.get(item.getCategory());
-		return panel != null ? panel.add(item) : null;
+		List<IQualityView> views = new ArrayList<IQualityView>();
+		for (QualityUIPanel panel : this.categoryPanels.values()) {
+			panel.getAddedViews(views);
+		}
+		this.otherItemsPanel.getAddedViews(views);
+		return views;
 	}
 
 	/**
@@ -296,7 +463,7 @@ public class SSSaveEditorUI {
 	 * @param value Initial value for the display.
 	 * @return Text input for this item.
 	 */
-	protected QualityItemUI addOtherQuality(QualityItem item, Map<String, Object> saveItem)
+	protected IQualityView addOtherQuality(QualityItem item, Map<String, Object> saveItem)
 	{
 		return this.otherItemsPanel.add(item, saveItem);
 	}
@@ -321,6 +488,16 @@ public class SSSaveEditorUI {
 		openMenuItem.setMnemonic(KeyEvent.VK_O);
 		openMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_O, InputEvent.CTRL_MASK));
 		fileMenu.add(openMenuItem);
+
+		JMenuItem browseMenuItem = new JMenuItem("Browse Saves...");
+		browseMenuItem.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent arg0) {
+				SSSaveEditorUI.this.onFileBrowse();
+			}
+		});
+		browseMenuItem.setMnemonic(KeyEvent.VK_B);
+		browseMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_B, InputEvent.CTRL_DOWN_MASK));
+		fileMenu.add(browseMenuItem);
 		
 		JSeparator separator_2 = new JSeparator();
 		fileMenu.add(separator_2);
@@ -343,6 +520,24 @@ public class SSSaveEditorUI {
 		});
 		this.saveAsMenuItem.setEnabled(false);
 		fileMenu.add(this.saveAsMenuItem);
+
+		this.compareMenuItem = new JMenuItem("Compare With...");
+		this.compareMenuItem.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				SSSaveEditorUI.this.onFileCompare();
+			}
+		});
+		this.compareMenuItem.setEnabled(false);
+		fileMenu.add(this.compareMenuItem);
+
+		this.historyMenuItem = new JMenuItem("History...");
+		this.historyMenuItem.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				SSSaveEditorUI.this.onFileHistory();
+			}
+		});
+		this.historyMenuItem.setEnabled(false);
+		fileMenu.add(this.historyMenuItem);
 		
 		JSeparator separator_1 = new JSeparator();
 		fileMenu.add(separator_1);
@@ -358,6 +553,37 @@ public class SSSaveEditorUI {
 		// TODO: This should contain an About item and should be right-flush.
 		JMenu helpMenu = new JMenu("Help");
 		menuBar.add(helpMenu);
+
+		this.diagnosticsMenuItem = new JMenuItem("Diagnostics...");
+		this.diagnosticsMenuItem.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				SSSaveEditorUI.this.onDiagnostics();
+			}
+		});
+		this.diagnosticsMenuItem.setVisible(false);
+		helpMenu.add(this.diagnosticsMenuItem);
+	}
+
+	/**
+	 * Set the event dispatch monitor, which makes the Diagnostics item available.
+	 * @param monitor Monitor; null if event dispatch is not being monitored.
+	 */
+	public void setDispatchMonitor(DispatchMonitor monitor)
+	{
+		this.dispatchMonitor = monitor;
+		this.diagnosticsMenuItem.setVisible(monitor != null);
+	}
+
+	/**
+	 * Handle Diagnostics from the Help menu.
+	 */
+	private void onDiagnostics()
+	{
+		if (this.diagnosticsDialog == null) {
+			this.diagnosticsDialog = new DiagnosticsDialog(this.frame, this.dispatchMonitor);
+		}
+		this.diagnosticsDialog.refresh();
+		this.diagnosticsDialog.setVisible(true);
 	}
 
 	/**
@@ -438,6 +664,81 @@ public class SSSaveEditorUI {
 		}
 	}
 
+	/**
+	 * Handle Browse Saves from the File menu.
+	 */
+	private void onFileBrowse()
+	{
+		for (ISaveEditorEvents handler : this.eventHandlers)
+		{
+			handler.onFileBrowse();
+		}
+	}
+
+	/**
+	 * Handle Compare With from the File menu.
+	 */
+	private void onFileCompare()
+	{
+		for (ISaveEditorEvents handler : this.eventHandlers)
+		{
+			handler.onFileCompare();
+		}
+	}
+
+	/**
+	 * Show the differences between two saves.
+	 * @param title Dialog title, naming the saves.
+	 * @param changes Changes.
+	 */
+	public void showDiff(String title, List<SaveDiff.Change> changes)
+	{
+		SaveDiffDialog.show(this.frame, title, changes);
+	}
+
+	/**
+	 * Handle History from the File menu.
+	 */
+	private void onFileHistory()
+	{
+		for (ISaveEditorEvents handler : this.eventHandlers)
+		{
+			handler.onFileHistory();
+		}
+	}
+
+	/**
+	 * Show the saved versions of a save. Compare and Restore in the dialog are passed to the event handlers.
+	 * @param name Name of the save.
+	 * @param versions Versions, latest first.
+	 */
+	public void showHistory(String name, List<SnapshotStore.Version> versions)
+	{
+		SaveHistoryDialog.Action action = SaveHistoryDialog.choose(this.frame, name, versions);
+		if (action == null) {
+			return;
+		}
+		for (ISaveEditorEvents handler : this.eventHandlers)
+		{
+			if (action.isRestore()) {
+				handler.onVersionRestore(action.getVersion());
+			} else {
+				handler.onVersionCompare(action.getVersion());
+			}
+		}
+	}
+
+	/**
+	 * Show the save browser, and wait for a save to be chosen.
+	 * @param summaries Saves to list.
+	 * @param query Finds saves by their qualities; null if not available.
+	 * @return Chosen save; null if none.
+	 */
+	public File chooseSave(List<SaveSummary> summaries, ISaveQuery query)
+	{
+		return SaveBrowserDialog.choose(this.frame, summaries, query);
+	}
+
 	/**
 	 * Handle Save from the File menu.
 	 */
@@ -579,6 +880,144 @@ public class SSSaveEditorUI {
 		return shipRow;
 	}
 
+	/**
+	 * Create the search panel. It is disabled until the name index is set.
+	 * @param dataPanel Parent panel.
+	 * @param row Row in parent panel.
+	 */
+	private void createSearchPanel(JPanel dataPanel, int row)
+	{
+		JPanel searchPanel = new JPanel(new GridBagLayout());
+		JLabel label = SSSaveEditorUI.addLabel(searchPanel, "Search", 0, 0);
+		this.searchField = new JTextField(30);
+		this.searchField.setEnabled(false);
+		this.searchField.setToolTipText("Show only qualities whose names contain this text; press Enter to go to the next one");
+		label.setLabelFor(this.searchField);
+		GridBagConstraints constraints = new GridBagConstraints();
+		constraints.insets = new Insets(0, 5, 0, 5);
+		constraints.fill = GridBagConstraints.HORIZONTAL;
+		constraints.gridx = 1;
+		constraints.gridy = 0;
+		searchPanel.add(this.searchField, constraints);
+		this.searchResultLabel = SSSaveEditorUI.addLabel(searchPanel, "", 0, 2);
+
+		this.searchField.getDocument().addDocumentListener(new DocumentListener() {
+			@Override
+			public void removeUpdate(DocumentEvent e)
+			{
+				SSSaveEditorUI.this.onSearchChanged();
+			}
+
+			@Override
+			public void insertUpdate(DocumentEvent e)
+			{
+				SSSaveEditorUI.this.onSearchChanged();
+			}
+
+			@Override
+			public void changedUpdate(DocumentEvent e)
+			{
+				SSSaveEditorUI.this.onSearchChanged();
+			}
+		});
+
+		this.searchField.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e)
+			{
+				SSSaveEditorUI.this.onSearchNext();
+			}
+		});
+
+		constraints = new GridBagConstraints();
+		constraints.gridwidth = 2;
+		constraints.anchor = GridBagConstraints.WEST;
+		constraints.gridx = 0;
+		constraints.gridy = row;
+		dataPanel.add(searchPanel, constraints);
+	}
+
+	/**
+	 * Run the search, and filter the category panels to the matching items.
+	 */
+	private void onSearchChanged()
+	{
+		if (this.nameIndex == null) {
+			return;
+		}
+
+		String text = this.searchField.getText().trim();
+		this.searchPosition = 0;
+		if (text.isEmpty()) {
+			this.searchResults = new ArrayList<QualityItem>();
+			this.searchResultLabel.setText("");
+			for (QualityUIPanel panel : this.categoryPanels.values()) {
+				panel.setFilter(null, 0);
+			}
+			return;
+		}
+
+		this.searchResults = this.nameIndex.find(text);
+		LongMap<QualityItem> filter = new LongMap<QualityItem>(this.searchResults.size());
+		Map<String, int[]> counts = new HashMap<String, int[]>();
+		for (QualityItem item : this.searchResults) {
+			filter.put(item.getTag(), item);
+			int[] count = counts.get(item.getCategory());
+			if (count == null) {
+				counts.put(item.getCategory(), new int[] { 1 });
+			} else {
+				++count[0];
+			}
+		}
+		for (Map.Entry<String, QualityUIPanel> entry : this.categoryPanels.entrySet()) {
+			int[] count = counts.get(entry.getKey());
+			entry.getValue().setFilter(filter, count != null ? count[0] : 0);
+		}
+		this.searchResultLabel.setText(this.searchResults.size() == 1 ? "1 match" : this.searchResults.size() + " matches");
+	}
+
+	/**
+	 * Go to the next search result.
+	 */
+	private void onSearchNext()
+	{
+		for (int tried = 0; tried < this.searchResults.size(); ++tried) {
+			QualityItem item = this.searchResults.get(this.searchPosition);
+			this.searchPosition = (this.searchPosition + 1) % this.searchResults.size();
+			QualityUIPanel panel = this.categoryPanels.get(item.getCategory());
+			if (panel != null) {
+				panel.showItem(item);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Create the progress panel. It is hidden until an operation is started.
+	 * @param dataPanel Parent panel.
+	 * @param row Row in parent panel.
+	 */
+	private void createProgressPanel(JPanel dataPanel, int row)
+	{
+		this.progressPanel = new JPanel(new GridBagLayout());
+		this.progressLabel = SSSaveEditorUI.addLabel(this.progressPanel, "", 0, 0);
+		this.progressBar = new JProgressBar(0, 100);
+		GridBagConstraints constraints = new GridBagConstraints();
+		constraints.insets = new Insets(0, 5, 0, 5);
+		constraints.fill = GridBagConstraints.HORIZONTAL;
+		constraints.gridx = 1;
+		constraints.gridy = 0;
+		this.progressPanel.add(this.progressBar, constraints);
+		this.progressPanel.setVisible(false);
+
+		constraints = new GridBagConstraints();
+		constraints.gridwidth = 2;
+		constraints.fill = GridBagConstraints.HORIZONTAL;
+		constraints.gridx = 0;
+		constraints.gridy = row;
+		dataPanel.add(this.progressPanel, constraints);
+	}
+
 	/**
 	 * Create a generic display panel.
 	 * @param title Title for the panel.
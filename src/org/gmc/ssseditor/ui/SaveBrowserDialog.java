@@ -0,0 +1,267 @@
+package org.gmc.ssseditor.ui;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
+import javax.swing.RowFilter;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableRowSorter;
+
+import org.gmc.ssseditor.SaveSummary;
+import org.gmc.ssseditor.qualities.QualityItem;
+
+/**
+ * A dialog listing the saves in the saves directory, from which one may be chosen to open. The list may be
+ * narrowed to the saves whose qualities match a query, such as "echos &gt;= 5000".
+ * @author grant
+ *
+ */
+class SaveBrowserDialog extends JDialog
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The table of save summaries. Columns may be sorted.
+	 */
+	private static class SummaryTableModel extends AbstractTableModel
+	{
+		private static final long serialVersionUID = 1L;
+
+		private static final String[] columnNames = { "File", "Captain", "Port", "In-game Date", "Echos", "Hull", "Ship", "Modified" };
+		private static final Class<?>[] columnClasses = { String.class, String.class, String.class, String.class, Long.class, Long.class, String.class, Date.class };
+
+		private final List<SaveSummary> summaries;
+
+		SummaryTableModel(List<SaveSummary> summaries)
+		{
+			this.summaries = summaries;
+		}
+
+		SaveSummary getSummary(int row)
+		{
+			return this.summaries.get(row);
+		}
+
+		@Override
+		public int getRowCount()
+		{
+			return this.summaries.size();
+		}
+
+		@Override
+		public int getColumnCount()
+		{
+			return SummaryTableModel.columnNames.length;
+		}
+
+		@Override
+		public String getColumnName(int column)
+		{
+			return SummaryTableModel.columnNames[column];
+		}
+
+		@Override
+		public Class<?> getColumnClass(int column)
+		{
+			return SummaryTableModel.columnClasses[column];
+		}
+
+		@Override
+		public Object getValueAt(int row, int column)
+		{
+			SaveSummary summary = this.summaries.get(row);
+			switch (column) {
+			case 0:
+				return summary.getFile().getName();
+			case 1:
+				return summary.getError() != null ? "(" + summary.getError() + ")" : summary.getCaptain();
+			case 2:
+				return summary.getPort();
+			case 3:
+				// Sortable as text: yyyy-MM-dd HH:mm.
+				String date = summary.getInGameDate();
+				return date != null && date.length() >= 16 ? date.substring(0, 16).replace('T', ' ') : date;
+			case 4:
+				return summary.getEchos();
+			case 5:
+				return summary.getHull();
+			case 6:
+				if (summary.getShipId() == null) {
+					return null;
+				}
+				QualityItem ship = QualityItem.getKnownItem(summary.getShipId());
+				return ship != null ? ship.getName() : summary.getShipId().toString();
+			case 7:
+				return new Date(summary.getLastModified());
+			}
+			return null;
+		}
+	}
+
+	private final SummaryTableModel model;
+	private final TableRowSorter<SummaryTableModel> sorter;
+	private final JTable table;
+	private final SSSaveEditorUI.ISaveQuery query;
+	private final JTextField findField = new JTextField(40);
+	private final JLabel findStatus = new JLabel(" ");
+	private File chosen = null;
+
+	/**
+	 * Show the dialog, and wait for a save to be chosen.
+	 * @param owner Owner frame.
+	 * @param summaries Saves to list.
+	 * @param query Finds saves by their qualities; null if not available.
+	 * @return Chosen save; null if none.
+	 */
+	static File choose(JFrame owner, List<SaveSummary> summaries, SSSaveEditorUI.ISaveQuery query)
+	{
+		SaveBrowserDialog dialog = new SaveBrowserDialog(owner, summaries, query);
+		dialog.setVisible(true);
+		dialog.dispose();
+		return dialog.chosen;
+	}
+
+	/**
+	 * Create the dialog.
+	 * @param owner Owner frame.
+	 * @param summaries Saves to list.
+	 * @param query Finds saves by their qualities; null if not available.
+	 */
+	private SaveBrowserDialog(JFrame owner, List<SaveSummary> summaries, SSSaveEditorUI.ISaveQuery query)
+	{
+		super(owner, "Saves", true);
+
+		this.query = query;
+		this.model = new SummaryTableModel(summaries);
+		this.sorter = new TableRowSorter<SummaryTableModel>(this.model);
+		this.table = new JTable(this.model);
+		this.table.setRowSorter(this.sorter);
+		this.table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		this.table.setDefaultRenderer(Date.class, new DefaultTableCellRenderer() {
+			private static final long serialVersionUID = 1L;
+			private final DateFormat format = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
+
+			@Override
+			protected void setValue(Object value)
+			{
+				this.setText(value != null ? this.format.format((Date) value) : "");
+			}
+		});
+		this.table.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e)
+			{
+				if (e.getClickCount() == 2 && SaveBrowserDialog.this.table.rowAtPoint(e.getPoint()) >= 0) {
+					SaveBrowserDialog.this.onOpen();
+				}
+			}
+		});
+		if (!summaries.isEmpty()) {
+			this.table.setRowSelectionInterval(0, 0);
+		}
+		JScrollPane scrollPane = new JScrollPane(this.table);
+		scrollPane.setPreferredSize(new Dimension(900, 400));
+		this.getContentPane().add(scrollPane, BorderLayout.CENTER);
+
+		if (query != null) {
+			JPanel findPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+			findPanel.add(new JLabel("Find:"));
+			this.findField.setToolTipText("Conditions on qualities, joined by \"and\": <quality>, !<quality>, or <quality> >= <number> (also > <= < = !=)");
+			this.findField.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					SaveBrowserDialog.this.onFind();
+				}
+			});
+			findPanel.add(this.findField);
+			findPanel.add(this.findStatus);
+			this.getContentPane().add(findPanel, BorderLayout.NORTH);
+		}
+
+		JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+		JButton openButton = new JButton("Open");
+		openButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				SaveBrowserDialog.this.onOpen();
+			}
+		});
+		buttonPanel.add(openButton);
+
+		JButton cancelButton = new JButton("Cancel");
+		cancelButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				SaveBrowserDialog.this.setVisible(false);
+			}
+		});
+		buttonPanel.add(cancelButton);
+		this.getContentPane().add(buttonPanel, BorderLayout.SOUTH);
+		this.getRootPane().setDefaultButton(openButton);
+
+		this.pack();
+		this.setLocationRelativeTo(owner);
+	}
+
+	/**
+	 * Show only the saves that match the query in the Find field; all of them if it is empty.
+	 */
+	private void onFind()
+	{
+		String text = this.findField.getText().trim();
+		if (text.isEmpty()) {
+			this.sorter.setRowFilter(null);
+			this.findStatus.setText(" ");
+		} else {
+			final Set<File> found;
+			try {
+				found = this.query.findSaves(text);
+			} catch (ParseException e) {
+				this.findStatus.setText("Condition " + e.getErrorOffset() + ": " + e.getMessage());
+				return;
+			}
+			this.sorter.setRowFilter(new RowFilter<SummaryTableModel, Integer>() {
+				@Override
+				public boolean include(Entry<? extends SummaryTableModel, ? extends Integer> entry)
+				{
+					return found.contains(entry.getModel().getSummary(entry.getIdentifier()).getFile());
+				}
+			});
+			this.findStatus.setText(this.table.getRowCount() + " of " + this.model.getRowCount() + " saves match");
+		}
+		if (this.table.getRowCount() > 0) {
+			this.table.setRowSelectionInterval(0, 0);
+		}
+	}
+
+	/**
+	 * Choose the selected save, and close.
+	 */
+	private void onOpen()
+	{
+		int row = this.table.getSelectedRow();
+		if (row < 0) {
+			return;
+		}
+		this.chosen = this.model.getSummary(this.table.convertRowIndexToModel(row)).getFile();
+		this.setVisible(false);
+	}
+}
@@ -0,0 +1,147 @@
+package org.gmc.ssseditor.ui;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.List;
+
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.table.AbstractTableModel;
+
+import org.gmc.ssseditor.SaveDiff;
+
+/**
+ * A dialog listing the qualities added, removed, and changed between two saves.
+ * @author grant
+ *
+ */
+class SaveDiffDialog extends JDialog
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The table of changes. Columns may be sorted.
+	 */
+	private static class ChangeTableModel extends AbstractTableModel
+	{
+		private static final long serialVersionUID = 1L;
+
+		private static final String[] columnNames = { "Change", "Name", "Category", "ID", "Before", "After" };
+		private static final Class<?>[] columnClasses = { String.class, String.class, String.class, Long.class, Long.class, Long.class };
+
+		private final List<SaveDiff.Change> changes;
+
+		ChangeTableModel(List<SaveDiff.Change> changes)
+		{
+			this.changes = changes;
+		}
+
+		@Override
+		public int getRowCount()
+		{
+			return this.changes.size();
+		}
+
+		@Override
+		public int getColumnCount()
+		{
+			return ChangeTableModel.columnNames.length;
+		}
+
+		@Override
+		public String getColumnName(int column)
+		{
+			return ChangeTableModel.columnNames[column];
+		}
+
+		@Override
+		public Class<?> getColumnClass(int column)
+		{
+			return ChangeTableModel.columnClasses[column];
+		}
+
+		@Override
+		public Object getValueAt(int row, int column)
+		{
+			SaveDiff.Change change = this.changes.get(row);
+			switch (column) {
+			case 0:
+				switch (change.getKind()) {
+				case ADDED:
+					return "Added";
+				case REMOVED:
+					return "Removed";
+				default:
+					return "Changed";
+				}
+			case 1:
+				return change.getName();
+			case 2:
+				return change.getCategory();
+			case 3:
+				return change.getId();
+			case 4:
+				return change.getBefore() != SaveDiff.noLevel ? change.getBefore() : null;
+			case 5:
+				return change.getAfter() != SaveDiff.noLevel ? change.getAfter() : null;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Show the dialog, and wait for it to be closed.
+	 * @param owner Owner frame.
+	 * @param title Title, naming the saves.
+	 * @param changes Changes to list.
+	 */
+	static void show(JFrame owner, String title, List<SaveDiff.Change> changes)
+	{
+		SaveDiffDialog dialog = new SaveDiffDialog(owner, title, changes);
+		dialog.setVisible(true);
+		dialog.dispose();
+	}
+
+	/**
+	 * Create the dialog.
+	 * @param owner Owner frame.
+	 * @param title Title, naming the saves.
+	 * @param changes Changes to list.
+	 */
+	private SaveDiffDialog(JFrame owner, String title, List<SaveDiff.Change> changes)
+	{
+		super(owner, title, true);
+
+		JTable table = new JTable(new ChangeTableModel(changes));
+		table.setAutoCreateRowSorter(true);
+		JScrollPane scrollPane = new JScrollPane(table);
+		scrollPane.setPreferredSize(new Dimension(800, 400));
+		this.getContentPane().add(scrollPane, BorderLayout.CENTER);
+
+		JPanel buttonPanel = new JPanel(new BorderLayout());
+		buttonPanel.add(new JLabel(" " + SaveDiff.summarize(changes)), BorderLayout.WEST);
+
+		JPanel closePanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+		JButton closeButton = new JButton("Close");
+		closeButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				SaveDiffDialog.this.setVisible(false);
+			}
+		});
+		closePanel.add(closeButton);
+		buttonPanel.add(closePanel, BorderLayout.EAST);
+		this.getContentPane().add(buttonPanel, BorderLayout.SOUTH);
+		this.getRootPane().setDefaultButton(closeButton);
+
+		this.pack();
+		this.setLocationRelativeTo(owner);
+	}
+}
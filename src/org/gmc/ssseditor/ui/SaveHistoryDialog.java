@@ -0,0 +1,200 @@
+package org.gmc.ssseditor.ui;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.List;
+
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.ListSelectionModel;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+
+import org.gmc.ssseditor.SnapshotStore;
+
+/**
+ * A dialog listing the saved versions of a save, one of which may be compared with the save being edited, or restored.
+ * @author grant
+ *
+ */
+class SaveHistoryDialog extends JDialog
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * What was chosen in the dialog.
+	 */
+	static class Action
+	{
+		private final SnapshotStore.Version version;
+		private final boolean restore;
+
+		Action(SnapshotStore.Version version, boolean restore)
+		{
+			this.version = version;
+			this.restore = restore;
+		}
+
+		SnapshotStore.Version getVersion()
+		{
+			return this.version;
+		}
+
+		boolean isRestore()
+		{
+			return this.restore;
+		}
+	}
+
+	/**
+	 * The table of versions.
+	 */
+	private static class VersionTableModel extends AbstractTableModel
+	{
+		private static final long serialVersionUID = 1L;
+
+		private static final String[] columnNames = { "Saved", "Size" };
+		private static final Class<?>[] columnClasses = { Date.class, Long.class };
+
+		private final List<SnapshotStore.Version> versions;
+
+		VersionTableModel(List<SnapshotStore.Version> versions)
+		{
+			this.versions = versions;
+		}
+
+		@Override
+		public int getRowCount()
+		{
+			return this.versions.size();
+		}
+
+		@Override
+		public int getColumnCount()
+		{
+			return VersionTableModel.columnNames.length;
+		}
+
+		@Override
+		public String getColumnName(int column)
+		{
+			return VersionTableModel.columnNames[column];
+		}
+
+		@Override
+		public Class<?> getColumnClass(int column)
+		{
+			return VersionTableModel.columnClasses[column];
+		}
+
+		@Override
+		public Object getValueAt(int row, int column)
+		{
+			SnapshotStore.Version version = this.versions.get(row);
+			return column == 0 ? new Date(version.getTime()) : (Object) version.getSize();
+		}
+	}
+
+	private final List<SnapshotStore.Version> versions;
+	private final JTable table;
+	private Action chosen = null;
+
+	/**
+	 * Show the dialog, and wait for a version to be chosen.
+	 * @param owner Owner frame.
+	 * @param name Name of the save.
+	 * @param versions Versions, latest first.
+	 * @return The version, and whether to compare or restore it; null if none.
+	 */
+	static Action choose(JFrame owner, String name, List<SnapshotStore.Version> versions)
+	{
+		SaveHistoryDialog dialog = new SaveHistoryDialog(owner, name, versions);
+		dialog.setVisible(true);
+		dialog.dispose();
+		return dialog.chosen;
+	}
+
+	/**
+	 * Create the dialog.
+	 * @param owner Owner frame.
+	 * @param name Name of the save.
+	 * @param versions Versions, latest first.
+	 */
+	private SaveHistoryDialog(JFrame owner, String name, List<SnapshotStore.Version> versions)
+	{
+		super(owner, "History of " + name, true);
+		this.versions = versions;
+
+		this.table = new JTable(new VersionTableModel(versions));
+		this.table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		this.table.setDefaultRenderer(Date.class, new DefaultTableCellRenderer() {
+			private static final long serialVersionUID = 1L;
+			private final DateFormat format = DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.MEDIUM);
+
+			@Override
+			protected void setValue(Object value)
+			{
+				this.setText(value != null ? this.format.format((Date) value) : "");
+			}
+		});
+		if (!versions.isEmpty()) {
+			this.table.setRowSelectionInterval(0, 0);
+		}
+		JScrollPane scrollPane = new JScrollPane(this.table);
+		scrollPane.setPreferredSize(new Dimension(400, 300));
+		this.getContentPane().add(scrollPane, BorderLayout.CENTER);
+
+		JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+		JButton compareButton = new JButton("Compare");
+		compareButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				SaveHistoryDialog.this.onChoose(false);
+			}
+		});
+		buttonPanel.add(compareButton);
+
+		JButton restoreButton = new JButton("Restore");
+		restoreButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				SaveHistoryDialog.this.onChoose(true);
+			}
+		});
+		buttonPanel.add(restoreButton);
+
+		JButton closeButton = new JButton("Close");
+		closeButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				SaveHistoryDialog.this.setVisible(false);
+			}
+		});
+		buttonPanel.add(closeButton);
+		this.getContentPane().add(buttonPanel, BorderLayout.SOUTH);
+		this.getRootPane().setDefaultButton(compareButton);
+
+		this.pack();
+		this.setLocationRelativeTo(owner);
+	}
+
+	/**
+	 * Choose the selected version, and close.
+	 * @param restore true to restore it; false to compare.
+	 */
+	private void onChoose(boolean restore)
+	{
+		int row = this.table.getSelectedRow();
+		if (row < 0) {
+			return;
+		}
+		this.chosen = new Action(this.versions.get(row), restore);
+		this.setVisible(false);
+	}
+}